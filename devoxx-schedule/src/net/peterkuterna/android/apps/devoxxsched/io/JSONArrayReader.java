@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.android.apps.devoxxsched.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * Pull-based reader for a top-level {@link JSONArray} of objects. Instead of
+ * building the whole document in memory, each call to {@link #nextObject()}
+ * reads just enough characters from the underlying {@link Reader} to build
+ * the next element as a {@link JSONObject}.
+ * <p>
+ * Values are converted the same way {@link org.json.JSONTokener} does, so
+ * handlers see the same types as when parsing a complete {@link JSONArray}.
+ */
+public class JSONArrayReader {
+
+	private static final int NONE = -2;
+
+	private final Reader mReader;
+	private int mPushBack = NONE;
+	private boolean mStarted = false;
+	private boolean mFinished = false;
+	private int mPosition = 0;
+
+	/**
+	 * Create a reader on top of the given {@link Reader}, which should be
+	 * buffered since it is read one character at a time.
+	 */
+	public JSONArrayReader(Reader reader) {
+		mReader = reader;
+	}
+
+	/**
+	 * Read the next element of the array, or return {@code null} when the
+	 * end of the array was reached.
+	 */
+	public JSONObject nextObject() throws IOException, JSONException {
+		if (mFinished) return null;
+
+		int c = nextClean();
+		if (!mStarted) {
+			if (c != '[') throw syntaxError("Expected '[' at start of array");
+			mStarted = true;
+			c = nextClean();
+			if (c == ']') {
+				mFinished = true;
+				return null;
+			}
+			pushBack(c);
+		} else if (c == ']') {
+			mFinished = true;
+			return null;
+		} else if (c != ',') {
+			throw syntaxError("Expected ',' or ']' after array element");
+		}
+
+		final Object value = nextValue();
+		if (!(value instanceof JSONObject)) {
+			throw syntaxError("Expected an object but was " + value);
+		}
+		return (JSONObject) value;
+	}
+
+	private Object nextValue() throws IOException, JSONException {
+		final int c = nextClean();
+		switch (c) {
+			case -1:
+				throw syntaxError("End of input");
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+			case '\'':
+				return readString(c);
+			default:
+				pushBack(c);
+				return readLiteral();
+		}
+	}
+
+	private JSONObject readObject() throws IOException, JSONException {
+		final JSONObject object = new JSONObject();
+		int c = nextClean();
+		if (c == '}') return object;
+		pushBack(c);
+
+		while (true) {
+			c = nextClean();
+			if (c != '"' && c != '\'') throw syntaxError("Expected a name");
+			final String name = readString(c);
+			if (nextClean() != ':') throw syntaxError("Expected ':' after " + name);
+			object.put(name, nextValue());
+
+			c = nextClean();
+			if (c == '}') return object;
+			if (c != ',') throw syntaxError("Expected ',' or '}' after " + name);
+		}
+	}
+
+	private JSONArray readArray() throws IOException, JSONException {
+		final JSONArray array = new JSONArray();
+		int c = nextClean();
+		if (c == ']') return array;
+		pushBack(c);
+
+		while (true) {
+			array.put(nextValue());
+
+			c = nextClean();
+			if (c == ']') return array;
+			if (c != ',') throw syntaxError("Expected ',' or ']' in array");
+		}
+	}
+
+	private String readString(int quote) throws IOException, JSONException {
+		final StringBuilder sb = new StringBuilder();
+		while (true) {
+			int c = next();
+			if (c == -1) throw syntaxError("Unterminated string");
+			if (c == quote) return sb.toString();
+			if (c == '\\') {
+				c = next();
+				switch (c) {
+					case 'b':
+						sb.append('\b');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 'u':
+						int code = 0;
+						for (int i = 0; i < 4; i++) {
+							final int digit = Character.digit(next(), 16);
+							if (digit == -1) throw syntaxError("Invalid escape sequence");
+							code = (code << 4) + digit;
+						}
+						sb.append((char) code);
+						break;
+					case -1:
+						throw syntaxError("Unterminated escape sequence");
+					default:
+						sb.append((char) c);
+				}
+			} else {
+				sb.append((char) c);
+			}
+		}
+	}
+
+	private Object readLiteral() throws IOException, JSONException {
+		final StringBuilder sb = new StringBuilder();
+		int c = next();
+		while (c != -1 && ",:]}/\\\"[{;=# \t\r\n\f".indexOf(c) == -1) {
+			sb.append((char) c);
+			c = next();
+		}
+		pushBack(c);
+
+		final String literal = sb.toString();
+		if (literal.length() == 0) throw syntaxError("Expected a value");
+		if ("null".equalsIgnoreCase(literal)) return JSONObject.NULL;
+		if ("true".equalsIgnoreCase(literal)) return Boolean.TRUE;
+		if ("false".equalsIgnoreCase(literal)) return Boolean.FALSE;
+
+		try {
+			if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1
+					&& literal.indexOf('E') == -1) {
+				final long longValue = Long.parseLong(literal);
+				if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+					return (int) longValue;
+				}
+				return longValue;
+			}
+			return Double.valueOf(literal);
+		} catch (NumberFormatException e) {
+			// Unquoted strings are accepted, just like JSONTokener does
+			return literal;
+		}
+	}
+
+	private int nextClean() throws IOException {
+		int c = next();
+		while (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f') {
+			c = next();
+		}
+		return c;
+	}
+
+	private int next() throws IOException {
+		if (mPushBack != NONE) {
+			final int c = mPushBack;
+			mPushBack = NONE;
+			return c;
+		}
+		mPosition++;
+		return mReader.read();
+	}
+
+	private void pushBack(int c) {
+		mPushBack = c;
+	}
+
+	private JSONException syntaxError(String message) {
+		return new JSONException(message + " at character " + mPosition);
+	}
+
+}
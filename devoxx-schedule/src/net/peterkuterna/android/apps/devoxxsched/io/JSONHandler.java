@@ -17,101 +17,265 @@
 package net.peterkuterna.android.apps.devoxxsched.io;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
 import net.peterkuterna.android.apps.devoxxsched.io.JSONHandler.JSONHandlerException;
+import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.Sets;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.os.RemoteException;
 import android.util.Log;
 
 
 /**
- * Abstract class that handles reading and parsing an {@link JSONArray} into
- * a set of {@link ContentProviderOperation}. It catches exceptions and 
+ * Abstract class that handles reading and parsing a stream of JSON entities
+ * into a set of {@link ContentProviderOperation}. It catches exceptions and 
  * rethrows them as {@link JSONHandlerException}. Any local
  * {@link ContentProvider} exceptions are considered unrecoverable.
  * <p>
+ * Entities are read one at a time with a {@link JSONArrayReader} and handed
+ * to {@link #parse(JSONObject, ContentResolver, ArrayList)}, so the
+ * documents are never kept in memory as a whole. A handler can be fed
+ * several documents before calling {@link #apply(ContentResolver)}.
+ * <p>
+ * In delta mode the documents only hold the entities that changed, plus a
+ * tombstone with a {@code "deleted":true} field for every entity that was
+ * removed, which is handed to
+ * {@link #parseDeleted(JSONObject, ContentResolver, ArrayList)}.
+ * <p>
+ * The operations are applied in chunks of about {@link #getChunkSize()}
+ * operations, each in its own transaction, so queries from the UI can run
+ * in between. A chunk always ends between two entities, so the changes of
+ * one entity become visible at once. The operations added by
+ * {@link #finish(ContentResolver, ArrayList)} go along with the first
+ * chunk.
+ * <p>
  * This class is only designed to handle simple one-way synchronization.
  */
 public abstract class JSONHandler extends BaseHandler {
 	
 	private static final String TAG = "JSONHandler"; 
 	
+	private static final String FIELD_DELETED = "deleted";
+	
+	/** Default number of operations applied in one transaction. */
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+	
+	private final ArrayList<ContentProviderOperation> mBatch = Lists.newArrayList();
+	private final ArrayList<Integer> mChunkEnds = Lists.newArrayList();
+	private int mChunkSize = DEFAULT_CHUNK_SIZE;
+	private int mEntryCount = 0;
+	private boolean mPrepared = false;
+	private boolean mDeltaSync = false;
+	
     public JSONHandler(String mAuthority) {
 		super(mAuthority);
 	}
 
-	/**
-     * Parse the given {@link JSONArray}, turning into a series of
-     * {@link ContentProviderOperation} that are immediately applied using the
-     * given {@link ContentResolver}.
+    /**
+     * Parse all entities of the {@link JSONArray} read from the given
+     * {@link Reader}, collecting the resulting {@link ContentProviderOperation}
+     * until {@link #apply(ContentResolver)} is called.
      */
-    public void parseAndApply(ArrayList<JSONArray> entries, ContentResolver resolver) throws JSONHandlerException {
+    public void parse(Reader reader, ContentResolver resolver) throws JSONHandlerException {
     	try {
-	        final ArrayList<ContentProviderOperation> batch = parse(entries, resolver);
-	        resolver.applyBatch(getAuthority(), batch);
+    		if (!mPrepared) {
+    			prepare(resolver);
+    			mPrepared = true;
+    		}
+    		final JSONArrayReader entities = new JSONArrayReader(reader);
+    		int count = 0;
+    		JSONObject entity;
+    		while ((entity = entities.nextObject()) != null) {
+    			markChunkEnd();
+    			if (entity.optBoolean(FIELD_DELETED)) {
+    				parseDeleted(entity, resolver, mBatch);
+    			} else {
+    				parse(entity, resolver, mBatch);
+    			}
+    			count++;
+    		}
+    		mEntryCount += count;
+    		Log.d(TAG, "Retrieved " + count + " entries for " + getClass().getSimpleName());
         } catch (JSONException e) {
             throw new JSONHandlerException("Problem parsing JSON response", e);
+        } catch (IOException e) {
+            throw new JSONHandlerException("Problem reading JSON response", e);
+        }
+    }
+
+    /**
+     * Finish the parsed entities with {@link #finish(ContentResolver, ArrayList)}
+     * and apply the resulting {@link ContentProviderOperation} using the given
+     * {@link ContentResolver}, one chunk at a time. The finishing operations
+     * are applied ahead of the first chunk, in the same transaction.
+     */
+    public void apply(ContentResolver resolver) throws JSONHandlerException {
+    	try {
+    		ArrayList<ContentProviderOperation> chunk = Lists.newArrayList();
+    		finish(resolver, chunk);
+    		mChunkEnds.add(mBatch.size());
+    		int start = 0;
+    		for (int end : mChunkEnds) {
+    			chunk.addAll(mBatch.subList(start, end));
+    			if (!chunk.isEmpty()) {
+    				resolver.applyBatch(getAuthority(), chunk);
+    				chunk = Lists.newArrayList();
+    			}
+    			start = end;
+    		}
         } catch (RemoteException e) {
             throw new RuntimeException("Problem applying batch operation", e);
         } catch (OperationApplicationException e) {
             throw new RuntimeException("Problem applying batch operation", e);
+        } finally {
+        	mBatch.clear();
+        	mChunkEnds.clear();
+        	mEntryCount = 0;
+        	mPrepared = false;
         }
     }
 
     /**
-     * Parse the given {@link JSONHandler}, returning a set of
-     * {@link ContentProviderOperation} that will bring the
-     * {@link ContentProvider} into sync with the parsed data.
+     * End the current chunk before the next entity when it is full.
+     */
+    private void markChunkEnd() {
+    	final int chunkStart = mChunkEnds.isEmpty() ? 0 : mChunkEnds.get(mChunkEnds.size() - 1);
+    	if (mChunkSize > 0 && mBatch.size() - chunkStart >= mChunkSize) {
+    		mChunkEnds.add(mBatch.size());
+    	}
+    }
+
+    /**
+     * Number of operations after which a chunk is ended at the next entity,
+     * or {@code 0} to apply all operations in a single transaction.
+     */
+    public int getChunkSize() {
+    	return mChunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+    	mChunkSize = chunkSize;
+    }
+
+    /**
+     * Called once before the first entity is parsed, so a handler can load a
+     * snapshot of the rows it will diff against. The default does nothing.
+     */
+    protected void prepare(ContentResolver resolver) {
+    }
+
+    /**
+     * Parse a single entity, adding the {@link ContentProviderOperation} that
+     * will bring the {@link ContentProvider} into sync with it to the batch.
+     */
+    protected abstract void parse(JSONObject entity, ContentResolver resolver, 
+    		ArrayList<ContentProviderOperation> batch) throws JSONException;
+
+    /**
+     * Parse a tombstone of an entity that was removed since the previous
+     * sync, adding the {@link ContentProviderOperation} that remove it.
      */
-    public abstract ArrayList<ContentProviderOperation> parse(ArrayList<JSONArray> entries, ContentResolver resolver) throws JSONException;
+    protected abstract void parseDeleted(JSONObject entity, ContentResolver resolver, 
+    		ArrayList<ContentProviderOperation> batch) throws JSONException;
 
-	protected static boolean isRowExisting(Uri uri, String [] projection, ContentResolver resolver) {
+    /**
+     * Called once all entities were parsed, to add any remaining
+     * {@link ContentProviderOperation}, like removing lost entries. These are
+     * applied before the operations added by {@link #parse}, so they should
+     * not depend on them; changes belonging to a single entity are best
+     * added while parsing it.
+     */
+    protected abstract void finish(ContentResolver resolver, 
+    		ArrayList<ContentProviderOperation> batch);
+
+    /**
+     * Number of entities parsed since the last {@link #apply(ContentResolver)}.
+     */
+    protected int getEntryCount() {
+    	return mEntryCount;
+    }
+
+    /**
+     * Are the parsed documents deltas? Entities missing from a delta were
+     * not changed, so they should not be considered lost.
+     */
+    public boolean isDeltaSync() {
+    	return mDeltaSync;
+    }
+
+    public void setDeltaSync(boolean deltaSync) {
+    	mDeltaSync = deltaSync;
+    }
+
+	/**
+	 * Loads all rows of a {@link Uri} with a single query, keyed by the value
+	 * of the given column. Handlers diff against this snapshot instead of
+	 * querying the {@link ContentProvider} once per entity.
+	 */
+	protected static HashMap<String, ContentValues> snapshot(Uri uri, String [] projection, int keyColumnIndex, ContentResolver resolver) {
+		final HashMap<String, ContentValues> rows = Maps.newHashMap();
 		final Cursor cursor = resolver.query(uri, projection, null, null, null);
 		try {
-			if (!cursor.moveToFirst()) return false;
+			while (cursor.moveToNext()) {
+				final ContentValues values = new ContentValues();
+				DatabaseUtils.cursorRowToContentValues(cursor, values);
+				rows.put(cursor.getString(keyColumnIndex), values);
+			}
 		} finally {
 			cursor.close();
 		}
-		return true;
+		return rows;
 	}
 
 	/**
-	 * Returns those id's from a {@link Uri} that were not found in a given set. 
+	 * Loads the values of a single column of a {@link Uri} with one query.
 	 */
-    protected static HashSet<String> getLostIds(Set<String> ids, Uri uri, String [] projection, int idColumnIndex, ContentResolver resolver) {
-        final HashSet<String> lostIds = Sets.newHashSet();
-        
-        final Cursor cursor = resolver.query(uri, projection, null, null, null);
-        try {
-        	while (cursor.moveToNext()) {
-        		final String id = cursor.getString(idColumnIndex);
-        		if (!ids.contains(id)) {
-        			lostIds.add(id);
-        		}
-        	}
-        } finally {
-            cursor.close();
-        }
-        
-        if (!lostIds.isEmpty()) {
-        	Log.d(TAG, "Found " + lostIds.size() + " for " + uri.toString() + " that need to be removed.");
-        }
-        
-        return lostIds;
-    }
+	protected static HashSet<String> snapshotIds(Uri uri, String [] projection, int idColumnIndex, ContentResolver resolver) {
+		final HashSet<String> ids = Sets.newHashSet();
+		final Cursor cursor = resolver.query(uri, projection, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				ids.add(cursor.getString(idColumnIndex));
+			}
+		} finally {
+			cursor.close();
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns those id's from a snapshot that were not found in a given set.
+	 */
+	protected static HashSet<String> getLostIds(Set<String> ids, Set<String> existingIds) {
+		final HashSet<String> lostIds = Sets.newHashSet();
+		for (String id : existingIds) {
+			if (!ids.contains(id)) {
+				lostIds.add(id);
+			}
+		}
+		if (!lostIds.isEmpty()) {
+			Log.d(TAG, "Found " + lostIds.size() + " ids that need to be removed.");
+		}
+		return lostIds;
+	}
 
 	/**
      * General {@link IOException} that indicates a problem occured while
@@ -20,17 +20,16 @@
 
 package net.peterkuterna.android.apps.devoxxsched.io;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import net.peterkuterna.android.apps.devoxxsched.io.JSONHandler.JSONHandlerException;
 import net.peterkuterna.android.apps.devoxxsched.io.XmlHandler.XmlHandlerException;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
 import net.peterkuterna.android.apps.devoxxsched.util.ParserUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -78,17 +77,16 @@ public class LocalExecutor {
             throws JSONHandlerException {
         try {
             final InputStream input = context.getAssets().open(assetName);
-            byte [] buffer = new byte[input.available()];
-            while (input.read(buffer) != -1);
-            String jsontext = new String(buffer);
-            ArrayList<JSONArray> entries = Lists.newArrayList();
-            entries.add(new JSONArray(jsontext));
-        	handler.setLocalSync(true);
-            handler.parseAndApply(entries, mResolver);
+            final Reader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+            try {
+            	handler.setLocalSync(true);
+                handler.parse(reader, mResolver);
+                handler.apply(mResolver);
+            } finally {
+            	reader.close();
+            }
         } catch (JSONHandlerException e) {
             throw e;
-        } catch (JSONException e) {
-            throw new JSONHandlerException("Problem parsing local asset: " + assetName, e);
         } catch (IOException e) {
             throw new JSONHandlerException("Problem parsing local asset: " + assetName, e);
         }
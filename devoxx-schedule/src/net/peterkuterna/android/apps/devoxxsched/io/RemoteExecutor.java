@@ -21,93 +21,403 @@
 package net.peterkuterna.android.apps.devoxxsched.io;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.peterkuterna.android.apps.devoxxsched.io.JSONHandler.JSONHandlerException;
 import net.peterkuterna.android.apps.devoxxsched.model.RequestHash;
 import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.SyncUtils;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.json.JSONArray;
-import org.json.JSONException;
 
 import android.content.ContentResolver;
+import android.text.TextUtils;
+import android.util.Log;
 
 
 /**
- * Executes an {@link HttpUriRequest} and passes the result as an
- * {@link JSONArray} to the given {@link JSONHandler}.
+ * Executes an {@link HttpUriRequest} and streams the resulting
+ * {@link JSONArray} into the given {@link JSONHandler}.
+ * <p>
+ * Urls can be handed to {@link #prefetch(String[])} up front, so their
+ * responses are downloaded in parallel while earlier handlers are still
+ * being applied. Their bodies are spilled to temporary files in the given
+ * cache directory, so the waiting responses are not kept in memory.
+ * <p>
+ * When the webapp reports a new md5 hash for a url, only the changes since
+ * the md5 hash of the previous sync are fetched from its feed delta
+ * service, and the handler is run in delta mode.
  */
 public class RemoteExecutor {
+	private static final String TAG = "RemoteExecutor";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_FEED_DELTA = "X-Feed-Delta";
+    private static final String HEADER_FEED_MD5 = "X-Feed-Md5";
+
+    private static final String TEMP_PREFIX = "feed";
+    private static final String TEMP_SUFFIX = ".json";
+
     private final HttpClient mHttpClient;
     private final ContentResolver mResolver;
+    private final File mCacheDir;
+    private final HashMap<String, Future<Download>> mDownloads = Maps.newHashMap();
+    private ExecutorService mExecutor;
+    private boolean mDeltaEnabled = true;
 
-    public RemoteExecutor(HttpClient httpClient, ContentResolver resolver) {
+    public RemoteExecutor(HttpClient httpClient, ContentResolver resolver, File cacheDir) {
         mHttpClient = httpClient;
         mResolver = resolver;
+        mCacheDir = cacheDir;
     }
 
     /**
-     * Execute a {@link HttpGet} request, passing a valid response through
-     * {@link JSONHandler#parseAndApply(JSONArray, ContentResolver)}.
+     * Should changed urls be fetched as deltas? Disable this to force a
+     * complete download and reconciliation of every changed url.
+     */
+    public void setDeltaEnabled(boolean deltaEnabled) {
+    	mDeltaEnabled = deltaEnabled;
+    }
+
+    /**
+     * Start downloading the given urls in the background, at most
+     * {@link SyncUtils#MAX_PARALLEL_REQUESTS} at a time. A later
+     * {@link #executeGet(String[], Map, JSONHandler)} for one of these urls
+     * uses the downloaded response instead of fetching it again.
+     */
+    public synchronized void prefetch(String [] urls, final Map<String, String> remoteMd5s) {
+    	if (mExecutor == null) {
+    		mExecutor = Executors.newFixedThreadPool(SyncUtils.MAX_PARALLEL_REQUESTS);
+    	}
+    	for (final String url : urls) {
+    		if (mDownloads.containsKey(url)) continue;
+    		mDownloads.put(url, mExecutor.submit(new Callable<Download>() {
+    			public Download call() throws JSONHandlerException {
+    				return download(url, true, remoteMd5s.get(url));
+    			}
+    		}));
+    	}
+    }
+
+    /**
+     * Stop any pending background downloads and delete the downloaded
+     * responses that were not used.
+     */
+    public synchronized void shutdown() {
+    	if (mExecutor != null) {
+    		mExecutor.shutdownNow();
+    		mExecutor = null;
+    	}
+    	for (Future<Download> future : mDownloads.values()) {
+    		if (future.isDone() && !future.isCancelled()) {
+    			try {
+    				future.get().delete();
+    			} catch (InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    			} catch (ExecutionException e) {
+    				// nothing was downloaded
+    			}
+    		}
+    	}
+    	mDownloads.clear();
+    }
+
+    /**
+     * Execute a {@link HttpGet} request, streaming a valid response through
+     * {@link JSONHandler#parse(Reader, ContentResolver)}.
      */
     public ArrayList<RequestHash> executeGet(String [] urls, JSONHandler handler) throws JSONHandlerException {
+    	return executeGet(urls, SyncUtils.getRemoteMd5s(mHttpClient, urls), handler);
+    }
+
+    /**
+     * Execute a {@link HttpGet} request, streaming a valid response through
+     * {@link JSONHandler#parse(Reader, ContentResolver)}. The remote md5
+     * hashes of the urls are taken from the given map, which was fetched up
+     * front with {@link SyncUtils#getRemoteMd5s(HttpClient, String[])}.
+     * <p>
+     * Urls whose md5 hash did not change are not fetched, and every other
+     * request is sent as a delta request or conditionally using the
+     * validators stored from the previous sync. When nothing was modified
+     * nothing is applied. When only deltas came in, the handler is run in
+     * delta mode. Otherwise every url is fetched completely, since the
+     * handler needs all entries to find lost ids.
+     */
+    public ArrayList<RequestHash> executeGet(String [] urls, Map<String, String> remoteMd5s, JSONHandler handler) throws JSONHandlerException {
+    	final Download [] downloads = new Download[urls.length];
+    	try {
+	    	boolean modified = false;
+	    	boolean complete = false;
+	    	for (int i = 0; i < urls.length; i++) {
+	    		downloads[i] = takeDownload(urls[i], remoteMd5s.get(urls[i]));
+	    		if (downloads[i].body != null) {
+	    			modified = true;
+	    			complete |= !downloads[i].delta;
+	    		}
+	    	}
+	
+	    	if (modified) {
+		    	handler.setLocalSync(false);
+		    	handler.setDeltaSync(!complete);
+		    	for (int i = 0; i < urls.length; i++) {
+		    		if (complete && (downloads[i].body == null || downloads[i].delta)) {
+		    			downloads[i].delete();
+		    			downloads[i] = download(urls[i], false, null);
+		    		}
+		    		if (downloads[i].body != null) {
+		    			parseDownload(downloads[i], handler);
+		    			downloads[i].delete();
+		    		}
+		    	}
+				handler.apply(mResolver);
+	    	} else {
+	    		Log.d(TAG, "Skipping " + Arrays.toString(urls) + ", not modified.");
+	    	}
+    	} catch (JSONHandlerException e) {
+    		for (Download download : downloads) {
+    			if (download != null) download.delete();
+    		}
+    		throw e;
+    	}
+
     	final ArrayList<RequestHash> result = Lists.newArrayList();
-    	final ArrayList<JSONArray> entries = Lists.newArrayList();
-    	for (String url : urls) {
-            final HttpUriRequest request = new HttpGet(url);
-            final String md5 = SyncUtils.getRemoteMd5(mHttpClient, url);
-            JSONArray requestEntries = executeRequest(request);
-            entries.add(requestEntries);
-            result.add(new RequestHash(url, md5));
+    	for (int i = 0; i < urls.length; i++) {
+    		final Download download = downloads[i];
+    		final String md5 = download.md5 != null ? download.md5 : remoteMd5s.get(urls[i]);
+            result.add(new RequestHash(urls[i], md5, download.etag, download.lastModified));
     	}
-    	handler.setLocalSync(false);
-		handler.parseAndApply(entries, mResolver);
     	return result;
     }
 
     /**
-     * Execute this {@link HttpUriRequest}, passing a valid response through
-     * {@link JSONHandler#parseAndApply(JSONArray, ContentResolver)}.
+     * Returns the background download of the given url when it was
+     * prefetched, or downloads it right away otherwise.
+     */
+    private Download takeDownload(String url, String remoteMd5) throws JSONHandlerException {
+    	final Future<Download> future;
+    	synchronized (this) {
+    		future = mDownloads.remove(url);
+    	}
+    	if (future == null) {
+    		return download(url, true, remoteMd5);
+    	}
+
+    	try {
+    		return future.get();
+    	} catch (InterruptedException e) {
+    		throw new JSONHandlerException("Interrupted while downloading " + url, e);
+    	} catch (ExecutionException e) {
+    		final Throwable cause = e.getCause();
+    		if (cause instanceof JSONHandlerException) {
+    			throw (JSONHandlerException) cause;
+    		}
+    		throw new JSONHandlerException("Problem downloading " + url, cause);
+    	}
+    }
+
+    /**
+     * Download the response of a url into a temporary file. A conditional download
+     * results in a {@link Download} without body when the url was not
+     * modified since the previous sync. It fetches only the changes when
+     * the remote md5 hash differs from the one of the previous sync, and
+     * otherwise uses the HTTP validators stored from the previous sync.
+     */
+    private Download download(String url, boolean conditional, String remoteMd5) throws JSONHandlerException {
+    	final HttpUriRequest request = new HttpGet(url);
+    	RequestHash previous = null;
+    	if (conditional) {
+    		previous = SyncUtils.getLocalSyncState(mResolver, url);
+    		final String previousMd5 = previous.getMd5();
+    		if (mDeltaEnabled && remoteMd5 != null && !TextUtils.isEmpty(previousMd5)) {
+    			if (remoteMd5.equals(previousMd5)) {
+    				return new Download(request, null, null, previous.getEtag(), previous.getLastModified(), false);
+    			}
+    			final Download delta = downloadDelta(url, previousMd5);
+    			if (delta != null) {
+    				return delta;
+    			}
+    		}
+            if (previous.getEtag() != null) {
+            	request.addHeader(HEADER_IF_NONE_MATCH, previous.getEtag());
+            }
+            if (previous.getLastModified() != null) {
+            	request.addHeader(HEADER_IF_MODIFIED_SINCE, previous.getLastModified());
+            }
+    	}
+
+        final HttpResponse resp = execute(request);
+        if (resp.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+        	if (previous == null) {
+                throw new JSONHandlerException("Unexpected server response " + resp.getStatusLine()
+                        + " for " + request.getRequestLine());
+        	}
+        	return new Download(request, null, null, previous.getEtag(), previous.getLastModified(), false);
+        }
+
+        return new Download(request, readResponse(request, resp), null,
+        		getHeader(resp, HEADER_ETAG), getHeader(resp, HEADER_LAST_MODIFIED), false);
+    }
+
+    /**
+     * Download the changes to a url since the version with the given md5
+     * hash from the feed delta service. Returns {@code null} when the
+     * service could not help, so the url should be fetched directly. The
+     * HTTP validators are dropped, since they belong to an older version.
      */
-    public JSONArray executeRequest(HttpUriRequest request) throws JSONHandlerException {
+    private Download downloadDelta(String url, String sinceMd5) {
+    	final HttpUriRequest request = new HttpGet(SyncUtils.buildFeedDeltaUrl(url, sinceMd5));
+    	try {
+            final HttpResponse resp = mHttpClient.execute(request);
+            if (resp.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            	final HttpEntity entity = resp.getEntity();
+            	if (entity != null) entity.consumeContent();
+            	return null;
+            }
+            final boolean delta = Boolean.parseBoolean(getHeader(resp, HEADER_FEED_DELTA));
+            return new Download(request, readResponse(request, resp), 
+            		getHeader(resp, HEADER_FEED_MD5), null, null, delta);
+    	} catch (IOException e) {
+    		Log.w(TAG, "Problem fetching delta for " + url + ", fetching it completely", e);
+    		return null;
+    	}
+    }
+
+    /**
+     * Execute this {@link HttpUriRequest}, accepting either a
+     * {@link HttpStatus#SC_OK} or {@link HttpStatus#SC_NOT_MODIFIED} response.
+     */
+    private HttpResponse execute(HttpUriRequest request) throws JSONHandlerException {
         try {
             final HttpResponse resp = mHttpClient.execute(request);
             final int status = resp.getStatusLine().getStatusCode();
-            if (status != HttpStatus.SC_OK) {
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_NOT_MODIFIED) {
                 throw new JSONHandlerException("Unexpected server response " + resp.getStatusLine()
                         + " for " + request.getRequestLine());
             }
+            return resp;
+        } catch (JSONHandlerException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JSONHandlerException("Problem reading remote response for "
+                    + request.getRequestLine(), e);
+        }
+    }
 
-            final InputStream input = resp.getEntity().getContent();
+    /**
+     * Spill the body of a valid response to a temporary file in the cache
+     * directory, which is deleted again once it has been parsed.
+     */
+    private File readResponse(HttpUriRequest request, HttpResponse resp) throws JSONHandlerException {
+    	File file = null;
+        try {
+        	mCacheDir.mkdirs();
+        	file = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, mCacheDir);
+        	final HttpEntity entity = resp.getEntity();
+        	if (entity == null) {
+        		return file;
+        	}
+            final InputStream input = entity.getContent();
             try {
-            	BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-            	StringBuilder sb = new StringBuilder();
-            	String line;
-            	while ((line = reader.readLine()) != null) {
-            		sb.append(line);
+            	final OutputStream output = new FileOutputStream(file);
+            	try {
+	            	final byte [] buffer = new byte[8192];
+	            	int count;
+	            	while ((count = input.read(buffer)) != -1) {
+	            		output.write(buffer, 0, count);
+	            	}
+            	} finally {
+            		output.close();
             	}
-                String jsontext = sb.toString();
-                return new JSONArray(jsontext);
-            } catch (JSONException e) {
-                throw new JSONHandlerException("Malformed response for " + request.getRequestLine(), e);
+            	return file;
             } finally {
-                if (input != null) input.close();
+                input.close();
             }
-        } catch (JSONHandlerException e) {
-            throw e;
         } catch (IOException e) {
+        	if (file != null) file.delete();
             throw new JSONHandlerException("Problem reading remote response for "
                     + request.getRequestLine(), e);
         }
     }
-    
+
+    /**
+     * Stream the body of a downloaded response into the given {@link JSONHandler}.
+     */
+    private void parseDownload(Download download, JSONHandler handler) throws JSONHandlerException {
+        try {
+        	final Reader reader = new BufferedReader(new InputStreamReader(
+        			new FileInputStream(download.body), "UTF-8"));
+        	try {
+        		handler.parse(reader, mResolver);
+        	} finally {
+        		reader.close();
+        	}
+        } catch (JSONHandlerException e) {
+            throw new JSONHandlerException("Problem parsing remote response for " 
+            		+ download.request.getRequestLine(), e);
+        } catch (IOException e) {
+            throw new JSONHandlerException("Problem reading remote response for "
+                    + download.request.getRequestLine(), e);
+        }
+    }
+
+    private static String getHeader(HttpResponse resp, String name) {
+    	final Header header = resp.getFirstHeader(name);
+    	return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Response of a url that was downloaded into a temporary file, with a
+     * {@code null} body when it was not modified since the previous sync. The md5 hash is only
+     * known when the response came from the feed delta service.
+     */
+    private static class Download {
+    	final HttpUriRequest request;
+    	final File body;
+    	final String md5;
+    	final String etag;
+    	final String lastModified;
+    	final boolean delta;
+
+    	Download(HttpUriRequest request, File body, String md5, String etag, 
+    			String lastModified, boolean delta) {
+    		this.request = request;
+    		this.body = body;
+    		this.md5 = md5;
+    		this.etag = etag;
+    		this.lastModified = lastModified;
+    		this.delta = delta;
+    	}
+
+    	void delete() {
+    		if (body != null) body.delete();
+    	}
+    }
+
 }
@@ -23,7 +23,6 @@ import java.util.HashSet;
 
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Rooms;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -32,7 +31,6 @@ import org.json.JSONObject;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.net.Uri;
-import android.util.Log;
 
 
 /**
@@ -43,50 +41,54 @@ public class RemoteRoomsHandler extends JSONHandler {
 
     private static final String TAG = "RoomsHandler";
 
+    private final HashSet<String> mRoomIds = new HashSet<String>();
+    private HashSet<String> mExistingRoomIds;
+
     public RemoteRoomsHandler() {
 		super(ScheduleContract.CONTENT_AUTHORITY);
 	}
 
 	@Override
-	public ArrayList<ContentProviderOperation> parse(ArrayList<JSONArray> entries,
-			ContentResolver resolver) throws JSONException {
-		final ArrayList<ContentProviderOperation> batch = Lists.newArrayList();
-		final HashSet<String> roomIds = new HashSet<String>();
-
-		int nrEntries = 0;
-		for (JSONArray rooms : entries) {
-			Log.d(TAG, "Retrieved " + rooms.length() + " room entries.");
-			nrEntries += rooms.length();
-	
-	        for (int i = 0; i< rooms.length(); i++) {
-	            JSONObject room = rooms.getJSONObject(i);
-	            String id = room.getString("id");
-	            
-	            final String roomId = sanitizeId(id);
-	            final Uri roomUri = Rooms.buildRoomUri(roomId);
-	            roomIds.add(roomId);
-	            
-	            ContentProviderOperation.Builder builder;
-	            if (isRowExisting(Rooms.buildRoomUri(roomId), RoomsQuery.PROJECTION, resolver)) {
-	            	builder = ContentProviderOperation.newUpdate(roomUri);
-	            } else {
-		            builder = ContentProviderOperation.newInsert(Rooms.CONTENT_URI);
-		            builder.withValue(Rooms.ROOM_ID, roomId);
-	            }
-			    builder.withValue(Rooms.NAME, room.getString("name"));
-			    builder.withValue(Rooms.CAPACITY, room.getString("capacity"));
-			    batch.add(builder.build());
-	        }
-		}
-
-        if (isRemoteSync() && nrEntries > 0) {
-		    for (String lostId : getLostIds(roomIds, Rooms.CONTENT_URI, RoomsQuery.PROJECTION, RoomsQuery.ROOM_ID, resolver)) {
+	protected void prepare(ContentResolver resolver) {
+		mExistingRoomIds = snapshotIds(Rooms.CONTENT_URI, RoomsQuery.PROJECTION, RoomsQuery.ROOM_ID, resolver);
+	}
+
+	@Override
+	protected void parse(JSONObject room, ContentResolver resolver,
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+        String id = room.getString("id");
+        
+        final String roomId = sanitizeId(id);
+        final Uri roomUri = Rooms.buildRoomUri(roomId);
+        mRoomIds.add(roomId);
+        
+        ContentProviderOperation.Builder builder;
+        if (mExistingRoomIds.contains(roomId)) {
+        	builder = ContentProviderOperation.newUpdate(roomUri);
+        } else {
+            builder = ContentProviderOperation.newInsert(Rooms.CONTENT_URI);
+            builder.withValue(Rooms.ROOM_ID, roomId);
+        }
+	    builder.withValue(Rooms.NAME, room.getString("name"));
+	    builder.withValue(Rooms.CAPACITY, room.getString("capacity"));
+	    batch.add(builder.build());
+	}
+
+	@Override
+	protected void parseDeleted(JSONObject room, ContentResolver resolver,
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+        final String roomId = sanitizeId(room.getString("id"));
+        batch.add(ContentProviderOperation.newDelete(Rooms.buildRoomUri(roomId)).build());
+	}
+
+	@Override
+	protected void finish(ContentResolver resolver, ArrayList<ContentProviderOperation> batch) {
+        if (isRemoteSync() && !isDeltaSync() && getEntryCount() > 0) {
+		    for (String lostId : getLostIds(mRoomIds, mExistingRoomIds)) {
 		    	final Uri lostRoomUri = Rooms.buildRoomUri(lostId);
 		    	batch.add(ContentProviderOperation.newDelete(lostRoomUri).build());
 		    }
         }
-
-	    return batch;
 	}
 	
     private interface RoomsQuery {
@@ -18,14 +18,15 @@ package net.peterkuterna.android.apps.devoxxsched.io;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Rooms;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sessions;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
 import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.ParserUtils;
+import net.peterkuterna.android.apps.devoxxsched.util.Sets;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -33,10 +34,9 @@ import org.json.JSONObject;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.database.Cursor;
+import android.content.ContentValues;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.util.Log;
 
 
 /**
@@ -48,106 +48,131 @@ public class RemoteScheduleHandler extends JSONHandler {
 	
     private static final String TAG = "ScheduleHandler";
 
+    private final HashMap<String, ContentProviderOperation> mBlockBatchMap = Maps.newHashMap();
+    private final HashMap<String, ContentProviderOperation> mSessionUpdateBatchMap = Maps.newHashMap();
+    private final HashSet<String> mDeletedSessionIds = Sets.newHashSet();
+    private HashSet<String> mExistingBlockIds;
+    private HashSet<String> mExistingSessionIds;
+    private HashMap<String, ContentValues> mExistingRoomsByName;
+
     public RemoteScheduleHandler() {
 		super(ScheduleContract.CONTENT_AUTHORITY);
 	}
 
 	@Override
-	public ArrayList<ContentProviderOperation> parse(ArrayList<JSONArray> entries, ContentResolver resolver) throws JSONException {
-		final ArrayList<ContentProviderOperation> batch = Lists.newArrayList();
-		final HashMap<String, ContentProviderOperation> blockBatchMap = Maps.newHashMap();
-		final HashMap<String, ContentProviderOperation> sessionUpdateBatchMap = Maps.newHashMap();
-		
-		int nrEntries = 0;
-		for (JSONArray schedules : entries) {
-			Log.d(TAG, "Retrieved " + schedules.length() + " schedule entries.");
-			nrEntries += schedules.length();
-	
-	        for (int i=0; i<schedules.length(); i++) {
-	            JSONObject schedule = schedules.getJSONObject(i);
-	            
-	            final long startTime = ParserUtils.parseDevoxxTime(schedule.getString("fromTime"));
-	            final long endTime = ParserUtils.parseDevoxxTime(schedule.getString("toTime"));
-			    final String kind = schedule.getString("kind");
-	            
-	            final String blockId = Blocks.generateBlockId(kind, startTime, endTime);
-	            
-	            if (!blockBatchMap.containsKey(blockId)) {
-	                final Uri blockUri = Blocks.buildBlockUri(blockId);
-	                
-	                ContentProviderOperation.Builder builder;
-	                if (isRowExisting(Blocks.buildBlockUri(blockId), BlocksQuery.PROJECTION, resolver)) {
-	                	builder = ContentProviderOperation.newUpdate(blockUri);
-	                } else {
-	    	            builder = ContentProviderOperation.newInsert(Blocks.CONTENT_URI);
-	    	            builder.withValue(Blocks.BLOCK_ID, blockId);
-	                }
-	    		    builder.withValue(Blocks.BLOCK_START, startTime);
-	    		    builder.withValue(Blocks.BLOCK_END, endTime);
-	
-	    		    final String type = schedule.getString("type");
-	    		    final String code = schedule.getString("code");
-	    		    
-	    		    if (code.startsWith("D10")) {
-	    		    	builder.withValue(Blocks.BLOCK_TITLE, type.replaceAll("\\ \\(.*\\)", ""));
-	    		    } else {
-	    		    	builder.withValue(Blocks.BLOCK_TITLE, schedule.getString("code"));
-	    		    }
-	
-	    		    builder.withValue(Blocks.BLOCK_TYPE, kind);
-	    		    blockBatchMap.put(blockId, builder.build());
-	            }
-	            
-	            if (schedule.has("presentationUri")) {
-	            	final Uri presentationUri = Uri.parse(schedule.getString("presentationUri"));
-	            	final String sessionId = presentationUri.getLastPathSegment();
-	            	final Uri sessionUri = Sessions.buildSessionUri(sessionId);
-	            	
-	            	if (isRowExisting(sessionUri, SessionsQuery.PROJECTION, resolver)) {
-		            	String roomId = null;
-		                if (schedule.has("room")) {
-		                	final String roomName = schedule.getString("room");
-		                	Cursor cursor = resolver.query(Rooms.buildRoomsWithNameUri(roomName), RoomsQuery.PROJECTION, null, null, null);
-		                	if (cursor.moveToNext()) {
-		                		roomId = cursor.getString(RoomsQuery.ROOM_ID);
-		                	}
-		                	cursor.close();
-		                }
-		            	final ContentProviderOperation.Builder builder = ContentProviderOperation.newUpdate(sessionUri);
-		            	builder.withValue(Sessions.BLOCK_ID, blockId);
-		            	builder.withValue(Sessions.ROOM_ID, roomId);
-		            	if (schedule.has("note")) {
-		            		final String note = schedule.getString("note");
-		            		if (note != null && note.trim().length() > 0) {
-		            			builder.withValue(Sessions.NOTE, note.trim());
-		            		}
-		            	}
-		            	
-		            	sessionUpdateBatchMap.put(sessionId, builder.build());
-	            	}
-	            }
-	        }
+	protected void prepare(ContentResolver resolver) {
+		mExistingBlockIds = snapshotIds(Blocks.CONTENT_URI, BlocksQuery.PROJECTION, BlocksQuery.BLOCK_ID, resolver);
+		mExistingSessionIds = snapshotIds(Sessions.CONTENT_URI, SessionsQuery.PROJECTION, SessionsQuery.SESSION_ID, resolver);
+		mExistingRoomsByName = snapshot(Rooms.CONTENT_URI, RoomsQuery.PROJECTION, RoomsQuery.NAME, resolver);
+	}
+
+	@Override
+	protected void parse(JSONObject schedule, ContentResolver resolver, 
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+		final long startTime = ParserUtils.parseDevoxxTime(schedule.getString("fromTime"));
+		final long endTime = ParserUtils.parseDevoxxTime(schedule.getString("toTime"));
+		final String kind = schedule.getString("kind");
+
+		final String blockId = Blocks.generateBlockId(kind, startTime, endTime);
+
+		if (!mBlockBatchMap.containsKey(blockId)) {
+			final Uri blockUri = Blocks.buildBlockUri(blockId);
+
+			ContentProviderOperation.Builder builder;
+			if (mExistingBlockIds.contains(blockId)) {
+				builder = ContentProviderOperation.newUpdate(blockUri);
+			} else {
+				builder = ContentProviderOperation.newInsert(Blocks.CONTENT_URI);
+				builder.withValue(Blocks.BLOCK_ID, blockId);
+			}
+			builder.withValue(Blocks.BLOCK_START, startTime);
+			builder.withValue(Blocks.BLOCK_END, endTime);
+
+			final String type = schedule.getString("type");
+			final String code = schedule.getString("code");
+
+			if (code.startsWith("D10")) {
+				builder.withValue(Blocks.BLOCK_TITLE, type.replaceAll("\\ \\(.*\\)", ""));
+			} else {
+				builder.withValue(Blocks.BLOCK_TITLE, schedule.getString("code"));
+			}
+
+			builder.withValue(Blocks.BLOCK_TYPE, kind);
+			mBlockBatchMap.put(blockId, builder.build());
+		}
+
+		if (schedule.has("presentationUri")) {
+			final Uri presentationUri = Uri.parse(schedule.getString("presentationUri"));
+			final String sessionId = presentationUri.getLastPathSegment();
+			final Uri sessionUri = Sessions.buildSessionUri(sessionId);
+
+			if (mExistingSessionIds.contains(sessionId)) {
+				String roomId = null;
+				if (schedule.has("room")) {
+					final String roomName = schedule.getString("room");
+					final ContentValues room = mExistingRoomsByName.get(roomName);
+					if (room != null) {
+						roomId = room.getAsString(Rooms.ROOM_ID);
+					}
+				}
+				final ContentProviderOperation.Builder builder = ContentProviderOperation.newUpdate(sessionUri);
+				builder.withValue(Sessions.BLOCK_ID, blockId);
+				builder.withValue(Sessions.ROOM_ID, roomId);
+				if (schedule.has("note")) {
+					final String note = schedule.getString("note");
+					if (note != null && note.trim().length() > 0) {
+						builder.withValue(Sessions.NOTE, note.trim());
+					}
+				}
+
+				mSessionUpdateBatchMap.put(sessionId, builder.build());
+			}
 		}
-        
-        batch.addAll(blockBatchMap.values());
-        batch.addAll(sessionUpdateBatchMap.values());
+	}
+
+	/**
+	 * A removed schedule entry takes its session along, just like a session
+	 * that is no longer scheduled during a full sync. Entries moving to
+	 * another slot are removed and added again, so the session is only
+	 * deleted in {@link #finish} when no other entry refers to it. Blocks
+	 * are shared by several entries, so they are only cleaned up by a full
+	 * sync.
+	 */
+	@Override
+	protected void parseDeleted(JSONObject schedule, ContentResolver resolver, 
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+		if (schedule.has("presentationUri")) {
+			final Uri presentationUri = Uri.parse(schedule.getString("presentationUri"));
+			mDeletedSessionIds.add(presentationUri.getLastPathSegment());
+		}
+	}
 
-        if (isRemoteSync() && nrEntries > 0) {
-		    for (String lostId : getLostIds(blockBatchMap.keySet(), Blocks.CONTENT_URI, BlocksQuery.PROJECTION, BlocksQuery.BLOCK_ID, resolver)) {
+	@Override
+	protected void finish(ContentResolver resolver, ArrayList<ContentProviderOperation> batch) {
+        batch.addAll(mBlockBatchMap.values());
+        batch.addAll(mSessionUpdateBatchMap.values());
+
+        for (String deletedId : mDeletedSessionIds) {
+        	if (!mSessionUpdateBatchMap.containsKey(deletedId)) {
+		    	batch.add(ContentProviderOperation.newDelete(Sessions.buildSpeakersDirUri(deletedId)).build());
+		    	batch.add(ContentProviderOperation.newDelete(Sessions.buildSessionUri(deletedId)).build());
+        	}
+        }
+
+        if (isRemoteSync() && !isDeltaSync() && getEntryCount() > 0) {
+		    for (String lostId : getLostIds(mBlockBatchMap.keySet(), mExistingBlockIds)) {
 		    	if (!lostId.startsWith("lab")) {
 		    		final Uri lostBlockUri = Blocks.buildBlockUri(lostId);
 			    	batch.add(ContentProviderOperation.newDelete(lostBlockUri).build());
 		    	}
 		    }
-		    for (String lostId : getLostIds(sessionUpdateBatchMap.keySet(), Sessions.CONTENT_URI, SessionsQuery.PROJECTION, SessionsQuery.SESSION_ID, resolver)) {
+		    for (String lostId : getLostIds(mSessionUpdateBatchMap.keySet(), mExistingSessionIds)) {
 		    	Uri deleteUri = Sessions.buildSpeakersDirUri(lostId);
 		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
 		    	deleteUri = Sessions.buildSessionUri(lostId);
 		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
 		    }
         }
-
-        return batch;
 	}
 
     private interface SessionsQuery {
@@ -170,10 +195,12 @@ public class RemoteScheduleHandler extends JSONHandler {
         String[] PROJECTION = {
                 BaseColumns._ID,
                 Rooms.ROOM_ID,
+                Rooms.NAME,
         };
 
         int _ID = 0;
         int ROOM_ID = 1;
+        int NAME = 2;
     }
     
 }
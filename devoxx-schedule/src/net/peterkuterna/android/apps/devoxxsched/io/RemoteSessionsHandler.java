@@ -21,15 +21,13 @@ import static net.peterkuterna.android.apps.devoxxsched.util.ParserUtils.sanitiz
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map.Entry;
 
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sessions;
-import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Tracks;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.SessionsSpeakers;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
 import net.peterkuterna.android.apps.devoxxsched.util.Maps;
+import net.peterkuterna.android.apps.devoxxsched.util.ParserUtils;
 import net.peterkuterna.android.apps.devoxxsched.util.Sets;
 
 import org.json.JSONArray;
@@ -38,6 +36,7 @@ import org.json.JSONObject;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.graphics.Color;
 import android.net.Uri;
@@ -71,148 +70,185 @@ public class RemoteSessionsHandler extends JSONHandler {
     private static final String COLOR_OTHER = "#FFBF0000";
     private static final String COLOR_DEFAULT = "#FF272526";
     
+    private final HashSet<String> mSessionIds = Sets.newHashSet();
+    private final HashSet<String> mTrackIds = Sets.newHashSet();
+    private HashMap<String, ContentValues> mExistingSessions;
+    private HashSet<String> mExistingTrackIds;
+    private HashMap<String, HashSet<String>> mExistingSessionSpeakerIds;
+    
     public RemoteSessionsHandler() {
 		super(ScheduleContract.CONTENT_AUTHORITY);
 	}
 
 	@Override
-	public ArrayList<ContentProviderOperation> parse(ArrayList<JSONArray> entries, ContentResolver resolver) throws JSONException {
-		final ArrayList<ContentProviderOperation> batch = Lists.newArrayList();
-		final HashSet<String> sessionIds = Sets.newHashSet();
-		final HashSet<String> trackIds = Sets.newHashSet();
-		final HashMap<String, HashSet<String>> sessionSpeakerIds = Maps.newHashMap();
-		
-		int nrEntries = 0;
-		for (JSONArray sessions : entries) {
-			Log.d(TAG, "Retrieved " + sessions.length() + " presentation entries.");
-			nrEntries += sessions.length();
-	
-	        for (int i=0; i < sessions.length(); i++) {
-	            JSONObject session = sessions.getJSONObject(i);
-	            String id = session.getString("id");
-	            
-	            final String sessionId = sanitizeId(id);
-	            final Uri sessionUri = Sessions.buildSessionUri(sessionId);
-	            sessionIds.add(sessionId);
-	            int isStarred = isStarred(sessionUri, resolver);
-	
-	            boolean sessionUpdated = false;
-	            boolean newSession = false;
-	            ContentProviderOperation.Builder builder;
-	            if (isRowExisting(sessionUri, SessionsQuery.PROJECTION, resolver)) {
-	            	builder = ContentProviderOperation.newUpdate(sessionUri);
-	            	builder.withValue(Sessions.NEW, false);
-	        		sessionUpdated = isSessionUpdated(sessionUri, session, resolver);
-	    			if (isRemoteSync()) {
-	            		builder.withValue(Sessions.UPDATED, sessionUpdated);
-	            	}
-	            } else {
-	            	newSession = true;
-		            builder = ContentProviderOperation.newInsert(Sessions.CONTENT_URI);
-		            builder.withValue(Sessions.SESSION_ID, sessionId);
-		            if (!isLocalSync()) {
-		            	builder.withValue(Sessions.NEW, true);
-		            }
-	            }
-	            
-	            if (newSession || sessionUpdated) {
-				    builder.withValue(Sessions.TITLE, session.getString("title"));
-				    builder.withValue(Sessions.EXPERIENCE, session.getString("experience"));
-				    builder.withValue(Sessions.TYPE, session.getString("type"));
-				    builder.withValue(Sessions.SUMMARY, session.getString("summary"));
-				    builder.withValue(Sessions.STARRED, isStarred);
-	            }
-			    
-	        	batch.add(builder.build());
-			    
-			    if (session.has("track")) {
-			    	final String trackName = session.getString("track");
-			    	final String trackId = Tracks.generateTrackId(trackName);
-			    	final Uri trackUri = Tracks.buildTrackUri(trackId);
-	
-				    if (!trackIds.contains(trackId)) {
-				    	trackIds.add(trackId);
-				    	
-			            ContentProviderOperation.Builder trackBuilder;
-			            if (isRowExisting(Tracks.buildTrackUri(trackId), TracksQuery.PROJECTION, resolver)) {
-			            	trackBuilder = ContentProviderOperation.newUpdate(trackUri);
-			            } else {
-			            	trackBuilder = ContentProviderOperation.newInsert(Tracks.CONTENT_URI);
-			            	trackBuilder.withValue(Tracks.TRACK_ID, trackId);
-			            }
-	
-		                trackBuilder.withValue(Tracks.TRACK_NAME, trackName);
-		                final int color = Color.parseColor(getTrackColor(trackId));
-		                trackBuilder.withValue(Tracks.TRACK_COLOR, color);
-		    		    batch.add(trackBuilder.build());
-				    }
-				    
-		            if (newSession || sessionUpdated) {
-					    builder.withValue(Sessions.TRACK_ID, trackId);
-		            }
-			    }
-			    
-			    if (session.has("speakers")) {
-				    final Uri speakerSessionsUri = Sessions.buildSpeakersDirUri(sessionId);
-			    	final JSONArray speakers = session.getJSONArray("speakers");
-					final HashSet<String> speakerIds = Sets.newHashSet();
-			    	
-			    	if (!isLocalSync()) {
-	            		final boolean sessionSpeakersUpdated = isSessionSpeakersUpdated(speakerSessionsUri, speakers, resolver);
-			    		if (sessionSpeakersUpdated) {
-				    		Log.d(TAG, "Speakers of session with id " + sessionId + " was udpated.");
-				    		batch.add(ContentProviderOperation.newUpdate(sessionUri)
-				    				.withValue(Sessions.UPDATED, true)
-				    				.build());
-			    		}
-			    	}
-			    	
-			    	for (int j = 0; j < speakers.length(); j++) {
-			    		JSONObject speaker = speakers.getJSONObject(j);
-			    		
-		            	final Uri speakerUri = Uri.parse(speaker.getString("speakerUri"));
-		            	final String speakerId = speakerUri.getLastPathSegment();
-		            	speakerIds.add(speakerId);
-	
-				    	batch.add(ContentProviderOperation.newInsert(speakerSessionsUri)
-				    			.withValue(SessionsSpeakers.SPEAKER_ID, speakerId)
-				    			.withValue(SessionsSpeakers.SESSION_ID, sessionId).build());
-			    	}
-			    	
-			    	sessionSpeakerIds.put(sessionId, speakerIds);
-			    }
-	        }
+	protected void prepare(ContentResolver resolver) {
+		mExistingSessions = snapshot(Sessions.CONTENT_URI, SessionsQuery.PROJECTION, SessionsQuery.SESSION_ID, resolver);
+		mExistingTrackIds = snapshotIds(Tracks.CONTENT_URI, TracksQuery.PROJECTION, TracksQuery.TRACK_ID, resolver);
+		mExistingSessionSpeakerIds = Maps.newHashMap();
+		final Cursor cursor = resolver.query(Sessions.CONTENT_SPEAKERS_URI, SessionsSpeakersQuery.PROJECTION, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				final String sessionId = cursor.getString(SessionsSpeakersQuery.SESSION_ID);
+				HashSet<String> speakerIds = mExistingSessionSpeakerIds.get(sessionId);
+				if (speakerIds == null) {
+					speakerIds = Sets.newHashSet();
+					mExistingSessionSpeakerIds.put(sessionId, speakerIds);
+				}
+				speakerIds.add(cursor.getString(SessionsSpeakersQuery.SPEAKER_ID));
+			}
+		} finally {
+			cursor.close();
 		}
-        
-        if (isRemoteSync() && nrEntries > 0) {
-        	for (Entry<String, HashSet<String>> entry : sessionSpeakerIds.entrySet()) {
-        		String sessionId = entry.getKey();
-        		HashSet<String> speakerIds = entry.getValue();
-			    final Uri speakerSessionsUri = Sessions.buildSpeakersDirUri(sessionId);
-    	    	HashSet<String> lostSpeakerIds = getLostIds(speakerIds, speakerSessionsUri, SpeakersQuery.PROJECTION, SpeakersQuery.SPEAKER_ID, resolver);
-            	for (String lostSpeakerId : lostSpeakerIds) {
-	        		final Uri deleteUri = Sessions.buildSessionSpeakerUri(sessionId, lostSpeakerId);
-			    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
-            	}
-        	}
+	}
+
+	@Override
+	protected void parse(JSONObject session, ContentResolver resolver, 
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+		String id = session.getString("id");
+
+		final String sessionId = sanitizeId(id);
+		final Uri sessionUri = Sessions.buildSessionUri(sessionId);
+		mSessionIds.add(sessionId);
+		final ContentValues existing = mExistingSessions.get(sessionId);
+		int isStarred = isStarred(existing);
+
+		final long contentHash = ParserUtils.contentHash(session.getString("title"),
+				session.getString("summary"), session.getString("experience"),
+				session.getString("type"));
+
+		boolean sessionUpdated = false;
+		boolean newSession = false;
+		ContentProviderOperation.Builder builder;
+		if (existing != null) {
+			final Long existingHash = existing.getAsLong(Sessions.CONTENT_HASH);
+			if (existingHash != null) {
+				sessionUpdated = existingHash != contentHash;
+			} else {
+				sessionUpdated = isSessionUpdated(existing, session);
+			}
+			builder = ContentProviderOperation.newUpdate(sessionUri);
+			builder.withValue(Sessions.NEW, false);
+			if (isRemoteSync()) {
+				builder.withValue(Sessions.UPDATED, sessionUpdated);
+			}
+			if (existingHash != null && !sessionUpdated && !isFlagged(existing)) {
+				// Nothing changed and no flags to reset, skip this session
+				builder = null;
+			}
+		} else {
+			newSession = true;
+			builder = ContentProviderOperation.newInsert(Sessions.CONTENT_URI);
+			builder.withValue(Sessions.SESSION_ID, sessionId);
+			if (!isLocalSync()) {
+				builder.withValue(Sessions.NEW, true);
+			}
+		}
+
+		if (newSession || sessionUpdated) {
+			builder.withValue(Sessions.TITLE, session.getString("title"));
+			builder.withValue(Sessions.EXPERIENCE, session.getString("experience"));
+			builder.withValue(Sessions.TYPE, session.getString("type"));
+			builder.withValue(Sessions.SUMMARY, session.getString("summary"));
+			builder.withValue(Sessions.STARRED, isStarred);
+		}
+
+		if (builder != null) {
+			builder.withValue(Sessions.CONTENT_HASH, contentHash);
+			batch.add(builder.build());
+		}
+
+		if (session.has("track")) {
+			final String trackName = session.getString("track");
+			final String trackId = Tracks.generateTrackId(trackName);
+			final Uri trackUri = Tracks.buildTrackUri(trackId);
+
+			if (!mTrackIds.contains(trackId)) {
+				mTrackIds.add(trackId);
+
+				ContentProviderOperation.Builder trackBuilder;
+				if (mExistingTrackIds.contains(trackId)) {
+					trackBuilder = ContentProviderOperation.newUpdate(trackUri);
+				} else {
+					trackBuilder = ContentProviderOperation.newInsert(Tracks.CONTENT_URI);
+					trackBuilder.withValue(Tracks.TRACK_ID, trackId);
+				}
+
+				trackBuilder.withValue(Tracks.TRACK_NAME, trackName);
+				final int color = Color.parseColor(getTrackColor(trackId));
+				trackBuilder.withValue(Tracks.TRACK_COLOR, color);
+				batch.add(trackBuilder.build());
+			}
+
+			if (newSession || sessionUpdated) {
+				builder.withValue(Sessions.TRACK_ID, trackId);
+			}
+		}
+
+		if (session.has("speakers")) {
+			final Uri speakerSessionsUri = Sessions.buildSpeakersDirUri(sessionId);
+			final JSONArray speakers = session.getJSONArray("speakers");
+			final HashSet<String> speakerIds = Sets.newHashSet();
 
-        	HashSet<String> lostSessionIds = getLostIds(sessionIds, Sessions.CONTENT_URI, SessionsQuery.PROJECTION, SessionsQuery.SESSION_ID, resolver);
-        	HashSet<String> lostTrackIds = getLostIds(trackIds, Tracks.CONTENT_URI, TracksQuery.PROJECTION, TracksQuery.TRACK_ID, resolver);
+			for (int j = 0; j < speakers.length(); j++) {
+				JSONObject speaker = speakers.getJSONObject(j);
+
+				final Uri speakerUri = Uri.parse(speaker.getString("speakerUri"));
+				speakerIds.add(speakerUri.getLastPathSegment());
+			}
+
+			final HashSet<String> existingSpeakerIds = mExistingSessionSpeakerIds.get(sessionId);
+			if (!isLocalSync() && isSessionSpeakersUpdated(existingSpeakerIds, speakerIds)) {
+				Log.d(TAG, "Speakers of session with id " + sessionId + " was udpated.");
+				batch.add(ContentProviderOperation.newUpdate(sessionUri)
+						.withValue(Sessions.UPDATED, true)
+						.build());
+			}
+
+			// Only links that are not there yet are inserted, so an
+			// unchanged session doesn't rewrite its speakers
+			for (String speakerId : speakerIds) {
+				if (existingSpeakerIds == null || !existingSpeakerIds.contains(speakerId)) {
+					batch.add(ContentProviderOperation.newInsert(speakerSessionsUri)
+							.withValue(SessionsSpeakers.SPEAKER_ID, speakerId)
+							.withValue(SessionsSpeakers.SESSION_ID, sessionId).build());
+				}
+			}
+
+			if (isRemoteSync() && existingSpeakerIds != null) {
+				for (String lostSpeakerId : getLostIds(speakerIds, existingSpeakerIds)) {
+					final Uri deleteUri = Sessions.buildSessionSpeakerUri(sessionId, lostSpeakerId);
+					batch.add(ContentProviderOperation.newDelete(deleteUri).build());
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void parseDeleted(JSONObject session, ContentResolver resolver, 
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+		deleteSession(sanitizeId(session.getString("id")), batch);
+	}
+
+	@Override
+	protected void finish(ContentResolver resolver, ArrayList<ContentProviderOperation> batch) {
+        if (isRemoteSync() && !isDeltaSync() && getEntryCount() > 0) {
+        	HashSet<String> lostSessionIds = getLostIds(mSessionIds, mExistingSessions.keySet());
+        	HashSet<String> lostTrackIds = getLostIds(mTrackIds, mExistingTrackIds);
         	for (String lostTrackId : lostTrackIds) {
-        		Uri deleteUri = Tracks.buildSessionsUri(lostTrackId);
-		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
-		    	deleteUri = Tracks.buildTrackUri(lostTrackId);
+        		final Uri deleteUri = Tracks.buildTrackUri(lostTrackId);
 		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
         	}
         	for (String lostSessionId : lostSessionIds) {
-		    	Uri deleteUri = Sessions.buildSpeakersDirUri(lostSessionId);
-		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
-		    	deleteUri = Sessions.buildSessionUri(lostSessionId);
-		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
+        		deleteSession(lostSessionId, batch);
         	}
         }
-        
-        return batch;
+	}
+
+	private static void deleteSession(String sessionId, ArrayList<ContentProviderOperation> batch) {
+    	Uri deleteUri = Sessions.buildSpeakersDirUri(sessionId);
+    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
+    	deleteUri = Sessions.buildSessionUri(sessionId);
+    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
 	}
 
 	private static final String getTrackColor(String trackId) {
@@ -237,50 +273,41 @@ public class RemoteSessionsHandler extends JSONHandler {
 		}
 	}
 	
-	private static int isStarred(Uri uri, ContentResolver resolver) {
-        final Cursor cursor = resolver.query(uri, SessionsQuery.PROJECTION, null, null, null);
-        int starred = 0;
-        try {
-            if (cursor.moveToFirst()) {
-            	starred = cursor.getInt(SessionsQuery.STARRED);
-            }
-        } finally {
-            cursor.close();
-        }
-        return starred;
-    }
+	private static int isStarred(ContentValues existing) {
+		if (existing == null) return 0;
+		final Integer starred = existing.getAsInteger(Sessions.STARRED);
+		return starred != null ? starred : 0;
+	}
 	
-	private static boolean isSessionUpdated(Uri uri, JSONObject session, ContentResolver resolver) throws JSONException {
-        final Cursor cursor = resolver.query(uri, SessionsQuery.PROJECTION, null, null, null);
-        try {
-            if (!cursor.moveToFirst()) return false;
-
-            final String curTitle = cursor.getString(SessionsQuery.TITLE).toLowerCase().trim();
-        	final String curSummary = cursor.getString(SessionsQuery.SUMMARY).toLowerCase().trim();
-        	final String curExperience = cursor.getString(SessionsQuery.EXPERIENCE).toLowerCase().trim();
-        	final String curType = cursor.getString(SessionsQuery.TYPE).toLowerCase().trim();
-        	final String newTitle = session.getString("title").toLowerCase().trim();
-        	final String newSummary = session.getString("summary").toLowerCase().trim();
-        	final String newExperience = session.getString("experience").toLowerCase().trim();
-        	final String newType = session.getString("type").toLowerCase().trim();
-        	
-        	return (!curTitle.equals(newTitle)
-        			|| !curSummary.equals(newSummary)
-        			|| !curExperience.equals(newExperience)
-        			|| !curType.equals(newType));
-        } finally {
-            cursor.close();
-        }
+	/**
+	 * Is the given session still marked as new or updated?
+	 */
+	private boolean isFlagged(ContentValues existing) {
+		final Integer isNew = existing.getAsInteger(Sessions.NEW);
+		final Integer isUpdated = existing.getAsInteger(Sessions.UPDATED);
+		return (isNew != null && isNew != 0)
+				|| (isRemoteSync() && isUpdated != null && isUpdated != 0);
 	}
 
-	private static boolean isSessionSpeakersUpdated(Uri uri, JSONArray speakers, ContentResolver resolver) throws JSONException {
-        final Cursor cursor = resolver.query(uri, SpeakersQuery.PROJECTION, null, null, null);
-        try {
-            if (!cursor.moveToFirst()) return false;
-            return cursor.getCount() != speakers.length();
-        } finally {
-            cursor.close();
-        }
+	private static boolean isSessionUpdated(ContentValues existing, JSONObject session) throws JSONException {
+		final String curTitle = existing.getAsString(Sessions.TITLE).toLowerCase().trim();
+		final String curSummary = existing.getAsString(Sessions.SUMMARY).toLowerCase().trim();
+		final String curExperience = existing.getAsString(Sessions.EXPERIENCE).toLowerCase().trim();
+		final String curType = existing.getAsString(Sessions.TYPE).toLowerCase().trim();
+		final String newTitle = session.getString("title").toLowerCase().trim();
+		final String newSummary = session.getString("summary").toLowerCase().trim();
+		final String newExperience = session.getString("experience").toLowerCase().trim();
+		final String newType = session.getString("type").toLowerCase().trim();
+
+		return (!curTitle.equals(newTitle)
+				|| !curSummary.equals(newSummary)
+				|| !curExperience.equals(newExperience)
+				|| !curType.equals(newType));
+	}
+
+	private static boolean isSessionSpeakersUpdated(HashSet<String> existingSpeakerIds, HashSet<String> speakerIds) {
+		if (existingSpeakerIds == null) return false;
+		return !existingSpeakerIds.equals(speakerIds);
 	}
 
     private interface SessionsQuery {
@@ -291,6 +318,9 @@ public class RemoteSessionsHandler extends JSONHandler {
         		Sessions.EXPERIENCE,
         		Sessions.TYPE,
                 Sessions.STARRED,
+                Sessions.NEW,
+                Sessions.UPDATED,
+                Sessions.CONTENT_HASH,
         };
 
         int SESSION_ID = 0;
@@ -299,14 +329,19 @@ public class RemoteSessionsHandler extends JSONHandler {
         int EXPERIENCE = 3;
         int TYPE = 4;
         int STARRED = 5;
+        int NEW = 6;
+        int UPDATED = 7;
+        int CONTENT_HASH = 8;
     }
 
-    private interface SpeakersQuery {
+    private interface SessionsSpeakersQuery {
         String[] PROJECTION = {
-        		Speakers.SPEAKER_ID,
+        		SessionsSpeakers.SESSION_ID,
+        		SessionsSpeakers.SPEAKER_ID,
         };
 
-        int SPEAKER_ID = 0;
+        int SESSION_ID = 0;
+        int SPEAKER_ID = 1;
     }
 
     private interface TracksQuery {
@@ -19,11 +19,12 @@ package net.peterkuterna.android.apps.devoxxsched.io;
 import static net.peterkuterna.android.apps.devoxxsched.util.ParserUtils.sanitizeId;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import net.peterkuterna.android.apps.devoxxsched.util.ParserUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,9 +32,8 @@ import org.json.JSONObject;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.database.Cursor;
+import android.content.ContentValues;
 import android.net.Uri;
-import android.util.Log;
 
 
 /**
@@ -44,90 +44,104 @@ public class RemoteSpeakersHandler extends JSONHandler {
 
     private static final String TAG = "SpeakersHandler";
 
+    private final HashSet<String> mSpeakerIds = new HashSet<String>();
+    private HashMap<String, ContentValues> mExistingSpeakers;
+
     public RemoteSpeakersHandler() {
 		super(ScheduleContract.CONTENT_AUTHORITY);
 	}
 
 	@Override
-	public ArrayList<ContentProviderOperation> parse(ArrayList<JSONArray> entries,
-			ContentResolver resolver) throws JSONException {
-		final ArrayList<ContentProviderOperation> batch = Lists.newArrayList();
-		final HashSet<String> speakerIds = new HashSet<String>();
-		
-		int nrEntries = 0;
-		for (JSONArray speakers : entries) {
-			Log.d(TAG, "Retrieved " + speakers.length() + " speaker entries.");
-			nrEntries += speakers.length();
-	
-	        for (int i=0; i < speakers.length(); i++) {
-	            JSONObject speaker = speakers.getJSONObject(i);
-	            String id = speaker.getString("id");
-	            
-	            final String speakerId = sanitizeId(id);
-	            final Uri speakerUri = Speakers.buildSpeakerUri(speakerId);
-	            speakerIds.add(speakerId);
-	            
-	            boolean speakerUpdated = false;
-	            boolean newSpeaker = false;
-	            boolean build = false;
-	            ContentProviderOperation.Builder builder;
-	            if (isRowExisting(Speakers.buildSpeakerUri(speakerId), SpeakersQuery.PROJECTION, resolver)) {
-	            	builder = ContentProviderOperation.newUpdate(speakerUri);
-	            	speakerUpdated = isSpeakerUpdated(speakerUri, speaker, resolver);
-	            } else {
-	            	newSpeaker = true;
-		            builder = ContentProviderOperation.newInsert(Speakers.CONTENT_URI);
-				    builder.withValue(Speakers.SPEAKER_ID, speakerId);
-				    build = true;
-	            }
-	            
-	            if (newSpeaker || speakerUpdated) {
-				    builder.withValue(Speakers.FIRST_NAME, speaker.getString("firstName"));
-				    builder.withValue(Speakers.LAST_NAME, speaker.getString("lastName"));
-				    builder.withValue(Speakers.BIO, speaker.getString("bio"));
-				    builder.withValue(Speakers.COMPANY, speaker.getString("company"));
-				    builder.withValue(Speakers.IMAGE_URL, speaker.getString("imageURI"));
-				    build = true;
-	            }
-	            if (build) batch.add(builder.build());
-	        }
-		}
+	protected void prepare(ContentResolver resolver) {
+		mExistingSpeakers = snapshot(Speakers.CONTENT_URI, SpeakersQuery.PROJECTION, SpeakersQuery.SPEAKER_ID, resolver);
+	}
+
+	@Override
+	protected void parse(JSONObject speaker, ContentResolver resolver,
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+        String id = speaker.getString("id");
         
-        if (isRemoteSync() && nrEntries > 0) {
-		    for (String lostId : getLostIds(speakerIds, Speakers.CONTENT_URI, SpeakersQuery.PROJECTION, SpeakersQuery.SPEAKER_ID, resolver)) {
-		    	Uri deleteUri = Speakers.buildSessionsDirUri(lostId);
-		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
-		    	deleteUri = Speakers.buildSpeakerUri(lostId);
-		    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
-		    }
+        final String speakerId = sanitizeId(id);
+        final Uri speakerUri = Speakers.buildSpeakerUri(speakerId);
+        mSpeakerIds.add(speakerId);
+        
+        boolean speakerUpdated = false;
+        boolean newSpeaker = false;
+        boolean build = false;
+        ContentProviderOperation.Builder builder;
+        final long contentHash = ParserUtils.contentHash(speaker.optString("firstName"),
+        		speaker.optString("lastName"), speaker.optString("bio"),
+        		speaker.optString("company"));
+        final ContentValues existing = mExistingSpeakers.get(speakerId);
+        if (existing != null) {
+        	builder = ContentProviderOperation.newUpdate(speakerUri);
+        	final Long existingHash = existing.getAsLong(Speakers.CONTENT_HASH);
+        	if (existingHash != null) {
+        		speakerUpdated = existingHash != contentHash;
+        	} else {
+        		// Fill in the hash of speakers synced before it was stored
+        		speakerUpdated = isSpeakerUpdated(existing, speaker);
+        		build = true;
+        	}
+        } else {
+        	newSpeaker = true;
+            builder = ContentProviderOperation.newInsert(Speakers.CONTENT_URI);
+		    builder.withValue(Speakers.SPEAKER_ID, speakerId);
+		    build = true;
+        }
+        
+        if (newSpeaker || speakerUpdated) {
+		    builder.withValue(Speakers.FIRST_NAME, speaker.getString("firstName"));
+		    builder.withValue(Speakers.LAST_NAME, speaker.getString("lastName"));
+		    builder.withValue(Speakers.BIO, speaker.getString("bio"));
+		    builder.withValue(Speakers.COMPANY, speaker.getString("company"));
+		    builder.withValue(Speakers.IMAGE_URL, speaker.getString("imageURI"));
+		    build = true;
         }
+        if (build) {
+        	builder.withValue(Speakers.CONTENT_HASH, contentHash);
+        	batch.add(builder.build());
+        }
+	}
 
-        return batch;
+	@Override
+	protected void parseDeleted(JSONObject speaker, ContentResolver resolver,
+			ArrayList<ContentProviderOperation> batch) throws JSONException {
+		deleteSpeaker(sanitizeId(speaker.getString("id")), batch);
 	}
 
-	private static boolean isSpeakerUpdated(Uri uri, JSONObject speaker, ContentResolver resolver) throws JSONException {
-        final Cursor cursor = resolver.query(uri, SpeakersQuery.PROJECTION, null, null, null);
-        try {
-            if (!cursor.moveToFirst()) return false;
-
-            final String curFirstName = cursor.getString(SpeakersQuery.FIRST_NAME).toLowerCase().trim();
-        	final String curLastName = cursor.getString(SpeakersQuery.LAST_NAME).toLowerCase().trim();
-        	final String curBio = cursor.getString(SpeakersQuery.BIO).toLowerCase().trim();
-        	final String curCompany = cursor.getString(SpeakersQuery.COMPANY).toLowerCase().trim();
-        	final String newFirstName = speaker.has("firstName") ? speaker.getString("firstName").toLowerCase().trim() : curFirstName;
-        	final String newLastName = speaker.has("lastName") ? speaker.getString("lastName").toLowerCase().trim() : curLastName;
-        	final String newBio = speaker.has("bio") ? speaker.getString("bio").toLowerCase().trim() : curBio;
-        	final String newCompany = speaker.has("company") ? speaker.getString("company").toLowerCase().trim() : curCompany;
-        	
-        	return (!curFirstName.equals(newFirstName)
-        			|| !curLastName.equals(newLastName)
-        			|| !curBio.equals(newBio)
-        			|| !curCompany.equals(newCompany));
-        } finally {
-            cursor.close();
+	@Override
+	protected void finish(ContentResolver resolver, ArrayList<ContentProviderOperation> batch) {
+        if (isRemoteSync() && !isDeltaSync() && getEntryCount() > 0) {
+		    for (String lostId : getLostIds(mSpeakerIds, mExistingSpeakers.keySet())) {
+		    	deleteSpeaker(lostId, batch);
+		    }
         }
 	}
 
+	private static void deleteSpeaker(String speakerId, ArrayList<ContentProviderOperation> batch) {
+    	Uri deleteUri = Speakers.buildSessionsDirUri(speakerId);
+    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
+    	deleteUri = Speakers.buildSpeakerUri(speakerId);
+    	batch.add(ContentProviderOperation.newDelete(deleteUri).build());
+	}
+
+	private static boolean isSpeakerUpdated(ContentValues existing, JSONObject speaker) throws JSONException {
+		final String curFirstName = existing.getAsString(Speakers.FIRST_NAME).toLowerCase().trim();
+		final String curLastName = existing.getAsString(Speakers.LAST_NAME).toLowerCase().trim();
+		final String curBio = existing.getAsString(Speakers.BIO).toLowerCase().trim();
+		final String curCompany = existing.getAsString(Speakers.COMPANY).toLowerCase().trim();
+		final String newFirstName = speaker.has("firstName") ? speaker.getString("firstName").toLowerCase().trim() : curFirstName;
+		final String newLastName = speaker.has("lastName") ? speaker.getString("lastName").toLowerCase().trim() : curLastName;
+		final String newBio = speaker.has("bio") ? speaker.getString("bio").toLowerCase().trim() : curBio;
+		final String newCompany = speaker.has("company") ? speaker.getString("company").toLowerCase().trim() : curCompany;
+
+		return (!curFirstName.equals(newFirstName)
+				|| !curLastName.equals(newLastName)
+				|| !curBio.equals(newBio)
+				|| !curCompany.equals(newCompany));
+	}
+
 	
     private interface SpeakersQuery {
         String[] PROJECTION = {
@@ -136,6 +150,7 @@ public class RemoteSpeakersHandler extends JSONHandler {
                 Speakers.LAST_NAME,
                 Speakers.BIO,
                 Speakers.COMPANY,
+                Speakers.CONTENT_HASH,
         };
 
         int SPEAKER_ID = 0;
@@ -143,6 +158,7 @@ public class RemoteSpeakersHandler extends JSONHandler {
         int LAST_NAME = 2;
         int BIO = 3;
         int COMPANY = 4;
+        int CONTENT_HASH = 5;
     }
 
 }
@@ -4,10 +4,18 @@ public class RequestHash {
 	
 	private final String url;
 	private final String md5;
+	private final String etag;
+	private final String lastModified;
 
 	public RequestHash(String url, String md5) {
+		this(url, md5, null, null);
+	}
+
+	public RequestHash(String url, String md5, String etag, String lastModified) {
 		this.url = url;
 		this.md5 = md5;
+		this.etag = etag;
+		this.lastModified = lastModified;
 	}
 
 	public String getUrl() {
@@ -18,4 +26,12 @@ public class RequestHash {
 		return md5;
 	}
 
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.android.apps.devoxxsched.provider;
+
+import java.util.ArrayList;
+
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.Tables;
+import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * In-memory index on the time intervals of all {@link Blocks}, answering
+ * which blocks overlap a time without going through the blocks table.
+ * Blocks are kept sorted on {@link Blocks#BLOCK_START}. The sorted array
+ * doubles as a balanced interval tree: the node of a range is its middle
+ * block, which also holds the maximum {@link Blocks#BLOCK_END} of the
+ * whole range. A lookup skips every range ending too early or starting too
+ * late, so a single long block does not make it walk all the others.
+ * <p>
+ * The index is a snapshot, {@link ScheduleProvider} builds a new one after
+ * blocks have changed.
+ */
+final class BlockIntervalIndex {
+
+    private interface BlocksQuery {
+        String[] PROJECTION = {
+                Blocks.BLOCK_ID,
+                Blocks.BLOCK_START,
+                Blocks.BLOCK_END,
+        };
+
+        int BLOCK_ID = 0;
+        int BLOCK_START = 1;
+        int BLOCK_END = 2;
+    }
+
+    private final String[] mBlockIds;
+    private final long[] mStarts;
+    private final long[] mEnds;
+    private final long[] mMaxEnds;
+
+    private BlockIntervalIndex(int count) {
+        mBlockIds = new String[count];
+        mStarts = new long[count];
+        mEnds = new long[count];
+        mMaxEnds = new long[count];
+    }
+
+    /**
+     * Build an index from the current content of {@link Tables#BLOCKS}.
+     */
+    static BlockIntervalIndex build(SQLiteDatabase db) {
+        final Cursor cursor = db.query(Tables.BLOCKS, BlocksQuery.PROJECTION, null, null, null,
+                null, Blocks.BLOCK_START + " ASC");
+        try {
+            final BlockIntervalIndex index = new BlockIntervalIndex(cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                index.mBlockIds[i] = cursor.getString(BlocksQuery.BLOCK_ID);
+                index.mStarts[i] = cursor.getLong(BlocksQuery.BLOCK_START);
+                index.mEnds[i] = cursor.getLong(BlocksQuery.BLOCK_END);
+            }
+            index.buildMaxEnds(0, index.mStarts.length);
+            return index;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store the maximum end of the blocks in the given range at the node of
+     * the range, and return it.
+     */
+    private long buildMaxEnds(int low, int high) {
+        if (low >= high) {
+            return Long.MIN_VALUE;
+        }
+        final int mid = (low + high) >>> 1;
+        final long maxEnd = Math.max(mEnds[mid],
+                Math.max(buildMaxEnds(low, mid), buildMaxEnds(mid + 1, high)));
+        mMaxEnds[mid] = maxEnd;
+        return maxEnd;
+    }
+
+    /**
+     * Returns the ids of the blocks that are running at the given time,
+     * including blocks starting or ending at that time.
+     */
+    ArrayList<String> getBlocksAt(long time) {
+        final ArrayList<String> blockIds = Lists.newArrayList();
+        collectBlocksAt(time, 0, mStarts.length, blockIds);
+        return blockIds;
+    }
+
+    private void collectBlocksAt(long time, int low, int high, ArrayList<String> blockIds) {
+        if (low >= high) {
+            return;
+        }
+        final int mid = (low + high) >>> 1;
+        if (mMaxEnds[mid] < time) {
+            // No block in this range ends late enough
+            return;
+        }
+        collectBlocksAt(time, low, mid, blockIds);
+        if (mStarts[mid] <= time) {
+            if (mEnds[mid] >= time) {
+                blockIds.add(mBlockIds[mid]);
+            }
+            // Blocks after the node start no earlier, so only look at them
+            // when the node itself started in time
+            collectBlocksAt(time, mid + 1, high, blockIds);
+        }
+    }
+
+    /**
+     * Returns the ids of the blocks that lie completely within the given
+     * start and end time.
+     */
+    ArrayList<String> getBlocksWithin(long start, long end) {
+        final ArrayList<String> blockIds = Lists.newArrayList();
+        for (int i = lowerBound(start); i < mStarts.length && mStarts[i] <= end; i++) {
+            if (mEnds[i] <= end) {
+                blockIds.add(mBlockIds[i]);
+            }
+        }
+        return blockIds;
+    }
+
+    /** Returns the index of the first block starting at or after the time. */
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = mStarts.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mStarts[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
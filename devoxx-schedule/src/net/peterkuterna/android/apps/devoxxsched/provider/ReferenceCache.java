@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.peterkuterna.android.apps.devoxxsched.provider;
+
+import java.util.HashMap;
+
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.Tables;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Read-through cache holding all rows of a small table that only changes
+ * during a sync, like {@link Tables#ROOMS}, {@link Tables#TRACKS} and
+ * {@link Tables#BLOCKS}. The rows are read once, in the default order of
+ * the table, and answer plain queries on the table or on a single column
+ * value without running any SQL.
+ * <p>
+ * {@link ScheduleProvider} invalidates the cache whenever the table is
+ * written. Just like {@link BlockIntervalIndex}, a snapshot read while the
+ * table changed is not kept.
+ */
+final class ReferenceCache {
+
+    private final String mTable;
+    private final String mSortOrder;
+
+    private volatile Snapshot mSnapshot;
+    private int mGeneration = 0;
+
+    /** All rows of the table, with every value as a string. */
+    private static class Snapshot {
+        final String[] columns;
+        final HashMap<String, Integer> columnIndexes = Maps.newHashMap();
+        final String[][] rows;
+
+        Snapshot(String[] columns, int count) {
+            this.columns = columns;
+            this.rows = new String[count][];
+            for (int i = 0; i < columns.length; i++) {
+                columnIndexes.put(columns[i], i);
+            }
+        }
+    }
+
+    /**
+     * Create a cache on the given table, keeping its rows in the given
+     * order, which is also the only order it can answer queries in.
+     */
+    ReferenceCache(String table, String sortOrder) {
+        mTable = table;
+        mSortOrder = sortOrder;
+    }
+
+    /**
+     * Drop the cached rows, so the next query reads the table again.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mSnapshot = null;
+    }
+
+    /**
+     * Query the cached rows, returning all of them when {@code column} is
+     * {@code null}, or those whose {@code column} equals {@code value}.
+     * Returns {@code null} when the cache can't answer the query, because
+     * of an unknown column or another sort order, in which case the caller
+     * should run the query against the table.
+     */
+    Cursor query(SQLiteDatabase db, String[] projection, String sortOrder, String column,
+            String value) {
+        if (sortOrder != null && !sortOrder.equals(mSortOrder)) {
+            return null;
+        }
+
+        final Snapshot snapshot = getSnapshot(db);
+        final String[] columns = projection != null ? projection : snapshot.columns;
+        final int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            final Integer index = snapshot.columnIndexes.get(columns[i]);
+            if (index == null) {
+                return null;
+            }
+            indexes[i] = index;
+        }
+        int filter = -1;
+        if (column != null) {
+            final Integer index = snapshot.columnIndexes.get(column);
+            if (index == null) {
+                return null;
+            }
+            filter = index;
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(columns);
+        for (String[] row : snapshot.rows) {
+            if (filter != -1 && (value == null || !value.equals(row[filter]))) {
+                continue;
+            }
+            final Object[] values = new Object[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                values[i] = row[indexes[i]];
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    private Snapshot getSnapshot(SQLiteDatabase db) {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            final int generation;
+            synchronized (this) {
+                generation = mGeneration;
+            }
+            snapshot = read(db);
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private Snapshot read(SQLiteDatabase db) {
+        final Cursor cursor = db.query(mTable, null, null, null, null, null, mSortOrder);
+        try {
+            final String[] columns = cursor.getColumnNames();
+            final Snapshot snapshot = new Snapshot(columns, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                final String[] row = new String[columns.length];
+                for (int j = 0; j < columns.length; j++) {
+                    row[j] = cursor.getString(j);
+                }
+                snapshot.rows[i] = row;
+            }
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
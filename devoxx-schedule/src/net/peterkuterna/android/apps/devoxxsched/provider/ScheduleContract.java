@@ -45,6 +45,10 @@ public class ScheduleContract {
 		String URI_ID = "uri_id";
 		String URI = "uri";
 		String MD5 = "md5";
+		/** ETag validator of the last response for this uri. */
+		String ETAG = "etag";
+		/** Last-Modified validator of the last response for this uri. */
+		String LAST_MODIFIED = "last_modified";
 	}
 
     interface BlocksColumns {
@@ -97,6 +101,8 @@ public class ScheduleContract {
     	String UPDATED = "updated";
         /** Field to mark if this session was new. */
     	String NEW = "new";
+        /** Hash over the remote content, used to skip unchanged sessions. */
+    	String CONTENT_HASH = "content_hash";
     }
 
     interface SpeakersColumns {
@@ -112,6 +118,8 @@ public class ScheduleContract {
     	String BIO = "bio";
         /** URL towards image of speaker. */
     	String IMAGE_URL = "image_url";
+        /** Hash over the remote content, used to skip unchanged speakers. */
+    	String CONTENT_HASH = "content_hash";
     }
 
     interface NotesColumns {
@@ -143,6 +151,14 @@ public class ScheduleContract {
     private static final String PATH_SEARCH_SUGGEST = "search_suggest_query";
     private static final String PATH_SYNC = "sync";
 
+    /**
+     * Query parameters of search {@link Uri}s, skipping the first
+     * {@link #PARAM_OFFSET} matches and returning at most
+     * {@link #PARAM_LIMIT} of them.
+     */
+    public static final String PARAM_OFFSET = "offset";
+    public static final String PARAM_LIMIT = "limit";
+
     /**
      * Blocks are generic timeslots that {@link Sessions} and other related
      * events fall into.
@@ -156,7 +172,10 @@ public class ScheduleContract {
         public static final String CONTENT_ITEM_TYPE =
                 "vnd.android.cursor.item/vnd.devoxx.block";
 
-        /** Count of {@link Sessions} inside given block. */
+        /**
+         * Count of {@link Sessions} inside given block, kept up to date by
+         * {@link ScheduleProvider}.
+         */
         public static final String SESSIONS_COUNT = "sessions_count";
 
         /**
@@ -220,7 +239,10 @@ public class ScheduleContract {
         public static final String CONTENT_ITEM_TYPE =
                 "vnd.android.cursor.item/vnd.devoxx.track";
 
-        /** Count of {@link Sessions} inside given track. */
+        /**
+         * Count of {@link Sessions} inside given track, kept up to date by
+         * {@link ScheduleProvider}.
+         */
         public static final String SESSIONS_COUNT = "sessions_count";
 
         /** Default "ORDER BY" clause. */
@@ -304,6 +326,8 @@ public class ScheduleContract {
             CONTENT_URI.buildUpon().appendPath(PATH_UPDATED).build();
         public static final Uri CONTENT_UPDATED_STARRED_URI =
         	CONTENT_UPDATED_URI.buildUpon().appendPath(PATH_STARRED).build();
+        public static final Uri CONTENT_SPEAKERS_URI =
+            CONTENT_URI.buildUpon().appendPath(PATH_SPEAKERS).build();
 
         public static final String CONTENT_TYPE =
                 "vnd.android.cursor.dir/vnd.devoxx.session";
@@ -314,10 +338,24 @@ public class ScheduleContract {
         public static final String ROOM_ID = "room_id";
         public static final String TRACK_ID = "track_id";
 
+        /**
+         * Count of starred {@link Sessions} in the block of this session or in
+         * any block overlapping it, kept up to date by {@link ScheduleProvider}.
+         */
         public static final String STARRED_IN_BLOCK_COUNT = "starred_in_block_count";
 
         public static final String SEARCH_SNIPPET = "search_snippet";
 
+        /** Position of a search match, ordered on relevance. */
+        public static final String SEARCH_RANK = "search_rank";
+
+        /**
+         * "ORDER BY" clause putting the most relevant search match first.
+         * Needs {@link #SEARCH_RANK} in the projection. Search results
+         * queried without a sort order are already in this order.
+         */
+        public static final String SEARCH_SORT = SEARCH_RANK + " ASC";
+
         /** Default "ORDER BY" clause. */
         public static final String DEFAULT_SORT = Tables.SESSIONS + "." + SessionsColumns.SESSION_ID + " ASC";
         
@@ -360,6 +398,16 @@ public class ScheduleContract {
             return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
         }
 
+        /**
+         * Build {@link Uri} for the most relevant search matches, skipping
+         * the first {@code offset} and returning at most {@code limit}.
+         */
+        public static Uri buildSearchUri(String query, int offset, int limit) {
+            return buildSearchUri(query).buildUpon()
+            		.appendQueryParameter(PARAM_OFFSET, Integer.toString(offset))
+            		.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static boolean isSearchUri(Uri uri) {
             return PATH_SEARCH.equals(uri.getPathSegments().get(1));
         }
@@ -405,6 +453,16 @@ public class ScheduleContract {
 
         public static final String SEARCH_SNIPPET = "search_snippet";
 
+        /** Position of a search match, ordered on relevance. */
+        public static final String SEARCH_RANK = "search_rank";
+
+        /**
+         * "ORDER BY" clause putting the most relevant search match first.
+         * Needs {@link #SEARCH_RANK} in the projection. Search results
+         * queried without a sort order are already in this order.
+         */
+        public static final String SEARCH_SORT = SEARCH_RANK + " ASC";
+
         /** Default "ORDER BY" clause. */
         public static final String DEFAULT_SORT = SpeakersColumns.LAST_NAME + " ASC, " + SpeakersColumns.FIRST_NAME + " ASC";
 
@@ -426,6 +484,16 @@ public class ScheduleContract {
             return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
         }
 
+        /**
+         * Build {@link Uri} for the most relevant search matches, skipping
+         * the first {@code offset} and returning at most {@code limit}.
+         */
+        public static Uri buildSearchUri(String query, int offset, int limit) {
+            return buildSearchUri(query).buildUpon()
+            		.appendQueryParameter(PARAM_OFFSET, Integer.toString(offset))
+            		.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static boolean isSearchUri(Uri uri) {
         	return (uri.getPathSegments().size() > 1) 
         		&& PATH_SEARCH.equals(uri.getPathSegments().get(1)); 
@@ -19,6 +19,8 @@
  */
 package net.peterkuterna.android.apps.devoxxsched.provider;
 
+import java.util.Collection;
+
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.BlocksColumns;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Notes;
@@ -34,6 +36,8 @@ import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Track
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.TracksColumns;
 import android.app.SearchManager;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.provider.BaseColumns;
@@ -58,8 +62,14 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
     private static final int VER_ALTER_NOTE_ON_SESSION = 3;
     private static final int VER_RECREATE_FULLTEXT_TABLE = 4;
     private static final int VER_ADD_LABS_SESSIONS = 5;
+    private static final int VER_ADD_SYNC_VALIDATORS = 6;
+    private static final int VER_ADD_CONTENT_HASH = 7;
+    private static final int VER_ADD_AGGREGATES = 8;
+    private static final int VER_ADD_INDEXES = 9;
+    private static final int VER_SEARCH_BY_DOCID = 10;
+    private static final int VER_ADD_SESSION_LIST = 11;
 
-    private static final int DATABASE_VERSION = VER_ADD_LABS_SESSIONS;
+    private static final int DATABASE_VERSION = VER_ADD_SESSION_LIST;
 
     interface Tables {
         String SESSIONS = "sessions";
@@ -76,6 +86,8 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
 
         String SEARCH_SUGGEST = "search_suggest";
 
+        String SESSION_LIST = "session_list";
+
         String SESSIONS_JOIN_BLOCKS_ROOMS_TRACKS = "sessions "
             + "LEFT OUTER JOIN blocks ON sessions.block_id=blocks.block_id "
             + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id "
@@ -90,28 +102,47 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
             + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id "
         	+ "LEFT OUTER JOIN tracks ON sessions.track_id=tracks.track_id";
 
+        String SESSIONS_SPEAKERS_JOIN_SESSION_LIST = "sessions_speakers "
+            + "LEFT OUTER JOIN session_list ON sessions_speakers.session_id=session_list.session_id";
+
         String NOTES_JOIN_SESSIONS_TRACKS = "notes "
         	+ "LEFT OUTER JOIN sessions on notes.session_id=sessions.session_id "
         	+ "LEFT OUTER JOIN tracks on sessions.track_id=tracks.track_id";
 
         String SESSIONS_SEARCH_JOIN_SESSIONS_BLOCKS_ROOMS_TRACKS = "sessions_search "
-            + "LEFT OUTER JOIN sessions ON sessions_search.session_id=sessions.session_id "
+            + "LEFT OUTER JOIN sessions ON sessions_search.docid=sessions._id "
             + "LEFT OUTER JOIN blocks ON sessions.block_id=blocks.block_id "
             + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id "
         	+ "LEFT OUTER JOIN tracks ON sessions.track_id=tracks.track_id";
 
         String SPEAKERS_SEARCH_JOIN_SPEAKERS = "speakers_search "
-            + "LEFT OUTER JOIN speakers ON speakers_search.speaker_id=speakers.speaker_id";
+            + "LEFT OUTER JOIN speakers ON speakers_search.docid=speakers._id";
     }
 
     private interface Triggers {
         String SESSIONS_SEARCH_INSERT = "sessions_search_insert";
         String SESSIONS_SEARCH_DELETE = "sessions_search_delete";
         String SESSIONS_SEARCH_UPDATE = "sessions_search_update";
+        String SESSIONS_SEARCH_REPLACE = "sessions_search_replace";
 
         String SPEAKERS_SEARCH_INSERT = "speakers_search_insert";
         String SPEAKERS_SEARCH_DELETE = "speakers_search_delete";
         String SPEAKERS_SEARCH_UPDATE = "speakers_search_update";
+        String SPEAKERS_SEARCH_REPLACE = "speakers_search_replace";
+    }
+
+    private interface Indexes {
+        String SESSIONS_BLOCK_ID = "sessions_block_id_index";
+        String SESSIONS_TRACK_ID = "sessions_track_id_index";
+        String SESSIONS_ROOM_ID = "sessions_room_id_index";
+        String SESSIONS_SPEAKERS_SPEAKER_ID = "sessions_speakers_speaker_id_index";
+        String BLOCKS_START_END = "blocks_start_end_index";
+        String ROOMS_NAME = "rooms_name_index";
+        String NOTES_SESSION_ID = "notes_session_id_index";
+        String SESSION_LIST_BLOCK_ID = "session_list_block_id_index";
+        String SESSION_LIST_TRACK_ID = "session_list_track_id_index";
+        String SESSION_LIST_ROOM_ID = "session_list_room_id_index";
+        String SESSION_LIST_STARRED = "session_list_starred_index";
     }
 
     public interface SessionsSpeakers {
@@ -119,28 +150,34 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
         String SPEAKER_ID = "speaker_id";
     }
 
+    /**
+     * Columns of {@link Tables#SESSIONS_SEARCH}, whose {@code docid} is the
+     * {@link BaseColumns#_ID} of the indexed session.
+     */
     interface SessionsSearchColumns {
-        String SESSION_ID = "session_id";
+        String TITLE = "title";
         String BODY = "body";
     }
 
+    /**
+     * Columns of {@link Tables#SPEAKERS_SEARCH}, whose {@code docid} is the
+     * {@link BaseColumns#_ID} of the indexed speaker.
+     */
     interface SpeakersSearchColumns {
-        String SPEAKER_ID = "speaker_id";
+        String NAME = "name";
         String BODY = "body";
     }
 
     /** Fully-qualified field names. */
     private interface Qualified {
-        String SESSIONS_SEARCH_SESSION_ID = Tables.SESSIONS_SEARCH + "."
-                + SessionsSearchColumns.SESSION_ID;
+        String SESSIONS_SEARCH_DOCID = Tables.SESSIONS_SEARCH + ".docid";
 
-        String SESSIONS_SEARCH = Tables.SESSIONS_SEARCH + "(" + SessionsSearchColumns.SESSION_ID
+        String SESSIONS_SEARCH = Tables.SESSIONS_SEARCH + "(docid," + SessionsSearchColumns.TITLE
                 + "," + SessionsSearchColumns.BODY + ")";
 
-        String SPEAKERS_SEARCH_SPEAKER_ID = Tables.SPEAKERS_SEARCH + "."
-        	+ SpeakersSearchColumns.SPEAKER_ID;
+        String SPEAKERS_SEARCH_DOCID = Tables.SPEAKERS_SEARCH + ".docid";
 
-        String SPEAKERS_SEARCH = Tables.SPEAKERS_SEARCH + "(" + SpeakersSearchColumns.SPEAKER_ID
+        String SPEAKERS_SEARCH = Tables.SPEAKERS_SEARCH + "(docid," + SpeakersSearchColumns.NAME
         	+ "," + SpeakersSearchColumns.BODY + ")";
     }
 
@@ -158,17 +195,54 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
          * Subquery used to build the {@link SessionsSearchColumns#BODY} string
          * used for indexing {@link Sessions} content.
          */
-        String SESSIONS_BODY = "(new." + Sessions.TITLE + "||'; '||new." + Sessions.SUMMARY
-                + "||'; '||new." + Sessions.EXPERIENCE + "||'; '||new." + Sessions.NOTE
-                + ")";
+        String SESSIONS_BODY = "(new." + Sessions.SUMMARY + "||'; '||new." + Sessions.EXPERIENCE
+                + "||'; '||new." + Sessions.NOTE + ")";
 
         /**
          * Subquery used to build the {@link SpeakersSearchColumns#BODY} string
          * used for indexing {@link Speakers} content.
          */
-        String SPEAKERS_BODY = "(new." + Speakers.FIRST_NAME + "||'; '||new." + Speakers.LAST_NAME
-        		+ "||'; '||new." + Speakers.COMPANY + "||'; '||" + "new." + Speakers.BIO
+        String SPEAKERS_BODY = "(new." + Speakers.COMPANY + "||'; '||new." + Speakers.BIO + ")";
+
+        /**
+         * Subquery used to build the {@link SpeakersSearchColumns#NAME} string
+         * used for indexing {@link Speakers} content.
+         */
+        String SPEAKERS_NAME = "(new." + Speakers.FIRST_NAME + "||' '||new." + Speakers.LAST_NAME
         		+ ")";
+
+        String SESSION_LIST_STARRED_IN_BLOCK_COUNT = "(SELECT " + Sessions.STARRED_IN_BLOCK_COUNT
+        		+ " FROM " + Tables.BLOCKS + " WHERE " + Tables.BLOCKS + "." + Blocks.BLOCK_ID + "="
+        		+ Tables.SESSION_LIST + "." + Sessions.BLOCK_ID + ")";
+
+        String SESSION_LIST_SESSIONS_COUNT = "(SELECT " + Blocks.SESSIONS_COUNT
+        		+ " FROM " + Tables.BLOCKS + " WHERE " + Tables.BLOCKS + "." + Blocks.BLOCK_ID + "="
+        		+ Tables.SESSION_LIST + "." + Sessions.BLOCK_ID + ")";
+
+        String BLOCK_SESSIONS_COUNT = "(SELECT COUNT(*) FROM " + Tables.SESSIONS 
+        		+ " WHERE " + Tables.SESSIONS + "." + Sessions.BLOCK_ID + "=" 
+        		+ Tables.BLOCKS + "." + Blocks.BLOCK_ID + ")";
+
+        String BLOCK_CONTAINS_STARRED = "EXISTS (SELECT 1 FROM " + Tables.SESSIONS 
+        		+ " WHERE " + Tables.SESSIONS + "." + Sessions.BLOCK_ID + "=" 
+        		+ Tables.BLOCKS + "." + Blocks.BLOCK_ID + " AND " 
+        		+ Tables.SESSIONS + "." + Sessions.STARRED + "=1)";
+
+        /**
+         * Subquery counting the starred {@link Sessions} in any block that
+         * overlaps the block being updated, including the block itself.
+         */
+        String BLOCK_STARRED_IN_BLOCK_COUNT = "(SELECT COUNT(*) FROM " + Tables.SESSIONS 
+        		+ " JOIN " + Tables.BLOCKS + " AS other ON " + Tables.SESSIONS + "." 
+        		+ Sessions.BLOCK_ID + "=other." + Blocks.BLOCK_ID + " WHERE " 
+        		+ Tables.SESSIONS + "." + Sessions.STARRED + "=1 AND (other." 
+        		+ Blocks.BLOCK_ID + "=" + Tables.BLOCKS + "." + Blocks.BLOCK_ID + " OR (other." 
+        		+ Blocks.BLOCK_START + "<" + Tables.BLOCKS + "." + Blocks.BLOCK_END + " AND other." 
+        		+ Blocks.BLOCK_END + ">" + Tables.BLOCKS + "." + Blocks.BLOCK_START + ")))";
+
+        String TRACK_SESSIONS_COUNT = "(SELECT COUNT(*) FROM " + Tables.SESSIONS 
+        		+ " WHERE " + Tables.SESSIONS + "." + Sessions.TRACK_ID + "=" 
+        		+ Tables.TRACKS + "." + Tracks.TRACK_ID + ")";
     }
 
     public ScheduleDatabase(Context context) {
@@ -193,6 +267,7 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + SessionsColumns.STARRED + " INTEGER NOT NULL DEFAULT 0,"
                 + SessionsColumns.NEW + " INTEGER NOT NULL DEFAULT 0,"
                 + SessionsColumns.UPDATED + " INTEGER NOT NULL DEFAULT 0,"
+                + SessionsColumns.CONTENT_HASH + " INTEGER,"
                 + "UNIQUE (" + SessionsColumns.SESSION_ID + ") ON CONFLICT REPLACE)");
 
         db.execSQL("CREATE TABLE " + Tables.SPEAKERS + " ("
@@ -203,6 +278,7 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + SpeakersColumns.BIO + " TEXT NOT NULL,"
                 + SpeakersColumns.COMPANY + " TEXT NOT NULL,"
                 + SpeakersColumns.IMAGE_URL + " TEXT NOT NULL,"
+                + SpeakersColumns.CONTENT_HASH + " INTEGER,"
                 + "UNIQUE (" + SpeakersColumns.SPEAKER_ID + ") ON CONFLICT REPLACE)");
         
         db.execSQL("CREATE TABLE " + Tables.ROOMS + " ("
@@ -219,6 +295,9 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + BlocksColumns.BLOCK_START + " INTEGER NOT NULL,"
                 + BlocksColumns.BLOCK_END + " INTEGER NOT NULL,"
                 + BlocksColumns.BLOCK_TYPE + " TEXT NOT NULL,"
+                + Blocks.SESSIONS_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                + Blocks.CONTAINS_STARRED + " INTEGER NOT NULL DEFAULT 0,"
+                + Sessions.STARRED_IN_BLOCK_COUNT + " INTEGER NOT NULL DEFAULT 0,"
                 + "UNIQUE (" + BlocksColumns.BLOCK_ID + ") ON CONFLICT REPLACE)");
 
         db.execSQL("CREATE TABLE " + Tables.TRACKS + " ("
@@ -226,6 +305,7 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + TracksColumns.TRACK_ID + " TEXT NOT NULL,"
                 + TracksColumns.TRACK_NAME + " TEXT,"
                 + TracksColumns.TRACK_COLOR + " INTEGER,"
+                + Tracks.SESSIONS_COUNT + " INTEGER NOT NULL DEFAULT 0,"
                 + "UNIQUE (" + TracksColumns.TRACK_ID + ") ON CONFLICT REPLACE)");
 
         db.execSQL("CREATE TABLE " + Tables.SESSIONS_SPEAKERS + " ("
@@ -246,26 +326,208 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + SyncColumns.URI_ID + " TEXT NOT NULL,"
                 + SyncColumns.URI + " TEXT NOT NULL,"
                 + SyncColumns.MD5 + " TEXT NOT NULL,"
+                + SyncColumns.ETAG + " TEXT,"
+                + SyncColumns.LAST_MODIFIED + " TEXT,"
                 + "UNIQUE (" + SyncColumns.URI_ID + ") ON CONFLICT REPLACE)");
 
+        createIndexes(db);
+
         createSessionsSearch(db, true);
         createSpeakersSearch(db, true);
 
         db.execSQL("CREATE TABLE " + Tables.SEARCH_SUGGEST + " ("
                 + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
                 + SearchManager.SUGGEST_COLUMN_TEXT_1 + " TEXT NOT NULL)");
+
+        createSessionList(db);
+    }
+
+    /**
+     * Columns of {@link Tables#SESSION_LIST}, which holds a copy of what
+     * lists of sessions show, taken from each session and its block, room
+     * and track. The {@link BaseColumns#_ID} is the one of the session.
+     */
+    static final String[] SESSION_LIST_COLUMNS = {
+            BaseColumns._ID,
+            Sessions.SESSION_ID,
+            Sessions.BLOCK_ID,
+            Sessions.ROOM_ID,
+            Sessions.TRACK_ID,
+            Sessions.TITLE,
+            Sessions.TYPE,
+            Sessions.STARRED,
+            Sessions.NEW,
+            Sessions.UPDATED,
+            Blocks.BLOCK_TITLE,
+            Blocks.BLOCK_START,
+            Blocks.BLOCK_END,
+            Blocks.BLOCK_TYPE,
+            Rooms.NAME,
+            Tracks.TRACK_NAME,
+            Tracks.TRACK_COLOR,
+            Sessions.STARRED_IN_BLOCK_COUNT,
+            Blocks.SESSIONS_COUNT,
+    };
+
+    /**
+     * Create {@link Tables#SESSION_LIST} with the indexes the list
+     * {@link android.net.Uri}s filter on, and fill it.
+     */
+    private static void createSessionList(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Tables.SESSION_LIST + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY,"
+                + Sessions.SESSION_ID + " TEXT NOT NULL,"
+                + Sessions.BLOCK_ID + " TEXT,"
+                + Sessions.ROOM_ID + " TEXT,"
+                + Sessions.TRACK_ID + " TEXT,"
+                + Sessions.TITLE + " TEXT,"
+                + Sessions.TYPE + " TEXT,"
+                + Sessions.STARRED + " INTEGER,"
+                + Sessions.NEW + " INTEGER,"
+                + Sessions.UPDATED + " INTEGER,"
+                + Blocks.BLOCK_TITLE + " TEXT,"
+                + Blocks.BLOCK_START + " INTEGER,"
+                + Blocks.BLOCK_END + " INTEGER,"
+                + Blocks.BLOCK_TYPE + " TEXT,"
+                + Rooms.NAME + " TEXT,"
+                + Tracks.TRACK_NAME + " TEXT,"
+                + Tracks.TRACK_COLOR + " INTEGER,"
+                + Sessions.STARRED_IN_BLOCK_COUNT + " INTEGER,"
+                + Blocks.SESSIONS_COUNT + " INTEGER,"
+                + "UNIQUE (" + Sessions.SESSION_ID + ") ON CONFLICT REPLACE)");
+
+        db.execSQL("CREATE INDEX " + Indexes.SESSION_LIST_BLOCK_ID + " ON " + Tables.SESSION_LIST
+        		+ "(" + Sessions.BLOCK_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSION_LIST_TRACK_ID + " ON " + Tables.SESSION_LIST
+        		+ "(" + Sessions.TRACK_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSION_LIST_ROOM_ID + " ON " + Tables.SESSION_LIST
+        		+ "(" + Sessions.ROOM_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSION_LIST_STARRED + " ON " + Tables.SESSION_LIST
+        		+ "(" + Sessions.STARRED + ")");
+
+        updateSessionList(db, null);
+    }
+
+    /**
+     * Copy the given sessions into {@link Tables#SESSION_LIST}, removing
+     * those that no longer exist. Pass {@code null} sessions to copy all
+     * sessions again, which is needed once blocks, rooms or tracks changed.
+     */
+    static void updateSessionList(SQLiteDatabase db, Collection<String> sessionIds) {
+        if (sessionIds != null && sessionIds.isEmpty()) {
+        	return;
+        }
+
+        final StringBuilder insert = new StringBuilder("INSERT INTO ")
+        		.append(Tables.SESSION_LIST).append('(');
+        final StringBuilder select = new StringBuilder(" SELECT ");
+        for (int i = 0; i < SESSION_LIST_COLUMNS.length; i++) {
+        	if (i > 0) {
+        		insert.append(',');
+        		select.append(',');
+        	}
+        	insert.append(SESSION_LIST_COLUMNS[i]);
+        	select.append(SessionListSource.COLUMNS[i]);
+        }
+        insert.append(')').append(select)
+        		.append(" FROM ").append(Tables.SESSIONS_JOIN_BLOCKS_ROOMS_TRACKS);
+
+        if (sessionIds == null) {
+        	db.execSQL("DELETE FROM " + Tables.SESSION_LIST);
+        	db.execSQL(insert.toString());
+        } else {
+        	final String sessionIdList = buildInList(sessionIds);
+        	db.execSQL("DELETE FROM " + Tables.SESSION_LIST + " WHERE "
+        			+ Sessions.SESSION_ID + " IN " + sessionIdList);
+        	db.execSQL(insert + " WHERE " + Tables.SESSIONS + "." + Sessions.SESSION_ID + " IN "
+        			+ sessionIdList);
+        }
+    }
+
+    /**
+     * Copy the aggregate columns of {@link Tables#BLOCKS} into
+     * {@link Tables#SESSION_LIST}, after {@link #updateAggregates} ran for
+     * the given blocks, or for all blocks when {@code null}.
+     */
+    static void updateSessionListAggregates(SQLiteDatabase db, Collection<String> blockIds) {
+        if (blockIds != null && blockIds.isEmpty()) {
+        	return;
+        }
+        final StringBuilder update = new StringBuilder("UPDATE ").append(Tables.SESSION_LIST)
+        		.append(" SET ")
+        		.append(Sessions.STARRED_IN_BLOCK_COUNT).append('=')
+        		.append(Subquery.SESSION_LIST_STARRED_IN_BLOCK_COUNT).append(',')
+        		.append(Blocks.SESSIONS_COUNT).append('=')
+        		.append(Subquery.SESSION_LIST_SESSIONS_COUNT);
+        if (blockIds != null) {
+        	update.append(" WHERE ").append(Sessions.BLOCK_ID).append(" IN (")
+        			.append(selectOverlappingBlockIds(buildInList(blockIds))).append(')');
+        }
+        db.execSQL(update.toString());
+    }
+
+    /**
+     * Where every column of {@link #SESSION_LIST_COLUMNS} is copied from.
+     */
+    private interface SessionListSource {
+        String[] COLUMNS = {
+                Tables.SESSIONS + "." + BaseColumns._ID,
+                Tables.SESSIONS + "." + Sessions.SESSION_ID,
+                Tables.SESSIONS + "." + Sessions.BLOCK_ID,
+                Tables.SESSIONS + "." + Sessions.ROOM_ID,
+                Tables.SESSIONS + "." + Sessions.TRACK_ID,
+                Tables.SESSIONS + "." + Sessions.TITLE,
+                Tables.SESSIONS + "." + Sessions.TYPE,
+                Tables.SESSIONS + "." + Sessions.STARRED,
+                Tables.SESSIONS + "." + Sessions.NEW,
+                Tables.SESSIONS + "." + Sessions.UPDATED,
+                Tables.BLOCKS + "." + Blocks.BLOCK_TITLE,
+                Tables.BLOCKS + "." + Blocks.BLOCK_START,
+                Tables.BLOCKS + "." + Blocks.BLOCK_END,
+                Tables.BLOCKS + "." + Blocks.BLOCK_TYPE,
+                Tables.ROOMS + "." + Rooms.NAME,
+                Tables.TRACKS + "." + Tracks.TRACK_NAME,
+                Tables.TRACKS + "." + Tracks.TRACK_COLOR,
+                Tables.BLOCKS + "." + Sessions.STARRED_IN_BLOCK_COUNT,
+                Tables.BLOCKS + "." + Blocks.SESSIONS_COUNT,
+        };
+    }
+
+    /**
+     * Create the indexes on the columns that {@link ScheduleProvider} joins
+     * and filters on. Columns with a {@code UNIQUE} constraint are already
+     * indexed by SQLite. {@link Sessions#STARRED} is left out: a flag with
+     * two values hardly narrows a lookup, and no query plan needs it.
+     */
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + Indexes.SESSIONS_BLOCK_ID + " ON " + Tables.SESSIONS
+        		+ "(" + Sessions.BLOCK_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSIONS_TRACK_ID + " ON " + Tables.SESSIONS
+        		+ "(" + Sessions.TRACK_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSIONS_ROOM_ID + " ON " + Tables.SESSIONS
+        		+ "(" + Sessions.ROOM_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSIONS_SPEAKERS_SPEAKER_ID + " ON " 
+        		+ Tables.SESSIONS_SPEAKERS + "(" + SessionsSpeakers.SPEAKER_ID + ")");
+        db.execSQL("CREATE INDEX " + Indexes.BLOCKS_START_END + " ON " + Tables.BLOCKS
+        		+ "(" + Blocks.BLOCK_START + "," + Blocks.BLOCK_END + ")");
+        db.execSQL("CREATE INDEX " + Indexes.ROOMS_NAME + " ON " + Tables.ROOMS
+        		+ "(" + Rooms.NAME + ")");
+        db.execSQL("CREATE INDEX " + Indexes.NOTES_SESSION_ID + " ON " + Tables.NOTES
+        		+ "(" + Notes.SESSION_ID + ")");
     }
 
+    /**
+     * Create {@link Tables#SESSIONS_SEARCH}. Rows are keyed on the
+     * {@code docid}, which is the {@link BaseColumns#_ID} of the session,
+     * so no identifier is stored or tokenized as part of the index.
+     */
     private static void createSessionsSearch(SQLiteDatabase db, boolean createTriggers) {
         // Using the "porter" tokenizer for simple stemming, so that
         // "frustration" matches "frustrated."
 
         db.execSQL("CREATE VIRTUAL TABLE " + Tables.SESSIONS_SEARCH + " USING fts3("
-                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-                + SessionsSearchColumns.BODY + " TEXT NOT NULL,"
-                + SessionsSearchColumns.SESSION_ID
-                        + " TEXT NOT NULL " + References.SESSION_ID + ","
-                + "UNIQUE (" + SessionsSearchColumns.SESSION_ID + ") ON CONFLICT REPLACE,"
+                + SessionsSearchColumns.TITLE + ","
+                + SessionsSearchColumns.BODY + ","
                 + "tokenize=porter)");
 
         if (createTriggers) createSessionsSearchTriggers(db);
@@ -273,37 +535,73 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
     
     /**
      * Create triggers that automatically build {@link Tables#SESSIONS_SEARCH}
-     * as values are changed in {@link Tables#SESSIONS}.
+     * as values are changed in {@link Tables#SESSIONS}. A session replaced
+     * through its {@code UNIQUE} constraint is removed from the index before
+     * the insert, since the conflict resolution fires no delete triggers.
      */
     private static void createSessionsSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + Triggers.SESSIONS_SEARCH_REPLACE + " BEFORE INSERT ON "
+                + Tables.SESSIONS + " BEGIN DELETE FROM " + Tables.SESSIONS_SEARCH
+                + " WHERE " + Qualified.SESSIONS_SEARCH_DOCID + "=(SELECT " + BaseColumns._ID
+                + " FROM " + Tables.SESSIONS + " WHERE " + Sessions.SESSION_ID + "=new."
+                + Sessions.SESSION_ID + ");" + " END;");
+
         db.execSQL("CREATE TRIGGER " + Triggers.SESSIONS_SEARCH_INSERT + " AFTER INSERT ON "
                 + Tables.SESSIONS + " BEGIN INSERT INTO " + Qualified.SESSIONS_SEARCH + " "
-                + " VALUES(new." + Sessions.SESSION_ID + ", " + Subquery.SESSIONS_BODY + ");"
-                + " END;");
+                + " VALUES(new." + BaseColumns._ID + ", new." + Sessions.TITLE + ", "
+                + Subquery.SESSIONS_BODY + ");" + " END;");
 
         db.execSQL("CREATE TRIGGER " + Triggers.SESSIONS_SEARCH_DELETE + " AFTER DELETE ON "
                 + Tables.SESSIONS + " BEGIN DELETE FROM " + Tables.SESSIONS_SEARCH + " "
-                + " WHERE " + Qualified.SESSIONS_SEARCH_SESSION_ID + "=old." + Sessions.SESSION_ID
+                + " WHERE " + Qualified.SESSIONS_SEARCH_DOCID + "=old." + BaseColumns._ID
                 + ";" + " END;");
 
         db.execSQL("CREATE TRIGGER " + Triggers.SESSIONS_SEARCH_UPDATE + " AFTER UPDATE OF "
                 + Sessions.TITLE + ", " + Sessions.SUMMARY + ", " + Sessions.EXPERIENCE 
                 + ", " + Sessions.NOTE + " ON " + Tables.SESSIONS + " BEGIN UPDATE " + Tables.SESSIONS_SEARCH 
-                + " SET " + SessionsSearchColumns.BODY + " = " + Subquery.SESSIONS_BODY 
-                + " WHERE " + Qualified.SESSIONS_SEARCH_SESSION_ID + "=old." + Sessions.SESSION_ID
+                + " SET " + SessionsSearchColumns.TITLE + " = new." + Sessions.TITLE + ", "
+                + SessionsSearchColumns.BODY + " = " + Subquery.SESSIONS_BODY 
+                + " WHERE " + Qualified.SESSIONS_SEARCH_DOCID + "=old." + BaseColumns._ID
                 + ";" + " END;");
     }
 
+    private static void dropSessionsSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_REPLACE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_UPDATE);
+    }
+
+    /**
+     * Index all rows of {@link Tables#SESSIONS} into an empty
+     * {@link Tables#SESSIONS_SEARCH}.
+     */
+    private static void fillSessionsSearch(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + Qualified.SESSIONS_SEARCH
+        		+ " SELECT "
+        		+ BaseColumns._ID
+        		+ ", "
+        		+ SessionsColumns.TITLE
+        		+ ", "
+        		+ SessionsColumns.SUMMARY
+                + "||'; '||" 
+                + SessionsColumns.EXPERIENCE 
+                + "||'; '||" 
+                + Sessions.NOTE
+                + " FROM " + Tables.SESSIONS);
+    }
+
+    /**
+     * Create {@link Tables#SPEAKERS_SEARCH}, keyed on the {@code docid} just
+     * like {@link Tables#SESSIONS_SEARCH}.
+     */
     private static void createSpeakersSearch(SQLiteDatabase db, boolean createTriggers) {
         // Using the "porter" tokenizer for simple stemming, so that
         // "frustration" matches "frustrated."
 
         db.execSQL("CREATE VIRTUAL TABLE " + Tables.SPEAKERS_SEARCH + " USING fts3("
-                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-                + SpeakersSearchColumns.BODY + " TEXT NOT NULL,"
-                + SpeakersSearchColumns.SPEAKER_ID
-                        + " TEXT NOT NULL " + References.SPEAKER_ID + ","
-                + "UNIQUE (" + SpeakersSearchColumns.SPEAKER_ID + ") ON CONFLICT REPLACE,"
+                + SpeakersSearchColumns.NAME + ","
+                + SpeakersSearchColumns.BODY + ","
                 + "tokenize=porter)");
 
         if (createTriggers) createSpeakersSearchTriggers(db);
@@ -314,22 +612,130 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
      * as values are changed in {@link Tables#SPEAKERS}.
      */
     private static void createSpeakersSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_REPLACE + " BEFORE INSERT ON "
+                + Tables.SPEAKERS + " BEGIN DELETE FROM " + Tables.SPEAKERS_SEARCH
+                + " WHERE " + Qualified.SPEAKERS_SEARCH_DOCID + "=(SELECT " + BaseColumns._ID
+                + " FROM " + Tables.SPEAKERS + " WHERE " + Speakers.SPEAKER_ID + "=new."
+                + Speakers.SPEAKER_ID + ");" + " END;");
+
         db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_INSERT + " AFTER INSERT ON "
                 + Tables.SPEAKERS + " BEGIN INSERT INTO " + Qualified.SPEAKERS_SEARCH + " "
-                + " VALUES(new." + Speakers.SPEAKER_ID + ", " + Subquery.SPEAKERS_BODY + ");"
-                + " END;");
+                + " VALUES(new." + BaseColumns._ID + ", " + Subquery.SPEAKERS_NAME + ", "
+                + Subquery.SPEAKERS_BODY + ");" + " END;");
 
         db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_DELETE + " AFTER DELETE ON "
                 + Tables.SPEAKERS + " BEGIN DELETE FROM " + Tables.SPEAKERS_SEARCH + " "
-                + " WHERE " + Qualified.SPEAKERS_SEARCH_SPEAKER_ID + "=old." + Speakers.SPEAKER_ID
+                + " WHERE " + Qualified.SPEAKERS_SEARCH_DOCID + "=old." + BaseColumns._ID
                 + ";" + " END;");
 
         db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_UPDATE + " AFTER UPDATE OF "
                 + Speakers.FIRST_NAME + ", " + Speakers.LAST_NAME + ", " + Speakers.COMPANY 
                 + ", " + Speakers.BIO + " ON " + Tables.SPEAKERS + " BEGIN UPDATE " 
-                + Tables.SPEAKERS_SEARCH + " SET " + SpeakersSearchColumns.BODY + " = " 
-                + Subquery.SPEAKERS_BODY + " WHERE " + Qualified.SPEAKERS_SEARCH_SPEAKER_ID 
-                + "=old." + Speakers.SPEAKER_ID + ";" + " END;");
+                + Tables.SPEAKERS_SEARCH + " SET " + SpeakersSearchColumns.NAME + " = "
+                + Subquery.SPEAKERS_NAME + ", " + SpeakersSearchColumns.BODY + " = " 
+                + Subquery.SPEAKERS_BODY + " WHERE " + Qualified.SPEAKERS_SEARCH_DOCID 
+                + "=old." + BaseColumns._ID + ";" + " END;");
+    }
+
+    private static void dropSpeakersSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_REPLACE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_UPDATE);
+    }
+
+    /**
+     * Index all rows of {@link Tables#SPEAKERS} into an empty
+     * {@link Tables#SPEAKERS_SEARCH}.
+     */
+    private static void fillSpeakersSearch(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + Qualified.SPEAKERS_SEARCH
+        		+ " SELECT "
+        		+ BaseColumns._ID
+        		+ ", "
+        		+ SpeakersColumns.FIRST_NAME
+        		+ "||' '||"
+        		+ SpeakersColumns.LAST_NAME
+        		+ ", "
+        		+ SpeakersColumns.COMPANY
+                + "||'; '||" 
+                + SpeakersColumns.BIO
+                + " FROM " + Tables.SPEAKERS);
+    }
+
+    /**
+     * Recalculate the aggregate columns of {@link Tables#BLOCKS} and
+     * {@link Tables#TRACKS}, which summarize the {@link Tables#SESSIONS}
+     * they contain. Called whenever blocks or tracks changed.
+     */
+    static void updateAggregates(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + Tables.BLOCKS + " SET "
+        		+ Blocks.SESSIONS_COUNT + "=" + Subquery.BLOCK_SESSIONS_COUNT + ","
+        		+ Blocks.CONTAINS_STARRED + "=" + Subquery.BLOCK_CONTAINS_STARRED + ","
+        		+ Sessions.STARRED_IN_BLOCK_COUNT + "=" + Subquery.BLOCK_STARRED_IN_BLOCK_COUNT);
+        db.execSQL("UPDATE " + Tables.TRACKS + " SET "
+        		+ Tracks.SESSIONS_COUNT + "=" + Subquery.TRACK_SESSIONS_COUNT);
+    }
+
+    /**
+     * Recalculate the aggregate columns of the given blocks and tracks only,
+     * after sessions in them changed. The starred count of a block includes
+     * the blocks overlapping it, so those are recalculated as well.
+     */
+    static void updateAggregates(SQLiteDatabase db, Collection<String> blockIds,
+    		Collection<String> trackIds) {
+        if (!blockIds.isEmpty()) {
+        	final String blockIdList = buildInList(blockIds);
+        	db.execSQL("UPDATE " + Tables.BLOCKS + " SET "
+        			+ Blocks.SESSIONS_COUNT + "=" + Subquery.BLOCK_SESSIONS_COUNT + ","
+        			+ Blocks.CONTAINS_STARRED + "=" + Subquery.BLOCK_CONTAINS_STARRED
+        			+ " WHERE " + Blocks.BLOCK_ID + " IN " + blockIdList);
+        	db.execSQL("UPDATE " + Tables.BLOCKS + " SET "
+        			+ Sessions.STARRED_IN_BLOCK_COUNT + "=" + Subquery.BLOCK_STARRED_IN_BLOCK_COUNT
+        			+ " WHERE " + Blocks.BLOCK_ID + " IN (" + selectOverlappingBlockIds(blockIdList)
+        			+ ")");
+        }
+        if (!trackIds.isEmpty()) {
+        	db.execSQL("UPDATE " + Tables.TRACKS + " SET "
+        			+ Tracks.SESSIONS_COUNT + "=" + Subquery.TRACK_SESSIONS_COUNT
+        			+ " WHERE " + Tracks.TRACK_ID + " IN " + buildInList(trackIds));
+        }
+    }
+
+    /**
+     * Query the distinct values of the given columns of {@link Tables#SESSION_LIST}
+     * for the sessions in any block overlapping one of the given blocks.
+     */
+    static Cursor queryOverlappingSessionList(SQLiteDatabase db, Collection<String> blockIds,
+    		String[] columns) {
+        return db.query(true, Tables.SESSION_LIST, columns, Sessions.BLOCK_ID + " IN ("
+        		+ selectOverlappingBlockIds(buildInList(blockIds)) + ")", null, null, null, null,
+        		null);
+    }
+
+    /**
+     * Select the ids of the blocks overlapping any block in the given list,
+     * including the listed blocks themselves.
+     */
+    private static String selectOverlappingBlockIds(String blockIdList) {
+        return "SELECT overlapping." + Blocks.BLOCK_ID + " FROM " + Tables.BLOCKS + " AS changed,"
+        		+ Tables.BLOCKS + " AS overlapping WHERE changed." + Blocks.BLOCK_ID + " IN "
+        		+ blockIdList + " AND (overlapping." + Blocks.BLOCK_ID + "=changed."
+        		+ Blocks.BLOCK_ID + " OR (overlapping." + Blocks.BLOCK_START + "<changed."
+        		+ Blocks.BLOCK_END + " AND overlapping." + Blocks.BLOCK_END + ">changed."
+        		+ Blocks.BLOCK_START + "))";
+    }
+
+    /**
+     * Build a parenthesized list of escaped strings, for use after {@code IN}.
+     */
+    private static String buildInList(Collection<String> values) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (String value : values) {
+        	if (sb.length() > 1) sb.append(',');
+        	DatabaseUtils.appendEscapedSQLString(sb, value);
+        }
+        return sb.append(')').toString();
     }
 
     @Override
@@ -347,19 +753,15 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
             	
                 db.execSQL("ALTER TABLE " + Tables.SESSIONS + " ADD COLUMN "
                         + SessionsColumns.NOTE + " TEXT");
-                db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_DELETE);
-                db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_INSERT);
-                db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_UPDATE);
-                
-                createSessionsSearchTriggers(db);
+                // Search triggers are created again once the search table
+                // is rebuilt in VER_ALTER_NOTE_ON_SESSION
+                dropSessionsSearchTriggers(db);
 
                 version = VER_ADD_NOTE_ON_SESSION;
             case VER_ADD_NOTE_ON_SESSION:
             	Log.d(TAG, "performing upgrade coming from VER_ADD_NOTE_ON_SESSION");
 
-            	db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_DELETE);
-                db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_INSERT);
-                db.execSQL("DROP TRIGGER " + Triggers.SESSIONS_SEARCH_UPDATE);
+            	dropSessionsSearchTriggers(db);
                 
             	db.execSQL("ALTER TABLE " + Tables.SESSIONS + " RENAME TO tmp_"
             			+ Tables.SESSIONS);
@@ -380,8 +782,6 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                         + SessionsColumns.UPDATED + " INTEGER NOT NULL DEFAULT 0,"
                         + "UNIQUE (" + SessionsColumns.SESSION_ID + ") ON CONFLICT REPLACE)");
                 
-                createSessionsSearchTriggers(db);
-
                 db.execSQL("INSERT INTO " + Tables.SESSIONS + "("
                         + SessionsColumns.SESSION_ID + ", "
                         + Sessions.BLOCK_ID + ", "
@@ -444,20 +844,8 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
             case VER_ALTER_NOTE_ON_SESSION:
                 db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SEARCH);
                 
-                createSessionsSearch(db, false);
-                
-                db.execSQL("INSERT INTO " + Qualified.SESSIONS_SEARCH
-                		+ " SELECT "
-                		+ SessionsColumns.SESSION_ID
-                		+ ", "
-                		+ SessionsColumns.TITLE 
-                		+ "||'; '||" 
-                		+ SessionsColumns.SUMMARY
-                        + "||'; '||" 
-                        + SessionsColumns.EXPERIENCE 
-                        + "||'; '||" 
-                        + Sessions.NOTE
-                        + " FROM " + Tables.SESSIONS);
+                createSessionsSearch(db, true);
+                fillSessionsSearch(db);
                 
                 db.execSQL("INSERT INTO " + Tables.SEARCH_SUGGEST
                 		+ "(" + SearchManager.SUGGEST_COLUMN_TEXT_1 + ")"
@@ -545,6 +933,52 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 		+ " WHERE " + Blocks.BLOCK_TYPE + "='Talk'");
             	
                 version = VER_ADD_LABS_SESSIONS;
+            case VER_ADD_LABS_SESSIONS:
+                db.execSQL("ALTER TABLE " + Tables.SYNC + " ADD COLUMN "
+                        + SyncColumns.ETAG + " TEXT");
+                db.execSQL("ALTER TABLE " + Tables.SYNC + " ADD COLUMN "
+                        + SyncColumns.LAST_MODIFIED + " TEXT");
+
+                version = VER_ADD_SYNC_VALIDATORS;
+            case VER_ADD_SYNC_VALIDATORS:
+                db.execSQL("ALTER TABLE " + Tables.SESSIONS + " ADD COLUMN "
+                        + SessionsColumns.CONTENT_HASH + " INTEGER");
+                db.execSQL("ALTER TABLE " + Tables.SPEAKERS + " ADD COLUMN "
+                        + SpeakersColumns.CONTENT_HASH + " INTEGER");
+
+                version = VER_ADD_CONTENT_HASH;
+            case VER_ADD_CONTENT_HASH:
+                db.execSQL("ALTER TABLE " + Tables.BLOCKS + " ADD COLUMN "
+                        + Blocks.SESSIONS_COUNT + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + Tables.BLOCKS + " ADD COLUMN "
+                        + Blocks.CONTAINS_STARRED + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + Tables.BLOCKS + " ADD COLUMN "
+                        + Sessions.STARRED_IN_BLOCK_COUNT + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + Tables.TRACKS + " ADD COLUMN "
+                        + Tracks.SESSIONS_COUNT + " INTEGER NOT NULL DEFAULT 0");
+                updateAggregates(db);
+
+                version = VER_ADD_AGGREGATES;
+            case VER_ADD_AGGREGATES:
+                createIndexes(db);
+
+                version = VER_ADD_INDEXES;
+            case VER_ADD_INDEXES:
+                dropSessionsSearchTriggers(db);
+                db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SEARCH);
+                createSessionsSearch(db, true);
+                fillSessionsSearch(db);
+
+                dropSpeakersSearchTriggers(db);
+                db.execSQL("DROP TABLE IF EXISTS " + Tables.SPEAKERS_SEARCH);
+                createSpeakersSearch(db, true);
+                fillSpeakersSearch(db);
+
+                version = VER_SEARCH_BY_DOCID;
+            case VER_SEARCH_BY_DOCID:
+                createSessionList(db);
+
+                version = VER_ADD_SESSION_LIST;
         }
 
         Log.d(TAG, "after upgrade logic, at version " + version);
@@ -559,15 +993,12 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SPEAKERS);
             db.execSQL("DROP TABLE IF EXISTS " + Tables.NOTES);
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SYNC);
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSION_LIST);
 
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_INSERT);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_DELETE);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_UPDATE);
+            dropSessionsSearchTriggers(db);
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SEARCH);
 
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_INSERT);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_DELETE);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_UPDATE);
+            dropSpeakersSearchTriggers(db);
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SPEAKERS_SEARCH);
 
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SEARCH_SUGGEST);
@@ -21,7 +21,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Notes;
@@ -36,20 +39,27 @@ import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.Sessi
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.SpeakersSearchColumns;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleDatabase.Tables;
 import net.peterkuterna.android.apps.devoxxsched.service.SyncService;
+import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.NotesExporter;
 import net.peterkuterna.android.apps.devoxxsched.util.SelectionBuilder;
+import net.peterkuterna.android.apps.devoxxsched.util.Sets;
 import android.app.Activity;
 import android.app.SearchManager;
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.DatabaseUtils.InsertHelper;
 import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
@@ -69,8 +79,30 @@ public class ScheduleProvider extends ContentProvider {
 
     private ScheduleDatabase mOpenHelper;
 
+    /**
+     * Set while {@link #applyBatch(ArrayList)} or {@link #bulkInsert(Uri, ContentValues[])}
+     * runs on this thread.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
+    /**
+     * Index on the times of all blocks, built when first needed after
+     * blocks changed. The generation counts changes to blocks, so an index
+     * built while blocks changed is not kept.
+     */
+    private volatile BlockIntervalIndex mBlockIndex;
+    private int mBlocksGeneration = 0;
+
+    /** Cached rows of the tables that only change during a sync. */
+    private final ReferenceCache mRoomsCache = new ReferenceCache(Tables.ROOMS, Rooms.DEFAULT_SORT);
+    private final ReferenceCache mTracksCache = new ReferenceCache(Tables.TRACKS, Tracks.DEFAULT_SORT);
+    private final ReferenceCache mBlocksCache = new ReferenceCache(Tables.BLOCKS, Blocks.DEFAULT_SORT);
+
     private static final UriMatcher sUriMatcher = buildUriMatcher();
 
+    private static final HashSet<String> sSessionListColumns =
+    		Sets.newHashSet(ScheduleDatabase.SESSION_LIST_COLUMNS);
+
     private static final int SESSIONS = 100;
     private static final int SESSIONS_STARRED = 101;
     private static final int SESSIONS_NEW = 102;
@@ -83,6 +115,7 @@ public class ScheduleProvider extends ContentProvider {
     private static final int SESSIONS_ID_SPEAKERS = 109;
     private static final int SESSIONS_ID_SPEAKERS_ID = 110;
     private static final int SESSIONS_ID_NOTES = 111;
+    private static final int SESSIONS_SPEAKERS = 112;
 
     private static final int SPEAKERS = 200;
     private static final int SPEAKERS_STARRED = 201;
@@ -115,6 +148,31 @@ public class ScheduleProvider extends ContentProvider {
 
     private static final String MIME_XML = "text/xml";
 
+    /**
+     * Parents of the filtered lists of sessions a changed session may show
+     * up in. Lists of a block, track, room or speaker are notified through
+     * the parent they belong to.
+     */
+    private static final Uri[] SESSIONS_FILTERED_URIS = {
+    	Sessions.CONTENT_STARRED_URI,
+    	Sessions.CONTENT_NEW_URI,
+    	Sessions.CONTENT_UPDATED_URI,
+    	Uri.withAppendedPath(Sessions.CONTENT_URI, "search"),
+    	Uri.withAppendedPath(Sessions.CONTENT_URI, "at"),
+    	Uri.withAppendedPath(Sessions.CONTENT_URI, "parallel"),
+    };
+
+    /** Parent of the schedules of blocks between two times. */
+    private static final Uri BLOCKS_BETWEEN_URI = Uri.withAppendedPath(Blocks.CONTENT_URI, "between");
+
+    /** Children of one parent above which the parent is notified instead. */
+    private static final int MAX_CHILD_NOTIFICATIONS = 32;
+
+    /** Weights of the title and body columns of {@link Tables#SESSIONS_SEARCH}. */
+    private static final double[] SESSIONS_SEARCH_WEIGHTS = { 4.0, 1.0 };
+    /** Weights of the name and body columns of {@link Tables#SPEAKERS_SEARCH}. */
+    private static final double[] SPEAKERS_SEARCH_WEIGHTS = { 4.0, 1.0 };
+
     /**
      * Build and return a {@link UriMatcher} that catches all {@link Uri}
      * variations supported by this {@link ContentProvider}.
@@ -131,6 +189,7 @@ public class ScheduleProvider extends ContentProvider {
         matcher.addURI(authority, "sessions/search/*", SESSIONS_SEARCH);
         matcher.addURI(authority, "sessions/at/*", SESSIONS_AT);
         matcher.addURI(authority, "sessions/parallel/*", SESSIONS_PARALLEL);
+        matcher.addURI(authority, "sessions/speakers", SESSIONS_SPEAKERS);
         matcher.addURI(authority, "sessions/*", SESSIONS_ID);
         matcher.addURI(authority, "sessions/*/speakers", SESSIONS_ID_SPEAKERS);
         matcher.addURI(authority, "sessions/*/speakers/*", SESSIONS_ID_SPEAKERS_ID);
@@ -202,6 +261,8 @@ public class ScheduleProvider extends ContentProvider {
                 return Speakers.CONTENT_TYPE;
             case SESSIONS_ID_NOTES:
                 return Notes.CONTENT_TYPE;
+            case SESSIONS_SPEAKERS:
+                return Speakers.CONTENT_TYPE;
             case SPEAKERS:
                 return Speakers.CONTENT_TYPE;
             case SPEAKERS_STARRED:
@@ -257,11 +318,23 @@ public class ScheduleProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
 
         final int match = sUriMatcher.match(uri);
+        if (selection == null) {
+        	final Cursor cursor = queryReferenceCache(db, uri, match, projection, sortOrder);
+        	if (cursor != null) {
+        		cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        		return cursor;
+        	}
+        }
         switch (match) {
             default: {
                 // Most cases are handled with simple SelectionBuilder
-                final SelectionBuilder builder = buildExpandedSelection(uri, match);
-                return builder.where(selection, selectionArgs).query(db, projection, sortOrder);
+                final SelectionBuilder builder = buildQuerySelection(uri, match, projection,
+                		selection, sortOrder);
+                builder.where(selection, selectionArgs);
+                if (LOGV) checkQueryPlan(db, builder, uri, projection, sortOrder);
+                final Cursor cursor = builder.query(db, projection, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                return cursor;
             }
             case NOTES_EXPORT: {
                 // Provide query values for file attachments
@@ -271,22 +344,151 @@ public class ScheduleProvider extends ContentProvider {
                 return cursor;
             }
             case SEARCH_SUGGEST: {
-                final SelectionBuilder builder = new SelectionBuilder();
+                final String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+                return querySearchSuggest(db, selectionArgs[0], limit);
+            }
+        }
+    }
 
-                // Adjust incoming query to become SQL text match
-                selectionArgs[0] = selectionArgs[0] + "%";
-                builder.table(Tables.SEARCH_SUGGEST);
-                builder.where(selection, selectionArgs);
-                builder.map(SearchManager.SUGGEST_COLUMN_QUERY,
-                        SearchManager.SUGGEST_COLUMN_TEXT_1);
+    /**
+     * Build the {@link SelectionBuilder} a query on the given {@link Uri}
+     * reads from. Lists of sessions are read from the session list when they
+     * can.
+     */
+    private SelectionBuilder buildQuerySelection(Uri uri, int match, String[] projection,
+    		String selection, String sortOrder) {
+    	SelectionBuilder builder = null;
+    	if (selection == null && coversSessionList(projection, sortOrder)) {
+    		builder = buildSessionListSelection(uri, match);
+    	}
+    	if (builder == null) {
+    		builder = buildExpandedSelection(uri, match);
+    	}
+    	return builder;
+    }
 
-                projection = new String[] { BaseColumns._ID, SearchManager.SUGGEST_COLUMN_TEXT_1,
-                        SearchManager.SUGGEST_COLUMN_QUERY };
+    /**
+     * Explain the query plan of a query on the given {@link Uri}, read from
+     * the same tables as {@link #query(Uri, String[], String, String[], String)}
+     * would. Each step can be checked with {@link #isFullTableScan(String)}.
+     */
+    public ArrayList<String> explainQuery(Uri uri, String[] projection, String sortOrder) {
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        final SelectionBuilder builder = buildQuerySelection(uri, sUriMatcher.match(uri),
+        		projection, null, sortOrder);
+        return builder.explainQueryPlan(db, projection != null ? projection.clone() : null,
+        		sortOrder);
+    }
 
-                final String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
-                return builder.query(db, projection, null, null, SearchSuggest.DEFAULT_SORT, limit);
-            }
+    /**
+     * Answer a plain query on rooms, tracks or blocks from their
+     * {@link ReferenceCache}, or return {@code null} when the cache can't.
+     */
+    private Cursor queryReferenceCache(SQLiteDatabase db, Uri uri, int match,
+    		String[] projection, String sortOrder) {
+    	switch (match) {
+    		case ROOMS:
+    			return mRoomsCache.query(db, projection, sortOrder, null, null);
+    		case ROOMS_ID:
+    			return mRoomsCache.query(db, projection, sortOrder, Rooms.ROOM_ID,
+    					Rooms.getRoomId(uri));
+    		case ROOMS_WITH_NAME:
+    			return mRoomsCache.query(db, projection, sortOrder, Rooms.NAME,
+    					Rooms.getRoomName(uri));
+    		case TRACKS:
+    			return mTracksCache.query(db, projection, sortOrder, null, null);
+    		case TRACKS_ID:
+    			return mTracksCache.query(db, projection, sortOrder, Tracks.TRACK_ID,
+    					Tracks.getTrackId(uri));
+    		case BLOCKS:
+    			return mBlocksCache.query(db, projection, sortOrder, null, null);
+    		case BLOCKS_ID:
+    			return mBlocksCache.query(db, projection, sortOrder, Blocks.BLOCK_ID,
+    					Blocks.getBlockId(uri));
+    		default:
+    			return null;
+    	}
+    }
+
+    /**
+     * Suggest the words of {@link Tables#SEARCH_SUGGEST}, followed by the
+     * session titles and speaker names containing words starting with what
+     * was typed. Titles and names are looked up through their own column of
+     * the full text index, so no separate copy of them is kept.
+     */
+    private static Cursor querySearchSuggest(SQLiteDatabase db, String typed, String limit) {
+        final String prefixQuery = buildPrefixQuery(typed);
+        final StringBuilder sql = new StringBuilder("SELECT ")
+        		.append(BaseColumns._ID).append(',')
+        		.append(SearchManager.SUGGEST_COLUMN_TEXT_1).append(',')
+        		.append(SearchManager.SUGGEST_COLUMN_TEXT_1).append(" AS ")
+        		.append(SearchManager.SUGGEST_COLUMN_QUERY)
+        		.append(" FROM (").append(Subquery.SEARCH_SUGGEST_WORDS);
+        final String[] args;
+        if (prefixQuery.length() > 0) {
+        	sql.append(" UNION ALL ").append(Subquery.SEARCH_SUGGEST_TITLES)
+        			.append(" UNION ALL ").append(Subquery.SEARCH_SUGGEST_NAMES);
+        	args = new String[] { typed + "%", prefixQuery, prefixQuery };
+        } else {
+        	args = new String[] { typed + "%" };
         }
+        sql.append(") ORDER BY source,").append(SearchSuggest.DEFAULT_SORT);
+        if (limit != null) {
+        	sql.append(" LIMIT ").append(Integer.parseInt(limit));
+        }
+        return db.rawQuery(sql.toString(), args);
+    }
+
+    /**
+     * Build a full text query matching words that start with every term
+     * typed. Characters with a special meaning in a query are dropped.
+     */
+    private static String buildPrefixQuery(String typed) {
+        final StringBuilder sb = new StringBuilder();
+        boolean inTerm = false;
+        for (int i = 0; i < typed.length(); i++) {
+        	final char c = typed.charAt(i);
+        	if (Character.isLetterOrDigit(c)) {
+        		if (!inTerm && sb.length() > 0) sb.append(' ');
+        		sb.append(c);
+        		inTerm = true;
+        	} else if (inTerm) {
+        		sb.append('*');
+        		inTerm = false;
+        	}
+        }
+        if (inTerm) sb.append('*');
+        return sb.toString();
+    }
+
+    /**
+     * Log every full table scan in the query plan of a query. Enable with
+     * {@code adb shell setprop log.tag.ScheduleProvider VERBOSE}. Scanning
+     * the table a list is built from is expected, but a scan of any joined
+     * table or subquery means an index is missing. The plan of every
+     * {@link Uri} pattern is checked by {@code ScheduleProviderQueryPlanTest}.
+     */
+    private static void checkQueryPlan(SQLiteDatabase db, SelectionBuilder builder, Uri uri,
+    		String[] projection, String sortOrder) {
+    	final String[] columns = projection != null ? projection.clone() : null;
+    	for (String step : builder.explainQueryPlan(db, columns, sortOrder)) {
+    		if (isFullTableScan(step)) {
+    			Log.w(TAG, "Full table scan for " + uri + ": " + step);
+    		} else {
+    			Log.v(TAG, "Query plan for " + uri + ": " + step);
+    		}
+    	}
+    }
+
+    /**
+     * Does a step of a query plan scan a complete table? Older versions of
+     * SQLite describe this as {@code TABLE x}, newer ones as
+     * {@code SCAN TABLE x}, both without mentioning an index.
+     */
+    public static boolean isFullTableScan(String step) {
+    	if (step == null) return false;
+    	final boolean scan = step.startsWith("SCAN ") || step.startsWith("TABLE ");
+    	return scan && !step.contains("INDEX") && !step.contains("PRIMARY KEY");
     }
 
     /** {@inheritDoc} */
@@ -295,51 +497,69 @@ public class ScheduleProvider extends ContentProvider {
         if (LOGV) Log.v(TAG, "insert(uri=" + uri + ", values=" + values.toString() + ")");
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final SessionRefs refs = match == SESSIONS ? collectSessionRefs(db, new SelectionBuilder()
+        		.table(Tables.SESSIONS)
+        		.where(Sessions.SESSION_ID + "=?", values.getAsString(Sessions.SESSION_ID))) : null;
+        final Uri newUri = insert(db, match, uri, values);
+        if (refs != null) {
+        	refs.add(values);
+        	aggregatesChanged(db, refs);
+        }
+        referencesChanged(match);
+        sessionListChanged(db, match, refs, refs != null);
+        notifyChanged(collectChangedUris(db, match, uri, values, refs));
+        return newUri;
+    }
+
+    private Uri insert(SQLiteDatabase db, int match, Uri uri, ContentValues values) {
         switch (match) {
             case SESSIONS: {
-                db.insertOrThrow(Tables.SESSIONS, null, values);
+                insertRow(db, Tables.SESSIONS, values);
                 return Sessions.buildSessionUri(values.getAsString(Sessions.SESSION_ID));
             }
             case SESSIONS_ID_SPEAKERS: {
-                db.insertOrThrow(Tables.SESSIONS_SPEAKERS, null, values);
+                insertRow(db, Tables.SESSIONS_SPEAKERS, values);
                 return Speakers.buildSpeakerUri(values.getAsString(SessionsSpeakers.SPEAKER_ID));
             }
             case SESSIONS_ID_NOTES: {
                 final String sessionId = Sessions.getSessionId(uri);
                 values.put(Notes.SESSION_ID, sessionId);
-                final long noteId = db.insertOrThrow(Tables.NOTES, null, values);
+                final long noteId = insertRow(db, Tables.NOTES, values);
                 return ContentUris.withAppendedId(Notes.CONTENT_URI, noteId);
             }
             case SPEAKERS: {
-                db.insertOrThrow(Tables.SPEAKERS, null, values);
+                insertRow(db, Tables.SPEAKERS, values);
                 return Speakers.buildSpeakerUri(values.getAsString(Speakers.SPEAKER_ID));
             }
             case SPEAKERS_ID_SESSIONS: {
-                db.insertOrThrow(Tables.SESSIONS_SPEAKERS, null, values);
+                insertRow(db, Tables.SESSIONS_SPEAKERS, values);
                 return Sessions.buildSessionUri(values.getAsString(SessionsSpeakers.SESSION_ID));
             }
             case ROOMS: {
-                db.insertOrThrow(Tables.ROOMS, null, values);
+                insertRow(db, Tables.ROOMS, values);
                 return Rooms.buildRoomUri(values.getAsString(Rooms.ROOM_ID));
             }
             case BLOCKS: {
-                db.insertOrThrow(Tables.BLOCKS, null, values);
+                insertRow(db, Tables.BLOCKS, values);
+                aggregatesChanged(db, null);
+                blocksChanged();
                 return Blocks.buildBlockUri(values.getAsString(Blocks.BLOCK_ID));
             }
             case NOTES: {
-                final long noteId = db.insertOrThrow(Tables.NOTES, null, values);
+                final long noteId = insertRow(db, Tables.NOTES, values);
                 return ContentUris.withAppendedId(Notes.CONTENT_URI, noteId);
             }
             case TRACKS: {
-                db.insertOrThrow(Tables.TRACKS, null, values);
+                insertRow(db, Tables.TRACKS, values);
+                aggregatesChanged(db, null);
                 return Tracks.buildTrackUri(values.getAsString(Tracks.TRACK_ID));
             }
             case SYNC: {
-                db.insertOrThrow(Tables.SYNC, null, values);
+                insertRow(db, Tables.SYNC, values);
                 return Sync.buildSyncUri(values.getAsString(Sync.URI_ID));
             }
             case SEARCH_SUGGEST: {
-                db.insertOrThrow(Tables.SEARCH_SUGGEST, null, values);
+                insertRow(db, Tables.SEARCH_SUGGEST, values);
                 return SearchSuggest.CONTENT_URI;
             }
             default: {
@@ -353,8 +573,27 @@ public class ScheduleProvider extends ContentProvider {
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         if (LOGV) Log.v(TAG, "update(uri=" + uri + ", values=" + values.toString() + ")");
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        final SelectionBuilder builder = buildSimpleSelection(uri);
-        return builder.where(selection, selectionArgs).update(db, values);
+        final SelectionBuilder builder = buildSimpleSelection(uri).where(selection, selectionArgs);
+        final int match = sUriMatcher.match(uri);
+        final boolean aggregates = changesAggregates(match, values);
+        final SessionRefs refs = isSessionsMatch(match) ? collectSessionRefs(db, builder) : null;
+        if (refs != null) {
+        	refs.add(values);
+        }
+        final Set<Uri> changedUris = collectChangedUris(db, match, uri, values, refs);
+        final int count = builder.update(db, values);
+        if (count > 0 && aggregates) {
+        	aggregatesChanged(db, refs);
+        }
+        if (count > 0 && (match == BLOCKS || match == BLOCKS_ID)) {
+        	blocksChanged();
+        }
+        if (count > 0) {
+        	referencesChanged(match);
+        	sessionListChanged(db, match, refs, aggregates);
+        	notifyChanged(changedUris);
+        }
+        return count;
     }
 
     /** {@inheritDoc} */
@@ -362,31 +601,751 @@ public class ScheduleProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         if (LOGV) Log.v(TAG, "delete(uri=" + uri + ")");
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        final SelectionBuilder builder = buildSimpleSelection(uri);
-        return builder.where(selection, selectionArgs).delete(db);
+        final SelectionBuilder builder = buildSimpleSelection(uri).where(selection, selectionArgs);
+        final int match = sUriMatcher.match(uri);
+        final boolean aggregates = changesAggregates(match, null);
+        final SessionRefs refs = isSessionsMatch(match) ? collectSessionRefs(db, builder) : null;
+        final Set<Uri> changedUris = collectChangedUris(db, match, uri, null, refs);
+        final int count = builder.delete(db);
+        if (count > 0 && aggregates) {
+        	aggregatesChanged(db, refs);
+        }
+        if (count > 0 && (match == BLOCKS || match == BLOCKS_ID)) {
+        	blocksChanged();
+        }
+        if (count > 0) {
+        	referencesChanged(match);
+        	sessionListChanged(db, match, refs, aggregates);
+        	notifyChanged(changedUris);
+        }
+        return count;
+    }
+
+    /**
+     * Collect the {@link Uri} of every list showing rows changed through the
+     * given {@link Uri} match. Pass {@code null} values for a delete, and the
+     * sessions a write to sessions touches. Called before an update or
+     * delete, so the rows can still be looked up.
+     * <p>
+     * Observers registered through {@link Cursor#setNotificationUri} are
+     * also told about changes to descendants, so {@code blocks/b} covers
+     * both the list of blocks and {@code blocks/b/sessions}. That is why
+     * only writes to a selection of sessions notify {@code sessions} itself.
+     */
+    private Set<Uri> collectChangedUris(SQLiteDatabase db, int match, Uri uri,
+    		ContentValues values, SessionRefs refs) {
+    	final Set<Uri> uris = Sets.newHashSet();
+    	switch (match) {
+    		case SESSIONS:
+    		case SESSIONS_NEW:
+    		case SESSIONS_UPDATED:
+    		case SESSIONS_UPDATED_STARRED:
+    		case SESSIONS_ID:
+    		case TRACKS_ID_SESSIONS: {
+    			final boolean inserted = match == SESSIONS && values != null
+    					&& values.containsKey(Sessions.SESSION_ID);
+    			if (match == SESSIONS_ID || inserted) {
+    				collectSessionUris(refs, uris);
+    				if (match == SESSIONS_ID && mBatch.get() == null) {
+    					collectSessionSpeakers(db, Sessions.getSessionId(uri), uris);
+    				} else if (!inserted) {
+    					uris.add(Speakers.CONTENT_URI);
+    					uris.add(Notes.CONTENT_URI);
+    				}
+    			} else {
+    				uris.add(Sessions.CONTENT_URI);
+    				uris.add(childUri(Blocks.CONTENT_URI, values, Sessions.BLOCK_ID));
+    				uris.add(childUri(Tracks.CONTENT_URI, values, Sessions.TRACK_ID));
+    				uris.add(childUri(Rooms.CONTENT_URI, values, Sessions.ROOM_ID));
+    				uris.add(Speakers.CONTENT_URI);
+    				uris.add(Notes.CONTENT_URI);
+    			}
+    			if (values == null || values.containsKey(Sessions.STARRED)) {
+    				uris.add(Speakers.CONTENT_STARRED_URI);
+    			}
+    			break;
+    		}
+    		case SESSIONS_ID_SPEAKERS:
+    		case SESSIONS_ID_SPEAKERS_ID:
+    		case SPEAKERS_ID_SESSIONS:
+    		case SESSIONS_SPEAKERS: {
+    			final String sessionId = match == SESSIONS_ID_SPEAKERS || match == SESSIONS_ID_SPEAKERS_ID
+    					? Sessions.getSessionId(uri) : valueOf(values, SessionsSpeakers.SESSION_ID);
+    			final String speakerId = match == SPEAKERS_ID_SESSIONS
+    					? Speakers.getSpeakerId(uri) : match == SESSIONS_ID_SPEAKERS_ID
+    					? Sessions.getSpeakerId(uri) : valueOf(values, SessionsSpeakers.SPEAKER_ID);
+    			uris.add(sessionId != null ? Sessions.buildSpeakersDirUri(sessionId) : Sessions.CONTENT_URI);
+    			uris.add(speakerId != null ? Speakers.buildSessionsDirUri(speakerId) : Speakers.CONTENT_URI);
+    			uris.add(Speakers.CONTENT_STARRED_URI);
+    			break;
+    		}
+    		case SESSIONS_ID_NOTES: {
+    			uris.add(Notes.CONTENT_URI);
+    			uris.add(Sessions.buildNotesDirUri(Sessions.getSessionId(uri)));
+    			break;
+    		}
+    		case NOTES:
+    		case NOTES_ID: {
+    			uris.add(Notes.CONTENT_URI);
+    			String sessionId = valueOf(values, Notes.SESSION_ID);
+    			if (sessionId == null && match == NOTES_ID) {
+    				sessionId = lookupString(db, Tables.NOTES, Notes.SESSION_ID,
+    						Notes._ID + "=?", Long.toString(Notes.getNoteId(uri)));
+    			}
+    			if (sessionId != null) {
+    				uris.add(Sessions.buildNotesDirUri(sessionId));
+    			}
+    			break;
+    		}
+    		case SPEAKERS:
+    		case SPEAKERS_ID: {
+    			uris.add(Speakers.CONTENT_URI);
+    			break;
+    		}
+    		case ROOMS:
+    		case ROOMS_ID: {
+    			uris.add(Rooms.CONTENT_URI);
+    			uris.add(Sessions.CONTENT_URI);
+    			break;
+    		}
+    		case BLOCKS:
+    		case BLOCKS_ID: {
+    			uris.add(Blocks.CONTENT_URI);
+    			uris.add(Sessions.CONTENT_URI);
+    			break;
+    		}
+    		case TRACKS:
+    		case TRACKS_ID: {
+    			uris.add(Tracks.CONTENT_URI);
+    			uris.add(Sessions.CONTENT_URI);
+    			uris.add(Notes.CONTENT_URI);
+    			break;
+    		}
+    		case SYNC:
+    		case SYNC_ID: {
+    			uris.add(Sync.CONTENT_URI);
+    			break;
+    		}
+    		case SEARCH_SUGGEST: {
+    			uris.add(SearchSuggest.CONTENT_URI);
+    			break;
+    		}
+    	}
+    	if (changesAggregates(match, values)) {
+    		if (refs == null) {
+    			uris.add(Blocks.CONTENT_URI);
+    			uris.add(Tracks.CONTENT_URI);
+    		} else if (mBatch.get() == null) {
+    			collectAggregateUris(db, refs, uris);
+    		}
+    	}
+    	return uris;
+    }
+
+    /**
+     * Collect the {@link Uri} of the given sessions, of their blocks, tracks
+     * and rooms, and the parents of the filtered lists they may show up in.
+     */
+    private static void collectSessionUris(SessionRefs refs, Set<Uri> uris) {
+    	for (String sessionId : refs.sessionIds) {
+    		uris.add(Sessions.buildSessionUri(sessionId));
+    	}
+    	for (String blockId : refs.blockIds) {
+    		uris.add(Blocks.buildBlockUri(blockId));
+    	}
+    	for (String trackId : refs.trackIds) {
+    		uris.add(Tracks.buildTrackUri(trackId));
+    	}
+    	for (String roomId : refs.roomIds) {
+    		uris.add(Rooms.buildRoomUri(roomId));
+    	}
+    	for (Uri filteredUri : SESSIONS_FILTERED_URIS) {
+    		uris.add(filteredUri);
+    	}
+    }
+
+    /**
+     * Collect the {@link Uri} of every list showing the aggregate columns of
+     * the given blocks and tracks. Besides the blocks and tracks themselves,
+     * these are the lists of sessions in any block overlapping those blocks,
+     * since they show the starred count of the parallel blocks.
+     */
+    private static void collectAggregateUris(SQLiteDatabase db, SessionRefs refs, Set<Uri> uris) {
+    	for (String trackId : refs.trackIds) {
+    		uris.add(Tracks.buildTrackUri(trackId));
+    	}
+    	if (refs.blockIds.isEmpty()) {
+    		return;
+    	}
+    	uris.add(BLOCKS_BETWEEN_URI);
+    	for (String blockId : refs.blockIds) {
+    		uris.add(Blocks.buildBlockUri(blockId));
+    	}
+    	for (Uri filteredUri : SESSIONS_FILTERED_URIS) {
+    		uris.add(filteredUri);
+    	}
+    	final Cursor cursor = ScheduleDatabase.queryOverlappingSessionList(db, refs.blockIds,
+    			new String[] { Sessions.BLOCK_ID, Sessions.TRACK_ID, Sessions.ROOM_ID });
+    	try {
+    		while (cursor.moveToNext()) {
+    			if (!cursor.isNull(0)) uris.add(Blocks.buildBlockUri(cursor.getString(0)));
+    			if (!cursor.isNull(1)) uris.add(Tracks.buildTrackUri(cursor.getString(1)));
+    			if (!cursor.isNull(2)) uris.add(Rooms.buildRoomUri(cursor.getString(2)));
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    }
+
+    /**
+     * Collect the speakers of a single session, so their lists of sessions
+     * are told about a change to it.
+     */
+    private static void collectSessionSpeakers(SQLiteDatabase db, String sessionId, Set<Uri> uris) {
+    	final Cursor speakers = db.query(Tables.SESSIONS_SPEAKERS,
+    			new String[] { SessionsSpeakers.SPEAKER_ID },
+    			SessionsSpeakers.SESSION_ID + "=?", new String[] { sessionId }, null, null, null);
+    	try {
+    		while (speakers.moveToNext()) {
+    			uris.add(Speakers.buildSessionsDirUri(speakers.getString(0)));
+    		}
+    	} finally {
+    		speakers.close();
+    	}
+    }
+
+    /**
+     * Returns the {@link Uri} of the row whose id is in the given column of
+     * the values, or the parent {@link Uri} when the id is not known.
+     */
+    private static Uri childUri(Uri parent, ContentValues values, String column) {
+    	final String id = valueOf(values, column);
+    	return id != null ? Uri.withAppendedPath(parent, id) : parent;
+    }
+
+    private static String valueOf(ContentValues values, String column) {
+    	return values != null ? values.getAsString(column) : null;
+    }
+
+    private static String lookupString(SQLiteDatabase db, String table, String column,
+    		String selection, String selectionArg) {
+    	final Cursor cursor = db.query(table, new String[] { column }, selection,
+    			new String[] { selectionArg }, null, null, null);
+    	try {
+    		return cursor.moveToFirst() ? cursor.getString(0) : null;
+    	} finally {
+    		cursor.close();
+    	}
+    }
+
+    /**
+     * Tell observers about the given changes right away, or once at the end
+     * of the batch when called from {@link #applyBatch(ArrayList)}.
+     */
+    private void notifyChanged(Set<Uri> uris) {
+    	final Batch batch = mBatch.get();
+    	if (batch != null) {
+    		batch.changedUris.addAll(uris);
+    	} else {
+    		sendNotifications(uris);
+    	}
+    }
+
+    /**
+     * Send one notification for every {@link Uri}, skipping those with an
+     * ancestor in the set, since observers of descendants are told anyway.
+     */
+    private void sendNotifications(Set<Uri> changedUris) {
+    	final ContentResolver resolver = getContext().getContentResolver();
+    	final Set<Uri> uris = collapseChildren(changedUris);
+    	for (Uri uri : uris) {
+    		if (!hasAncestorIn(uri, uris)) {
+    			if (LOGV) Log.v(TAG, "notifyChange(uri=" + uri + ")");
+    			resolver.notifyChange(uri, null, false);
+    		}
+    	}
+    }
+
+    /**
+     * Replace the children of any parent with more than
+     * {@link #MAX_CHILD_NOTIFICATIONS} children in the set by the parent
+     * itself, so a write to many rows sends a single notification.
+     */
+    private static Set<Uri> collapseChildren(Set<Uri> uris) {
+    	final HashMap<Uri, Integer> childCounts = Maps.newHashMap();
+    	for (Uri uri : uris) {
+    		final Uri parent = getParent(uri);
+    		if (parent != null) {
+    			final Integer count = childCounts.get(parent);
+    			childCounts.put(parent, count != null ? count + 1 : 1);
+    		}
+    	}
+    	final Set<Uri> collapsed = Sets.newHashSet();
+    	for (Uri uri : uris) {
+    		final Uri parent = getParent(uri);
+    		if (parent != null && childCounts.get(parent) > MAX_CHILD_NOTIFICATIONS) {
+    			collapsed.add(parent);
+    		} else {
+    			collapsed.add(uri);
+    		}
+    	}
+    	return collapsed;
+    }
+
+    private static Uri getParent(Uri uri) {
+    	final List<String> segments = uri.getPathSegments();
+    	if (segments.size() < 2) {
+    		return null;
+    	}
+    	final Uri.Builder builder = new Uri.Builder()
+    			.scheme(uri.getScheme()).authority(uri.getAuthority());
+    	for (int i = 0; i < segments.size() - 1; i++) {
+    		builder.appendPath(segments.get(i));
+    	}
+    	return builder.build();
+    }
+
+    private static boolean hasAncestorIn(Uri uri, Set<Uri> uris) {
+    	final List<String> segments = uri.getPathSegments();
+    	final Uri.Builder builder = new Uri.Builder()
+    			.scheme(uri.getScheme()).authority(uri.getAuthority());
+    	for (int i = 0; i < segments.size() - 1; i++) {
+    		builder.appendPath(segments.get(i));
+    		if (uris.contains(builder.build())) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Returns the {@link BlockIntervalIndex}, building it first when blocks
+     * changed since it was last built.
+     */
+    private BlockIntervalIndex getBlockIndex() {
+    	BlockIntervalIndex index = mBlockIndex;
+    	if (index == null) {
+    		final int generation;
+    		synchronized (this) {
+    			generation = mBlocksGeneration;
+    		}
+    		index = BlockIntervalIndex.build(mOpenHelper.getReadableDatabase());
+    		synchronized (this) {
+    			if (generation == mBlocksGeneration) {
+    				mBlockIndex = index;
+    			}
+    		}
+    	}
+    	return index;
+    }
+
+    private synchronized void blocksChanged() {
+    	mBlocksGeneration++;
+    	mBlockIndex = null;
+    }
+
+    /**
+     * Returns the ids of the blocks lying within the block of the given
+     * session, which includes the block of the session itself.
+     */
+    private List<String> getParallelBlockIds(String sessionId) {
+    	final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+    	final Cursor cursor = db.rawQuery("SELECT " + Qualified.BLOCKS_BLOCK_START + ","
+    			+ Qualified.BLOCKS_BLOCK_END + " FROM " + Tables.SESSIONS_JOIN_BLOCKS_ROOMS_TRACKS
+    			+ " WHERE " + Qualified.SESSIONS_SESSION_ID + "=?", new String[] { sessionId });
+    	try {
+    		if (!cursor.moveToFirst() || cursor.isNull(0)) {
+    			return Lists.newArrayList();
+    		}
+    		return getBlockIndex().getBlocksWithin(cursor.getLong(0), cursor.getLong(1));
+    	} finally {
+    		cursor.close();
+    	}
+    }
+
+    /**
+     * Rank the matches of a search, honoring the {@link ScheduleContract#PARAM_OFFSET}
+     * and {@link ScheduleContract#PARAM_LIMIT} of the {@link Uri}.
+     */
+    private List<Long> rankSearch(Uri uri, String table, String query, double[] columnWeights) {
+    	final int offset = getIntParameter(uri, ScheduleContract.PARAM_OFFSET, 0);
+    	final int limit = getIntParameter(uri, ScheduleContract.PARAM_LIMIT, -1);
+    	return SearchRanker.rank(mOpenHelper.getReadableDatabase(), table, query, columnWeights,
+    			offset, limit);
+    }
+
+    private static int getIntParameter(Uri uri, String name, int defaultValue) {
+    	final String value = uri.getQueryParameter(name);
+    	if (value == null) {
+    		return defaultValue;
+    	}
+    	try {
+    		return Integer.parseInt(value);
+    	} catch (NumberFormatException e) {
+    		throw new IllegalArgumentException("Invalid " + name + " in " + uri);
+    	}
+    }
+
+    /**
+     * Build a selection matching sessions inside any of the given blocks,
+     * using the given block id column.
+     */
+    private static String blockIdIn(String column, List<String> blockIds) {
+    	if (blockIds.isEmpty()) {
+    		return "0";
+    	}
+    	final StringBuilder sb = new StringBuilder(column).append(" IN (");
+    	for (int i = 0; i < blockIds.size(); i++) {
+    		if (i > 0) sb.append(',');
+    		DatabaseUtils.appendEscapedSQLString(sb, blockIds.get(i));
+    	}
+    	return sb.append(')').toString();
+    }
+
+    /**
+     * Does a change through the given {@link Uri} match affect the aggregate
+     * columns of blocks and tracks? Pass {@code null} values for a delete.
+     */
+    private static boolean changesAggregates(int match, ContentValues values) {
+        switch (match) {
+            case SESSIONS:
+            case SESSIONS_NEW:
+            case SESSIONS_UPDATED:
+            case SESSIONS_UPDATED_STARRED:
+            case SESSIONS_ID:
+            case TRACKS_ID_SESSIONS:
+            case BLOCKS:
+            case BLOCKS_ID:
+            case TRACKS:
+            case TRACKS_ID:
+                return values == null
+                		|| values.containsKey(Sessions.STARRED)
+                		|| values.containsKey(Sessions.BLOCK_ID)
+                		|| values.containsKey(Sessions.TRACK_ID)
+                		|| values.containsKey(Blocks.BLOCK_START)
+                		|| values.containsKey(Blocks.BLOCK_END);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Is the given {@link Uri} match a write to rows of {@link Tables#SESSIONS}?
+     */
+    private static boolean isSessionsMatch(int match) {
+        switch (match) {
+            case SESSIONS:
+            case SESSIONS_NEW:
+            case SESSIONS_UPDATED:
+            case SESSIONS_UPDATED_STARRED:
+            case SESSIONS_ID:
+            case TRACKS_ID_SESSIONS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Collect the ids, blocks, tracks and rooms of the sessions matched by the given
+     * {@link SelectionBuilder}, before they are written.
+     */
+    private static SessionRefs collectSessionRefs(SQLiteDatabase db, SelectionBuilder builder) {
+    	final SessionRefs refs = new SessionRefs();
+    	final Cursor cursor = builder.query(db, new String[] { Sessions.SESSION_ID,
+    			Sessions.BLOCK_ID, Sessions.TRACK_ID, Sessions.ROOM_ID }, null);
+    	try {
+    		while (cursor.moveToNext()) {
+    			refs.add(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+    					cursor.getString(3));
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    	return refs;
+    }
+
+    /**
+     * Update the aggregate columns right away, or at the end of the batch
+     * when called from {@link #applyBatch(ArrayList)}. Pass the blocks and
+     * tracks of the changed sessions, or {@code null} after blocks or tracks
+     * themselves changed, to update all of them.
+     */
+    private void aggregatesChanged(SQLiteDatabase db, SessionRefs refs) {
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+        	if (refs != null) {
+        		batch.aggregateRefs.addAll(refs);
+        	} else {
+        		batch.aggregatesDirty = true;
+        	}
+        } else {
+        	if (refs != null) {
+        		ScheduleDatabase.updateAggregates(db, refs.blockIds, refs.trackIds);
+        	} else {
+        		ScheduleDatabase.updateAggregates(db);
+        	}
+        	mBlocksCache.invalidate();
+        	mTracksCache.invalidate();
+        }
+    }
+
+    /**
+     * Bring {@link Tables#SESSION_LIST} up to date after a write through the
+     * given {@link Uri} match. A write to sessions copies just those
+     * sessions, along with the aggregate columns of the blocks they touched
+     * when those changed. A write to blocks, rooms or tracks copies all
+     * sessions again. Inside a batch, the copying is done once at the end.
+     */
+    private void sessionListChanged(SQLiteDatabase db, int match, SessionRefs refs,
+    		boolean aggregates) {
+        switch (match) {
+            case ROOMS:
+            case ROOMS_ID:
+            case BLOCKS:
+            case BLOCKS_ID:
+            case TRACKS:
+            case TRACKS_ID:
+            	break;
+            default:
+            	if (refs == null) return;
+        }
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+        	if (refs != null) {
+        		batch.sessionListIds.addAll(refs.sessionIds);
+        	} else {
+        		batch.sessionListDirty = true;
+        	}
+        } else if (refs != null) {
+        	ScheduleDatabase.updateSessionList(db, refs.sessionIds);
+        	if (aggregates) {
+        		ScheduleDatabase.updateSessionListAggregates(db, refs.blockIds);
+        	}
+        } else {
+        	ScheduleDatabase.updateSessionList(db, null);
+        }
+    }
+
+    /**
+     * Can a query with the given projection and sort order be answered from
+     * {@link Tables#SESSION_LIST}? Every column has to be one of
+     * {@link ScheduleDatabase#SESSION_LIST_COLUMNS}.
+     */
+    private static boolean coversSessionList(String[] projection, String sortOrder) {
+    	if (projection == null) {
+    		return false;
+    	}
+    	for (String column : projection) {
+    		if (!sSessionListColumns.contains(column)) {
+    			return false;
+    		}
+    	}
+    	if (sortOrder != null) {
+    		for (String term : sortOrder.split(",")) {
+    			final String column = term.trim().split("\\s+")[0];
+    			if (!sSessionListColumns.contains(column)) {
+    				return false;
+    			}
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     * Drop the cached rows of the reference table written through the given
+     * {@link Uri} match. Inside a batch, the caches are dropped again once
+     * the batch ended, since rows read during the batch may be rolled back.
+     */
+    private void referencesChanged(int match) {
+        switch (match) {
+            case ROOMS:
+            case ROOMS_ID:
+            	mRoomsCache.invalidate();
+            	break;
+            case TRACKS:
+            case TRACKS_ID:
+            	mTracksCache.invalidate();
+            	break;
+            case BLOCKS:
+            case BLOCKS_ID:
+            	mBlocksCache.invalidate();
+            	break;
+            default:
+            	return;
+        }
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+        	batch.referencesDirty = true;
+        }
+    }
+
+    /**
+     * Insert a row into the given table. Inside a batch, the insert
+     * statement of every table is compiled once and reused for all rows.
+     */
+    private long insertRow(SQLiteDatabase db, String table, ContentValues values) {
+        final Batch batch = mBatch.get();
+        if (batch == null) {
+        	return db.insertOrThrow(table, null, values);
+        }
+
+        InsertHelper inserter = batch.inserters.get(table);
+        if (inserter == null) {
+        	inserter = new InsertHelper(db, table);
+        	batch.inserters.put(table, inserter);
+        }
+        final long rowId = inserter.insert(values);
+        if (rowId == -1) {
+        	throw new SQLException("Failed to insert row into " + table);
+        }
+        return rowId;
     }
 
     /**
      * Apply the given set of {@link ContentProviderOperation}, executing inside
      * a {@link SQLiteDatabase} transaction. All changes will be rolled back if
-     * any single one fails.
+     * any single one fails. Aggregate columns are updated once, at the end,
+     * and observers are told about every changed {@link Uri} once, after the
+     * transaction committed.
      */
     @Override
     public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
             throws OperationApplicationException {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int numOperations = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
         db.beginTransaction();
+        final Batch batch = beginBatch();
         try {
-            final int numOperations = operations.size();
-            final ContentProviderResult[] results = new ContentProviderResult[numOperations];
             for (int i = 0; i < numOperations; i++) {
                 results[i] = operations.get(i).apply(this, results, i);
             }
+            finishBatch(db, batch);
+            db.setTransactionSuccessful();
+        } finally {
+            endBatch(batch);
+            db.endTransaction();
+        }
+        sendNotifications(batch.changedUris);
+        return results;
+    }
+
+    /**
+     * Insert all given rows inside a single {@link SQLiteDatabase} transaction,
+     * reusing one compiled insert statement.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        final Batch batch = beginBatch();
+        try {
+            for (ContentValues row : values) {
+            	insert(uri, row);
+            }
+            finishBatch(db, batch);
             db.setTransactionSuccessful();
-            return results;
         } finally {
+            endBatch(batch);
             db.endTransaction();
         }
+        sendNotifications(batch.changedUris);
+        return values.length;
+    }
+
+    private Batch beginBatch() {
+        final Batch batch = new Batch();
+        mBatch.set(batch);
+        return batch;
+    }
+
+    private void finishBatch(SQLiteDatabase db, Batch batch) {
+        if (batch.aggregatesDirty) {
+        	ScheduleDatabase.updateAggregates(db);
+        } else {
+        	ScheduleDatabase.updateAggregates(db, batch.aggregateRefs.blockIds,
+        			batch.aggregateRefs.trackIds);
+        	collectAggregateUris(db, batch.aggregateRefs, batch.changedUris);
+        }
+        if (batch.sessionListDirty) {
+        	ScheduleDatabase.updateSessionList(db, null);
+        } else {
+        	ScheduleDatabase.updateSessionList(db, batch.sessionListIds);
+        	if (batch.aggregatesDirty) {
+        		ScheduleDatabase.updateSessionListAggregates(db, null);
+        	} else {
+        		ScheduleDatabase.updateSessionListAggregates(db, batch.aggregateRefs.blockIds);
+        	}
+        }
+    }
+
+    private void endBatch(Batch batch) {
+        mBatch.remove();
+        if (batch.referencesDirty || batch.aggregatesDirty || !batch.aggregateRefs.isEmpty()) {
+        	mRoomsCache.invalidate();
+        	mTracksCache.invalidate();
+        	mBlocksCache.invalidate();
+        }
+        for (InsertHelper inserter : batch.inserters.values()) {
+        	inserter.close();
+        }
+    }
+
+    /**
+     * State of a batch of operations running on one thread.
+     */
+    private static class Batch {
+        /** Compiled insert statements, by table. */
+        final HashMap<String, InsertHelper> inserters = Maps.newHashMap();
+        /** Did an operation change the aggregate columns of all blocks and tracks? */
+        boolean aggregatesDirty = false;
+        /** Blocks and tracks whose aggregate columns changed with their sessions. */
+        final SessionRefs aggregateRefs = new SessionRefs();
+        /** Did an operation change rooms, tracks or blocks? */
+        boolean referencesDirty = false;
+        /** Did blocks, rooms or tracks change, so all of {@link Tables#SESSION_LIST} is copied? */
+        boolean sessionListDirty = false;
+        /** Sessions to copy into {@link Tables#SESSION_LIST} again. */
+        final HashSet<String> sessionListIds = Sets.newHashSet();
+        /** Every {@link Uri} to notify once the batch committed. */
+        final Set<Uri> changedUris = Sets.newHashSet();
+    }
+
+    /**
+     * Sessions touched by writes, with the blocks, tracks and rooms holding
+     * them both before and after the writes.
+     */
+    private static class SessionRefs {
+        final HashSet<String> sessionIds = Sets.newHashSet();
+        final HashSet<String> blockIds = Sets.newHashSet();
+        final HashSet<String> trackIds = Sets.newHashSet();
+        final HashSet<String> roomIds = Sets.newHashSet();
+
+        void add(String sessionId, String blockId, String trackId, String roomId) {
+        	if (sessionId != null) sessionIds.add(sessionId);
+        	if (blockId != null) blockIds.add(blockId);
+        	if (trackId != null) trackIds.add(trackId);
+        	if (roomId != null) roomIds.add(roomId);
+        }
+
+        /** Add the session and the block, track and room the given values move it to. */
+        void add(ContentValues values) {
+        	add(values.getAsString(Sessions.SESSION_ID), values.getAsString(Sessions.BLOCK_ID),
+        			values.getAsString(Sessions.TRACK_ID), values.getAsString(Sessions.ROOM_ID));
+        }
+
+        void addAll(SessionRefs refs) {
+        	sessionIds.addAll(refs.sessionIds);
+        	blockIds.addAll(refs.blockIds);
+        	trackIds.addAll(refs.trackIds);
+        	roomIds.addAll(refs.roomIds);
+        }
+
+        boolean isEmpty() {
+        	return sessionIds.isEmpty() && blockIds.isEmpty() && trackIds.isEmpty()
+        			&& roomIds.isEmpty();
+        }
     }
 
     /**
@@ -424,6 +1383,9 @@ public class ScheduleProvider extends ContentProvider {
                 return builder.table(Tables.SESSIONS_SPEAKERS)
                         .where(SessionsSpeakers.SESSION_ID + "=?", sessionId);
             }
+            case SESSIONS_SPEAKERS: {
+                return builder.table(Tables.SESSIONS_SPEAKERS);
+            }
             case SESSIONS_ID_SPEAKERS_ID: {
                 final String sessionId = Sessions.getSessionId(uri);
                 final String speakerId = Sessions.getSpeakerId(uri);
@@ -503,6 +1465,76 @@ public class ScheduleProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Build a {@link SelectionBuilder} reading a list of sessions from
+     * {@link Tables#SESSION_LIST}, or return {@code null} when the
+     * {@link Uri} is not such a list.
+     */
+    private SelectionBuilder buildSessionListSelection(Uri uri, int match) {
+        final SelectionBuilder builder = new SelectionBuilder();
+        switch (match) {
+            case SESSIONS: {
+                return builder.table(Tables.SESSION_LIST);
+            }
+            case SESSIONS_STARRED: {
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.STARRED + "=1");
+            }
+            case SESSIONS_NEW: {
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.NEW + "=1");
+            }
+            case SESSIONS_UPDATED: {
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.UPDATED + "=1");
+            }
+            case SESSIONS_UPDATED_STARRED: {
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.UPDATED + "=1")
+                        .where(Sessions.STARRED + "=1");
+            }
+            case SESSIONS_AT: {
+                final List<String> segments = uri.getPathSegments();
+                final String time = segments.get(2);
+                return builder.table(Tables.SESSION_LIST)
+                        .where(blockIdIn(Sessions.BLOCK_ID,
+                        		getBlockIndex().getBlocksAt(Long.parseLong(time))));
+            }
+            case SESSIONS_PARALLEL: {
+                final List<String> segments = uri.getPathSegments();
+                final String sessionId = segments.get(2);
+                return builder.table(Tables.SESSION_LIST)
+                        .where(blockIdIn(Sessions.BLOCK_ID, getParallelBlockIds(sessionId)))
+                        .where(Sessions.SESSION_ID + "<>?", sessionId);
+            }
+            case BLOCKS_ID_SESSIONS: {
+                final String blockId = Blocks.getBlockId(uri);
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.BLOCK_ID + "=?", blockId);
+            }
+            case TRACKS_ID_SESSIONS: {
+                final String trackId = Tracks.getTrackId(uri);
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.TRACK_ID + "=?", trackId);
+            }
+            case ROOMS_ID_SESSIONS: {
+                final String roomId = Rooms.getRoomId(uri);
+                return builder.table(Tables.SESSION_LIST)
+                        .where(Sessions.ROOM_ID + "=?", roomId);
+            }
+            case SPEAKERS_ID_SESSIONS: {
+                final String speakerId = Speakers.getSpeakerId(uri);
+                return builder.table(Tables.SESSIONS_SPEAKERS_JOIN_SESSION_LIST)
+                        .mapToTable(Sessions._ID, Tables.SESSION_LIST)
+                        .mapToTable(Sessions.SESSION_ID, Tables.SESSION_LIST)
+                        .where(Qualified.SESSIONS_SPEAKERS_SPEAKER_ID + "=?", speakerId);
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+
     /**
      * Build an advanced {@link SelectionBuilder} to match the requested
      * {@link Uri}. This is usually only used by {@link #query}, since it
@@ -517,7 +1549,6 @@ public class ScheduleProvider extends ContentProvider {
                 		.mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS);
             }
             case SESSIONS_STARRED: {
@@ -526,7 +1557,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Sessions.STARRED + "=1");
             }
@@ -536,7 +1566,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Sessions.NEW + "=1");
             }
@@ -546,7 +1575,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Sessions.UPDATED + "=1");
             }
@@ -556,23 +1584,29 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Sessions.UPDATED + "=1")
                         .where(Sessions.STARRED + "=1");
             }
             case SESSIONS_SEARCH: {
                 final String query = Sessions.getSearchQuery(uri);
+                final List<Long> ranked = rankSearch(uri, Tables.SESSIONS_SEARCH, query,
+                		SESSIONS_SEARCH_WEIGHTS);
+                final String rank = SearchRanker.buildRankExpression(
+                		Qualified.SESSIONS_SEARCH_DOCID, ranked);
                 return builder.table(Tables.SESSIONS_SEARCH_JOIN_SESSIONS_BLOCKS_ROOMS_TRACKS)
                         .map(Sessions.SEARCH_SNIPPET, Subquery.SESSIONS_SNIPPET)
+                        .map(Sessions.SEARCH_RANK, rank)
+                        .defaultOrderBy(rank + " ASC")
                         .mapToTable(Sessions._ID, Tables.SESSIONS)
                         .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
-                        .where(SessionsSearchColumns.BODY + " MATCH ?", query);
+                        .where(Tables.SESSIONS_SEARCH + " MATCH ?", query)
+                        .where(SearchRanker.buildRankedSelection(Qualified.SESSIONS_SEARCH_DOCID,
+                        		ranked));
             }
             case SESSIONS_AT: {
                 final List<String> segments = uri.getPathSegments();
@@ -582,10 +1616,9 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
-                        .where(Sessions.BLOCK_START + "<=?", time)
-                        .where(Sessions.BLOCK_END + ">=?", time);
+                        .where(blockIdIn(Qualified.SESSIONS_BLOCK_ID,
+                        		getBlockIndex().getBlocksAt(Long.parseLong(time))));
             }
             case SESSIONS_PARALLEL: {
                 final List<String> segments = uri.getPathSegments();
@@ -595,10 +1628,9 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
-                        .where(WhereClause.SESSIONS_PARALLEL, sessionId, sessionId)
-                        .where(Sessions.SESSION_ID + "<>?", sessionId);
+                        .where(blockIdIn(Qualified.SESSIONS_BLOCK_ID, getParallelBlockIds(sessionId)))
+                        .where(Qualified.SESSIONS_SESSION_ID + "<>?", sessionId);
             }
             case SESSIONS_ID: {
                 final String sessionId = Sessions.getSessionId(uri);
@@ -607,10 +1639,12 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Qualified.SESSIONS_SESSION_ID + "=?", sessionId);
             }
+            case SESSIONS_SPEAKERS: {
+                return builder.table(Tables.SESSIONS_SPEAKERS);
+            }
             case SESSIONS_ID_SPEAKERS: {
                 final String sessionId = Sessions.getSessionId(uri);
                 return builder.table(Tables.SESSIONS_SPEAKERS_JOIN_SPEAKERS)
@@ -636,13 +1670,21 @@ public class ScheduleProvider extends ContentProvider {
                         .where(Speakers.CONTAINS_STARRED + "=1");
             }
             case SPEAKERS_SEARCH: {
-                final String query = Sessions.getSearchQuery(uri);
+                final String query = Speakers.getSearchQuery(uri);
+                final List<Long> ranked = rankSearch(uri, Tables.SPEAKERS_SEARCH, query,
+                		SPEAKERS_SEARCH_WEIGHTS);
+                final String rank = SearchRanker.buildRankExpression(
+                		Qualified.SPEAKERS_SEARCH_DOCID, ranked);
                 return builder.table(Tables.SPEAKERS_SEARCH_JOIN_SPEAKERS)
                         .map(Speakers.SEARCH_SNIPPET, Subquery.SPEAKERS_SNIPPET)
+                        .map(Speakers.SEARCH_RANK, rank)
+                        .defaultOrderBy(rank + " ASC")
                    		.map(Speakers.CONTAINS_STARRED, Subquery.SPEAKER_CONTAINS_STARRED)
                         .mapToTable(Speakers._ID, Tables.SPEAKERS)
                         .mapToTable(Speakers.SPEAKER_ID, Tables.SPEAKERS)
-                        .where(SpeakersSearchColumns.BODY + " MATCH ?", query);
+                        .where(Tables.SPEAKERS_SEARCH + " MATCH ?", query)
+                        .where(SearchRanker.buildRankedSelection(Qualified.SPEAKERS_SEARCH_DOCID,
+                        		ranked));
             }
             case SPEAKERS_ID: {
                 final String speakerId = Speakers.getSpeakerId(uri);
@@ -657,7 +1699,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                         .mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Qualified.SESSIONS_SPEAKERS_SPEAKER_ID + "=?", speakerId);
             }
@@ -681,7 +1722,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Qualified.SESSIONS_ROOM_ID + "=?", roomId);
             }
@@ -693,8 +1733,6 @@ public class ScheduleProvider extends ContentProvider {
                 final String startTime = segments.get(2);
                 final String endTime = segments.get(3);
                 builder.table(Tables.BLOCKS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
                         .where(Blocks.BLOCK_START + ">=?", startTime)
                         .where(Blocks.BLOCK_START + "<=?", endTime);
                 return builder;
@@ -702,21 +1740,17 @@ public class ScheduleProvider extends ContentProvider {
             case BLOCKS_ID: {
                 final String blockId = Blocks.getBlockId(uri);
                 return builder.table(Tables.BLOCKS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
                         .where(Blocks.BLOCK_ID + "=?", blockId);
             }
             case BLOCKS_ID_SESSIONS: {
                 final String blockId = Blocks.getBlockId(uri);
                 return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS_TRACKS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
+                        .mapToTable(Blocks.SESSIONS_COUNT, Tables.BLOCKS)
                         .mapToTable(Sessions._ID, Tables.SESSIONS)
                         .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Qualified.SESSIONS_BLOCK_ID + "=?", blockId);
             }
@@ -732,8 +1766,7 @@ public class ScheduleProvider extends ContentProvider {
                         .where(Notes._ID + "=?", Long.toString(noteId));
             }
             case TRACKS: {
-                return builder.table(Tables.TRACKS)
-                        .map(Tracks.SESSIONS_COUNT, Subquery.TRACK_SESSIONS_COUNT);
+                return builder.table(Tables.TRACKS);
             }
             case TRACKS_ID: {
                 final String trackId = Tracks.getTrackId(uri);
@@ -756,7 +1789,6 @@ public class ScheduleProvider extends ContentProvider {
                         .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
                         .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
                 		.mapToTable(Sessions.TRACK_ID, Tables.SESSIONS)
-                        .map(Sessions.STARRED_IN_BLOCK_COUNT, Subquery.BLOCK_STARRED_SESSIONS_COUNT)
                 		.mapToTable(Tracks.TRACK_COLOR, Tables.TRACKS)
                         .where(Qualified.SESSIONS_TRACK_ID + "=?", trackId);
             }
@@ -786,55 +1818,32 @@ public class ScheduleProvider extends ContentProvider {
     }
     
     private interface Subquery {
-        String BLOCK_SESSIONS_COUNT = "(SELECT COUNT(" + Qualified.SESSIONS_SESSION_ID + ") FROM "
-                + Tables.SESSIONS + " WHERE " + Qualified.SESSIONS_BLOCK_ID + "="
-                + Qualified.BLOCKS_BLOCK_ID + ")";
-
-        String BLOCK_STARRED_SESSIONS_COUNT = "(SELECT COUNT(" + Qualified.SESSIONS_SESSION_ID + ") FROM "
-        	+ Tables.SESSIONS + " WHERE " + Qualified.SESSIONS_STARRED + "=1 AND "
-        	+ "((" + Blocks.BLOCK_START + ">=" + Qualified.BLOCKS_BLOCK_START + " AND " 
-        	+ Blocks.BLOCK_END + "<=" + Qualified.BLOCKS_BLOCK_END + ") OR (" + Blocks.BLOCK_END 
-        	+ ">=" + Qualified.BLOCKS_BLOCK_START + " AND " + Blocks.BLOCK_END + "<=" 
-        	+ Qualified.BLOCKS_BLOCK_END + ") OR (" + Blocks.BLOCK_START + "<=" 
-        	+ Qualified.BLOCKS_BLOCK_END + " AND " + Blocks.BLOCK_START + ">="
-        	+ Qualified.BLOCKS_BLOCK_START + ")))";
-
-        String BLOCK_CONTAINS_STARRED = "(SELECT MAX(" + Qualified.SESSIONS_STARRED + ") FROM "
-                + Tables.SESSIONS + " WHERE " + Qualified.SESSIONS_BLOCK_ID + "="
-                + Qualified.BLOCKS_BLOCK_ID + ")";
-
         String SPEAKER_CONTAINS_STARRED = "(SELECT MAX(" + Qualified.SESSIONS_STARRED + ") FROM "
         		+ Tables.SESSIONS + " LEFT OUTER JOIN " + Tables.SESSIONS_SPEAKERS + " ON "
         		+ Qualified.SESSIONS_SESSION_ID + "=" + Qualified.SESSIONS_SPEAKERS_SESSION_ID 
         		+ " WHERE " + Qualified.SESSIONS_SPEAKERS_SPEAKER_ID + "="
         		+ Qualified.SPEAKERS_SPEAKER_ID + ")";
 
-        String TRACK_SESSIONS_COUNT = "(SELECT COUNT(" + Qualified.SESSIONS_TRACK_ID
-                + ") FROM " + Tables.SESSIONS + " WHERE "
-                + Qualified.SESSIONS_TRACK_ID + "=" + Qualified.TRACKS_TRACK_ID + ")";
-        
         String SESSIONS_SNIPPET = "snippet(" + Tables.SESSIONS_SEARCH + ",'{','}','\u2026')";
         String SPEAKERS_SNIPPET = "snippet(" + Tables.SPEAKERS_SEARCH + ",'{','}','\u2026')";
+
+        String SEARCH_SUGGEST_WORDS = "SELECT " + BaseColumns._ID + ","
+        		+ SearchManager.SUGGEST_COLUMN_TEXT_1 + ",0 AS source FROM " + Tables.SEARCH_SUGGEST
+        		+ " WHERE " + SearchManager.SUGGEST_COLUMN_TEXT_1 + " LIKE ?";
+        String SEARCH_SUGGEST_TITLES = "SELECT docid," + SessionsSearchColumns.TITLE + ",1 FROM "
+        		+ Tables.SESSIONS_SEARCH + " WHERE " + SessionsSearchColumns.TITLE + " MATCH ?";
+        String SEARCH_SUGGEST_NAMES = "SELECT docid," + SpeakersSearchColumns.NAME + ",2 FROM "
+        		+ Tables.SPEAKERS_SEARCH + " WHERE " + SpeakersSearchColumns.NAME + " MATCH ?";
     }
     
-    private interface WhereClause {
-    	String SESSIONS_PARALLEL = "(" + Sessions.BLOCK_START + " >= (SELECT "
-    			+ Blocks.BLOCK_START + " FROM " + Tables.BLOCKS + " LEFT OUTER JOIN " 
-    			+ Tables.SESSIONS + " ON " + Tables.BLOCKS + "." + Blocks.BLOCK_ID
-    			+ "=" + Tables.SESSIONS + "." + Sessions.BLOCK_ID + " WHERE "
-    			+ Tables.SESSIONS + "." + Sessions.SESSION_ID + " = ?) AND "
-    			+ Sessions.BLOCK_END + " <= (SELECT " + Blocks.BLOCK_END + " FROM " 
-    			+ Tables.BLOCKS + " LEFT OUTER JOIN " + Tables.SESSIONS + " ON " 
-    			+ Tables.BLOCKS + "." + Blocks.BLOCK_ID + "=" 
-    			+ Tables.SESSIONS + "." + Sessions.BLOCK_ID + " WHERE "
-    			+ Tables.SESSIONS + "." + Sessions.SESSION_ID + " = ?))";
-    }
-
     /**
      * {@link ScheduleContract} fields that are fully qualified with a specific
      * parent {@link Tables}. Used when needed to work around SQL ambiguity.
      */
     private interface Qualified {
+        String SESSIONS_SEARCH_DOCID = Tables.SESSIONS_SEARCH + ".docid";
+        String SPEAKERS_SEARCH_DOCID = Tables.SPEAKERS_SEARCH + ".docid";
+
         String SPEAKERS_SPEAKER_ID = Tables.SPEAKERS + "." + Speakers.SPEAKER_ID;
 
         String SESSIONS_SESSION_ID = Tables.SESSIONS + "." + Sessions.SESSION_ID;
@@ -851,13 +1860,10 @@ public class ScheduleProvider extends ContentProvider {
 
         String SESSIONS_STARRED = Tables.SESSIONS + "." + Sessions.STARRED;
 
-        String TRACKS_TRACK_ID = Tables.TRACKS + "." + Tracks.TRACK_ID;
+        String NOTES_SESSION_ID = Tables.NOTES + "." + Notes.SESSION_ID;
 
-        String BLOCKS_BLOCK_ID = Tables.BLOCKS + "." + Blocks.BLOCK_ID;
         String BLOCKS_BLOCK_START = Tables.BLOCKS + "." + Blocks.BLOCK_START;
         String BLOCKS_BLOCK_END = Tables.BLOCKS + "." + Blocks.BLOCK_END;
-
-        String NOTES_SESSION_ID = Tables.NOTES + "." + Notes.SESSION_ID;
     }
 
 }
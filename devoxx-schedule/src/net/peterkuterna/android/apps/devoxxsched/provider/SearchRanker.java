@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.peterkuterna.android.apps.devoxxsched.provider;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.peterkuterna.android.apps.devoxxsched.util.Lists;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Ranks the rows of a full text table matching a query, in the spirit of
+ * BM25. Every query term scores its inverse document frequency, scaled by
+ * a saturating function of how often it occurs in the row. Occurrences are
+ * weighted per column, so a hit in a title counts more than one in a
+ * summary.
+ * <p>
+ * Occurrences are read from {@code offsets()}, as {@code matchinfo()} is
+ * not available on every supported platform. Without column lengths there
+ * is no length normalization.
+ */
+final class SearchRanker {
+
+    /** Saturation of the term frequency, as {@code k1} of BM25. */
+    private static final double K1 = 1.2;
+
+    private SearchRanker() {
+    }
+
+    /** A row matching the query. */
+    private static class Match {
+    	final long docid;
+    	/** Weighted number of occurrences of every query term. */
+    	final double[] frequencies;
+    	double score;
+
+    	Match(long docid, int terms) {
+    		this.docid = docid;
+    		this.frequencies = new double[terms];
+    	}
+    }
+
+    /**
+     * Returns the {@code docid} of the rows of {@code table} matching
+     * {@code query}, best match first, skipping {@code offset} rows and
+     * returning at most {@code limit} rows, or all rows for a negative
+     * limit.
+     *
+     * @param columnWeights weight of every column of the table, in order
+     */
+    static List<Long> rank(SQLiteDatabase db, String table, String query, double[] columnWeights,
+    		int offset, int limit) {
+    	final long documentCount = DatabaseUtils.longForQuery(db,
+    			"SELECT COUNT(*) FROM " + table, null);
+
+    	final List<Match> matches = Lists.newArrayList();
+    	int[] documentFrequencies = new int[0];
+    	final Cursor cursor = db.rawQuery("SELECT docid, offsets(" + table + ") FROM " + table
+    			+ " WHERE " + table + " MATCH ?", new String[] { query });
+    	try {
+    		while (cursor.moveToNext()) {
+    			// Every occurrence is a column, term, byte offset and size
+    			final int[] offsets = parseOffsets(cursor.getString(1));
+    			int terms = 0;
+    			for (int i = 1; i < offsets.length; i += 4) {
+    				terms = Math.max(terms, offsets[i] + 1);
+    			}
+
+    			final Match match = new Match(cursor.getLong(0), terms);
+    			for (int i = 0; i + 1 < offsets.length; i += 4) {
+    				final int column = offsets[i];
+    				final double weight = column < columnWeights.length ? columnWeights[column] : 1;
+    				match.frequencies[offsets[i + 1]] += weight;
+    			}
+    			matches.add(match);
+
+    			if (terms > documentFrequencies.length) {
+    				final int[] grown = new int[terms];
+    				System.arraycopy(documentFrequencies, 0, grown, 0, documentFrequencies.length);
+    				documentFrequencies = grown;
+    			}
+    			for (int term = 0; term < terms; term++) {
+    				if (match.frequencies[term] > 0) documentFrequencies[term]++;
+    			}
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+
+    	final double[] idf = new double[documentFrequencies.length];
+    	for (int term = 0; term < idf.length; term++) {
+    		final int df = documentFrequencies[term];
+    		idf[term] = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+    	}
+    	for (Match match : matches) {
+    		for (int term = 0; term < match.frequencies.length; term++) {
+    			final double frequency = match.frequencies[term];
+    			match.score += idf[term] * frequency * (K1 + 1) / (frequency + K1);
+    		}
+    	}
+
+    	Collections.sort(matches, new Comparator<Match>() {
+    		public int compare(Match a, Match b) {
+    			if (a.score != b.score) {
+    				return a.score > b.score ? -1 : 1;
+    			}
+    			return a.docid < b.docid ? -1 : (a.docid == b.docid ? 0 : 1);
+    		}
+    	});
+
+    	final List<Long> ranked = Lists.newArrayList();
+    	final int count = matches.size();
+    	final int end = limit < 0 ? count : (int) Math.min(count, (long) offset + limit);
+    	for (int i = Math.max(0, offset); i < end; i++) {
+    		ranked.add(matches.get(i).docid);
+    	}
+    	return ranked;
+    }
+
+    /**
+     * Build an expression evaluating to the position of {@code column} in
+     * the given ranking, to order rows by rank.
+     */
+    static String buildRankExpression(String column, List<Long> ranked) {
+    	if (ranked.isEmpty()) {
+    		return "0";
+    	}
+    	final StringBuilder sb = new StringBuilder("(CASE ").append(column);
+    	for (int i = 0; i < ranked.size(); i++) {
+    		sb.append(" WHEN ").append(ranked.get(i)).append(" THEN ").append(i);
+    	}
+    	return sb.append(" END)").toString();
+    }
+
+    /**
+     * Build a selection matching the rows in the given ranking.
+     */
+    static String buildRankedSelection(String column, List<Long> ranked) {
+    	if (ranked.isEmpty()) {
+    		return "0";
+    	}
+    	final StringBuilder sb = new StringBuilder(column).append(" IN (");
+    	for (int i = 0; i < ranked.size(); i++) {
+    		if (i > 0) sb.append(',');
+    		sb.append(ranked.get(i));
+    	}
+    	return sb.append(')').toString();
+    }
+
+    private static int[] parseOffsets(String offsets) {
+    	if (offsets == null || offsets.length() == 0) {
+    		return new int[0];
+    	}
+    	final String[] parts = offsets.split(" ");
+    	final int[] values = new int[parts.length];
+    	for (int i = 0; i < parts.length; i++) {
+    		values[i] = Integer.parseInt(parts[i]);
+    	}
+    	return values;
+    }
+
+}
@@ -19,7 +19,10 @@
  */
 package net.peterkuterna.android.apps.devoxxsched.service;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import net.peterkuterna.android.apps.devoxxsched.Constants;
 import net.peterkuterna.android.apps.devoxxsched.R;
@@ -32,8 +35,11 @@ import net.peterkuterna.android.apps.devoxxsched.io.RemoteSessionsHandler;
 import net.peterkuterna.android.apps.devoxxsched.io.RemoteSpeakersHandler;
 import net.peterkuterna.android.apps.devoxxsched.model.RequestHash;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleProvider;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
 import net.peterkuterna.android.apps.devoxxsched.ui.SettingsActivity;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.NotificationUtils;
+import net.peterkuterna.android.apps.devoxxsched.util.SpeakerImageLoader;
 import net.peterkuterna.android.apps.devoxxsched.util.SyncUtils;
 
 import org.apache.http.client.HttpClient;
@@ -45,9 +51,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.NetworkInfo.State;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.util.Log;
@@ -80,6 +84,8 @@ public class SyncService extends IntentService {
     	Constants.LABS_SCHEDULE_URL,
     };
 
+    private static final String FEED_CACHE_DIR = "feeds";
+
     private static final int VERSION_NONE = 0;
     private static final int VERSION_LOCAL = 1;
     private static final int VERSION_REMOTE = 4;
@@ -101,7 +107,8 @@ public class SyncService extends IntentService {
         mResolver = getContentResolver();
 
         mLocalExecutor = new LocalExecutor(getResources(), mResolver);
-        mRemoteExecutor = new RemoteExecutor(mHttpClient, mResolver);
+        mRemoteExecutor = new RemoteExecutor(mHttpClient, mResolver,
+        		new File(getCacheDir(), FEED_CACHE_DIR));
     }
 
     @Override
@@ -135,36 +142,50 @@ public class SyncService extends IntentService {
             Log.d(TAG, "local sync took " + (System.currentTimeMillis() - startLocal) + "ms");
 
             final long startRemote = System.currentTimeMillis();
-            boolean performRemoteSync = performRemoteSync(mResolver, mHttpClient, intent, context);
+            final boolean remoteSyncAllowed = isRemoteSyncAllowed(context);
+            final HashMap<String, String> remoteMd5s = remoteSyncAllowed 
+            		? SyncUtils.getRemoteMd5s(mHttpClient, URLS) : null;
+            boolean performRemoteSync = remoteSyncAllowed 
+            		&& performRemoteSync(mResolver, remoteMd5s, intent, context);
+            final boolean speakersChanged = performRemoteSync
+            		&& (localVersion < VERSION_REMOTE || hasSpeakersChanged(mResolver, remoteMd5s));
             if (performRemoteSync) {
-            	// Parse values from REST interface
-	            ArrayList<RequestHash> result = mRemoteExecutor.executeGet(new String [] {
-	            			Constants.ROOMS_URL,
-	            		}, new RemoteRoomsHandler());
-	            for (RequestHash requestHash : result) {
-	            	SyncUtils.updateLocalMd5(mResolver, requestHash.getUrl(), requestHash.getMd5());
-	            }
-	            result = mRemoteExecutor.executeGet(new String [] {
-	            			Constants.SPEAKERS_URL,
-	            			Constants.LABS_SPEAKERS_URL,
-	            		}, new RemoteSpeakersHandler());
-	            for (RequestHash requestHash : result) {
-	            	SyncUtils.updateLocalMd5(mResolver, requestHash.getUrl(), requestHash.getMd5());
-	            }
-	            result = mRemoteExecutor.executeGet(new String [] {
-	            			Constants.PRESENTATIONS_URL,
-	            			Constants.LABS_PRESENTATIONS_URL,
-	    				}, new RemoteSessionsHandler());
-	            for (RequestHash requestHash : result) {
-	            	SyncUtils.updateLocalMd5(mResolver, requestHash.getUrl(), requestHash.getMd5());
-	            }
-	            result = mRemoteExecutor.executeGet(new String [] {
-	            			Constants.SCHEDULE_URL,
-	            			Constants.LABS_SCHEDULE_URL,
-    					}, new RemoteScheduleHandler());
-	            for (RequestHash requestHash : result) {
-	            	SyncUtils.updateLocalMd5(mResolver, requestHash.getUrl(), requestHash.getMd5());
-	            }
+            	// Download all feeds in parallel, but apply them in order
+            	// since sessions refer to rooms, speakers and tracks
+            	mRemoteExecutor.setDeltaEnabled(!intent.getBooleanExtra(EXTRA_FORCE_REFRESH, false));
+            	mRemoteExecutor.prefetch(URLS, remoteMd5s);
+            	try {
+	            	// Parse values from REST interface
+		            ArrayList<RequestHash> result = mRemoteExecutor.executeGet(new String [] {
+		            			Constants.ROOMS_URL,
+		            		}, remoteMd5s, new RemoteRoomsHandler());
+		            for (RequestHash requestHash : result) {
+		            	SyncUtils.updateLocalSyncState(mResolver, requestHash);
+		            }
+		            result = mRemoteExecutor.executeGet(new String [] {
+		            			Constants.SPEAKERS_URL,
+		            			Constants.LABS_SPEAKERS_URL,
+		            		}, remoteMd5s, new RemoteSpeakersHandler());
+		            for (RequestHash requestHash : result) {
+		            	SyncUtils.updateLocalSyncState(mResolver, requestHash);
+		            }
+		            result = mRemoteExecutor.executeGet(new String [] {
+		            			Constants.PRESENTATIONS_URL,
+		            			Constants.LABS_PRESENTATIONS_URL,
+		    				}, remoteMd5s, new RemoteSessionsHandler());
+		            for (RequestHash requestHash : result) {
+		            	SyncUtils.updateLocalSyncState(mResolver, requestHash);
+		            }
+		            result = mRemoteExecutor.executeGet(new String [] {
+		            			Constants.SCHEDULE_URL,
+		            			Constants.LABS_SCHEDULE_URL,
+	    					}, remoteMd5s, new RemoteScheduleHandler());
+		            for (RequestHash requestHash : result) {
+		            	SyncUtils.updateLocalSyncState(mResolver, requestHash);
+		            }
+            	} finally {
+            		mRemoteExecutor.shutdown();
+            	}
 
 	            // Save last remote sync time
 	            syncServicePrefs.edit().putLong(SyncPrefs.LAST_REMOTE_SYNC, startRemote).commit();
@@ -178,6 +199,10 @@ public class SyncService extends IntentService {
             	NotificationUtils.notifyNewSessions(context, getContentResolver());
             	NotificationUtils.notifyChangedStarredSessions(context, getContentResolver());
             }
+
+            if (speakersChanged && SyncUtils.isWifiConnected(context)) {
+            	prefetchSpeakerImages(context);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Problem while syncing", e);
 
@@ -195,42 +220,53 @@ public class SyncService extends IntentService {
     }
 
     /**
-     * Should we perform a remote sync?
+     * Hand the images of all speakers to the {@link SpeakerImageLoader},
+     * which downloads them into its disk cache on its own thread, so the
+     * next sync request does not wait for it.
      */
-    private static boolean performRemoteSync(ContentResolver resolver, HttpClient httpClient, Intent intent, Context context) {
-        final SharedPreferences settingsPrefs = context.getSharedPreferences(SettingsActivity.SETTINGS_NAME, MODE_PRIVATE);
-        final SharedPreferences syncServicePrefs = context.getSharedPreferences(SyncPrefs.DEVOXXSCHED_SYNC, Context.MODE_PRIVATE);
-        final boolean onlySyncWifi = settingsPrefs.getBoolean(context.getString(R.string.sync_only_wifi_key), false);
-        final int localVersion = syncServicePrefs.getInt(SyncPrefs.LOCAL_VERSION, VERSION_NONE);
-        if (!onlySyncWifi || isWifiConnected(context)) {
-            final boolean remoteParse = localVersion < VERSION_REMOTE;
-	        final boolean forceRemoteRefresh = intent.getBooleanExtra(EXTRA_FORCE_REFRESH, false);
-	        final boolean hasContentChanged = hasContentChanged(resolver, httpClient);
-	        return remoteParse || forceRemoteRefresh || hasContentChanged;
+    private void prefetchSpeakerImages(Context context) {
+        final HashMap<String, String> imageUrls = Maps.newHashMap();
+        final Cursor cursor = mResolver.query(Speakers.CONTENT_URI,
+        		SpeakerImagesQuery.PROJECTION, null, null, null);
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext()) {
+                imageUrls.put(cursor.getString(SpeakerImagesQuery.SPEAKER_ID),
+                		cursor.getString(SpeakerImagesQuery.IMAGE_URL));
+            }
+        } finally {
+            cursor.close();
         }
-        return false;
+        SpeakerImageLoader.getInstance(context).prefetchImages(imageUrls);
     }
-    
+
     /**
-     * Are we connected to a WiFi network?
+     * Are we allowed to contact the remote servers on the current network?
      */
-    private static boolean isWifiConnected(Context context) {
-    	final ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    private static boolean isRemoteSyncAllowed(Context context) {
+        final SharedPreferences settingsPrefs = context.getSharedPreferences(SettingsActivity.SETTINGS_NAME, MODE_PRIVATE);
+        final boolean onlySyncWifi = settingsPrefs.getBoolean(context.getString(R.string.sync_only_wifi_key), false);
+        return !onlySyncWifi || SyncUtils.isWifiConnected(context);
+    }
 
-    	if (connectivityManager != null) {
-    		NetworkInfo networkInfo = connectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
-    		return (networkInfo != null && networkInfo.getState().equals(State.CONNECTED));
-    	}
-    	
-    	return false;
+    /**
+     * Should we perform a remote sync?
+     */
+    private static boolean performRemoteSync(ContentResolver resolver, Map<String, String> remoteMd5s, Intent intent, Context context) {
+        final SharedPreferences syncServicePrefs = context.getSharedPreferences(SyncPrefs.DEVOXXSCHED_SYNC, Context.MODE_PRIVATE);
+        final int localVersion = syncServicePrefs.getInt(SyncPrefs.LOCAL_VERSION, VERSION_NONE);
+        final boolean remoteParse = localVersion < VERSION_REMOTE;
+        final boolean forceRemoteRefresh = intent.getBooleanExtra(EXTRA_FORCE_REFRESH, false);
+        final boolean hasContentChanged = hasContentChanged(resolver, remoteMd5s);
+        return remoteParse || forceRemoteRefresh || hasContentChanged;
     }
     
     /**
      * Checks for changes to the responses of the Devoxx REST API.
      */
-    private static boolean hasContentChanged(ContentResolver resolver, HttpClient httpClient) {
+    private static boolean hasContentChanged(ContentResolver resolver, Map<String, String> remoteMd5s) {
     	for (String url : URLS) {
-    		if (isContentChanged(resolver, httpClient, url)) {
+    		if (isContentChanged(resolver, url, remoteMd5s.get(url))) {
     			return true;
     		}
     	}
@@ -238,15 +274,32 @@ public class SyncService extends IntentService {
     	return false;
     }
 
+    /**
+     * Checks for changes to the responses holding the speakers.
+     */
+    private static boolean hasSpeakersChanged(ContentResolver resolver, Map<String, String> remoteMd5s) {
+    	return isContentChanged(resolver, Constants.SPEAKERS_URL, remoteMd5s.get(Constants.SPEAKERS_URL))
+    			|| isContentChanged(resolver, Constants.LABS_SPEAKERS_URL, remoteMd5s.get(Constants.LABS_SPEAKERS_URL));
+    }
+
     /**
      * Checks if the content of a given url has changed.
      */
-    private static boolean isContentChanged(ContentResolver resolver, HttpClient httpClient, String url) {
+    private static boolean isContentChanged(ContentResolver resolver, String url, String remoteMd5) {
     	final String localMd5 = SyncUtils.getLocalMd5(resolver, url);
-    	final String remoteMd5 = SyncUtils.getRemoteMd5(httpClient, url);
     	return (remoteMd5 != null && !remoteMd5.equals(localMd5));
     }
     
+    private interface SpeakerImagesQuery {
+        String[] PROJECTION = {
+                Speakers.SPEAKER_ID,
+                Speakers.IMAGE_URL,
+        };
+
+        int SPEAKER_ID = 0;
+        int IMAGE_URL = 1;
+    }
+
     private interface SyncPrefs {
         String DEVOXXSCHED_SYNC = "devoxxsched_sync";
         String LOCAL_VERSION = "local_version";
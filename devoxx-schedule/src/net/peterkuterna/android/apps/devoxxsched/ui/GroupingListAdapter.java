@@ -25,7 +25,6 @@ import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.os.Handler;
-import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
@@ -34,14 +33,22 @@ import android.widget.BaseAdapter;
  * Maintains a list that groups adjacent items sharing the same value of
  * a "group-by" field.  The list has three types of elements: stand-alone, group header and group
  * child. Groups are collapsible and collapsed by default.
+ * <p>
+ * When the cursor is requeried, only the rows between the first and the
+ * last group that changed are grouped again. This assumes the rows of a
+ * group stay next to each other, which holds when the cursor is sorted on
+ * the "group-by" field.
  */
 public abstract class GroupingListAdapter extends BaseAdapter {
 
     private static final int GROUP_METADATA_ARRAY_INITIAL_SIZE = 16;
     private static final int GROUP_METADATA_ARRAY_INCREMENT = 128;
-    private static final long GROUP_OFFSET_MASK    = 0x00000000FFFFFFFFL;
-    private static final long GROUP_SIZE_MASK     = 0x7FFFFFFF00000000L;
-    private static final long EXPANDED_GROUP_MASK = 0x8000000000000000L;
+    private static final int GROUP_LIST_POSITION_SHIFT = 21;
+    private static final int GROUP_SIZE_SHIFT = 42;
+    private static final long GROUP_OFFSET_MASK        = 0x00000000001FFFFFL;
+    private static final long GROUP_LIST_POSITION_MASK = 0x000003FFFFE00000L;
+    private static final long GROUP_SIZE_MASK          = 0x7FFFFC0000000000L;
+    private static final long EXPANDED_GROUP_MASK      = 0x8000000000000000L;
 
     public static final int ITEM_TYPE_STANDALONE = 0;
     public static final int ITEM_TYPE_GROUP_HEADER = 1;
@@ -68,6 +75,11 @@ public abstract class GroupingListAdapter extends BaseAdapter {
      */
     private int mCount;
 
+    /**
+     * Count of cursor rows the groups were found for.
+     */
+    private int mCursorCount;
+
     private int mRowIdColumnIndex;
 
     /**
@@ -76,16 +88,19 @@ public abstract class GroupingListAdapter extends BaseAdapter {
     private int mGroupCount;
 
     /**
-     * Information about where these groups are located in the list, how large they are
-     * and whether they are expanded.
+     * Information about where these groups are located in the cursor and in
+     * the list, how large they are and whether they are expanded. The list
+     * position of a group header is the running sum of the items before it.
+     * Offsets, list positions and sizes take 21 bits each.
      */
     private long[] mGroupMetadata;
 
-    private SparseIntArray mPositionCache = new SparseIntArray();
-    
-    private int mLastCachedListPosition;
-    private int mLastCachedCursorPosition;
-    private int mLastCachedGroup;
+    /**
+     * Row ids of the first and last row of each group, used to tell which
+     * groups are still in place after a requery.
+     */
+    private long[] mGroupFirstIds;
+    private long[] mGroupLastIds;
 
     /**
      * A reusable temporary instance of PositionMetadata
@@ -105,10 +120,11 @@ public abstract class GroupingListAdapter extends BaseAdapter {
     }
 
     /**
-     * Finds all groups of adjacent items in the cursor and calls {@link #addGroup} for
-     * each of them.
+     * Finds all groups of adjacent items among the cursor rows from
+     * {@code start} up to {@code end} and calls {@link #addGroup} for each of
+     * them, in order.
      */
-    protected abstract void addGroups(Cursor cursor);
+    protected abstract void addGroups(Cursor cursor, int start, int end);
 
     protected abstract View newStandAloneView(Context context, ViewGroup parent);
     protected abstract void bindStandAloneView(View view, Context context, Cursor cursor);
@@ -124,12 +140,7 @@ public abstract class GroupingListAdapter extends BaseAdapter {
      * Cache should be reset whenever the cursor changes or groups are expanded or collapsed.
      */
     private void resetCache() {
-        mCount = -1;
-        mLastCachedListPosition = -1;
-        mLastCachedCursorPosition = -1;
-        mLastCachedGroup = -1;
         mPositionMetadata.listPosition = -1;
-        mPositionCache.clear();
     }
 
     protected void onContentChanged() {
@@ -149,16 +160,15 @@ public abstract class GroupingListAdapter extends BaseAdapter {
             mCursor.close();
         }
         mCursor = cursor;
+        mRowIdColumnIndex = cursor != null ? cursor.getColumnIndexOrThrow("_id") : -1;
         resetCache();
         findGroups();
         if (cursor != null) {
             cursor.registerContentObserver(mChangeObserver);
             cursor.registerDataSetObserver(mDataSetObserver);
-            mRowIdColumnIndex = cursor.getColumnIndexOrThrow("_id");
             mDataValid = true;
             notifyDataSetChanged();
         } else {
-        	mRowIdColumnIndex = -1;
         	mDataValid = false;
             // notify the observers about the lack of a data set
             notifyDataSetInvalidated();
@@ -176,12 +186,100 @@ public abstract class GroupingListAdapter extends BaseAdapter {
     private void findGroups() {
         mGroupCount = 0;
         mGroupMetadata = new long[GROUP_METADATA_ARRAY_INITIAL_SIZE];
+        mGroupFirstIds = new long[GROUP_METADATA_ARRAY_INITIAL_SIZE];
+        mGroupLastIds = new long[GROUP_METADATA_ARRAY_INITIAL_SIZE];
+        mCursorCount = 0;
 
         if (mCursor == null) {
+            mCount = 0;
             return;
         }
 
-        addGroups(mCursor);
+        mCursorCount = mCursor.getCount();
+        addGroups(mCursor, 0, mCursorCount);
+        updateListPositions(0);
+    }
+
+    /**
+     * Finds the groups again after a requery. Groups at the start and at the
+     * end of the cursor whose first and last rows did not change are kept,
+     * only the rows in between are scanned.
+     */
+    private void regroup() {
+        if (mCursor == null || mGroupMetadata == null) {
+            findGroups();
+            return;
+        }
+
+        final int oldCursorCount = mCursorCount;
+        final int newCursorCount = mCursor.getCount();
+        final int delta = newCursorCount - oldCursorCount;
+        final int savedPosition = mCursor.getPosition();
+
+        // Groups at the start that are still in place. The last one is
+        // scanned again, since new rows may have joined it.
+        int head = 0;
+        int expectedOffset = 0;
+        while (head < mGroupCount) {
+            final int offset = getGroupOffset(head);
+            if (offset != expectedOffset || !isGroupInPlace(head, offset)) break;
+            expectedOffset = offset + getSizeOf(mGroupMetadata[head]);
+            head++;
+        }
+        head = Math.max(0, head - 1);
+
+        // Groups at the end that are still in place, shifted by the change
+        // in row count. The first one is scanned again for the same reason.
+        int tail = mGroupCount;
+        int expectedEnd = oldCursorCount;
+        while (tail > head) {
+            final int offset = getGroupOffset(tail - 1);
+            final int size = getSizeOf(mGroupMetadata[tail - 1]);
+            if (offset + size != expectedEnd || offset + delta < 0
+            		|| !isGroupInPlace(tail - 1, offset + delta)) break;
+            expectedEnd = offset;
+            tail--;
+        }
+        tail = Math.min(mGroupCount, tail + 1);
+
+        final int start = head > 0 ? getGroupOffset(head) : 0;
+        final int end = (tail < mGroupCount ? getGroupOffset(tail) : oldCursorCount) + delta;
+
+        // Set the tail aside, find the groups in between and put it back
+        final int tailCount = mGroupCount - tail;
+        final long[] tailMetadata = new long[tailCount];
+        final long[] tailFirstIds = new long[tailCount];
+        final long[] tailLastIds = new long[tailCount];
+        System.arraycopy(mGroupMetadata, tail, tailMetadata, 0, tailCount);
+        System.arraycopy(mGroupFirstIds, tail, tailFirstIds, 0, tailCount);
+        System.arraycopy(mGroupLastIds, tail, tailLastIds, 0, tailCount);
+
+        mGroupCount = head;
+        mCursorCount = newCursorCount;
+        if (start < end) {
+            addGroups(mCursor, start, end);
+        }
+        for (int i = 0; i < tailCount; i++) {
+            final long metadata = tailMetadata[i];
+            final int offset = (int) (metadata & GROUP_OFFSET_MASK) + delta;
+            appendGroup((metadata & ~GROUP_OFFSET_MASK) | offset,
+            		tailFirstIds[i], tailLastIds[i]);
+        }
+        mCursor.moveToPosition(savedPosition);
+
+        updateListPositions(head);
+    }
+
+    /**
+     * Do the first and last row of the given group still have the same row
+     * ids, when the group starts at the given cursor position?
+     */
+    private boolean isGroupInPlace(int group, int offset) {
+        final int last = offset + getSizeOf(mGroupMetadata[group]) - 1;
+        return mCursor.moveToPosition(offset)
+                && mCursor.getLong(mRowIdColumnIndex) == mGroupFirstIds[group]
+                && mCursor.moveToPosition(last)
+                && mCursor.getLong(mRowIdColumnIndex) == mGroupLastIds[group];
     }
 
     /**
@@ -189,46 +287,89 @@ public abstract class GroupingListAdapter extends BaseAdapter {
      * {@link #addGroups} method.
      */
     protected void addGroup(int cursorPosition, int size, boolean expanded) {
+        final int position = mCursor.getPosition();
+        mCursor.moveToPosition(cursorPosition);
+        final long firstId = mCursor.getLong(mRowIdColumnIndex);
+        mCursor.moveToPosition(cursorPosition + size - 1);
+        final long lastId = mCursor.getLong(mRowIdColumnIndex);
+        mCursor.moveToPosition(position);
+
+        long metadata = ((long)size << GROUP_SIZE_SHIFT) | cursorPosition;
+        if (expanded) {
+            metadata |= EXPANDED_GROUP_MASK;
+        }
+        appendGroup(metadata, firstId, lastId);
+    }
 
-    	
+    private void appendGroup(long metadata, long firstId, long lastId) {
         if (mGroupCount >= mGroupMetadata.length) {
             int newSize = ArrayUtils.idealLongArraySize(
                     mGroupMetadata.length + GROUP_METADATA_ARRAY_INCREMENT);
-            long[] array = new long[newSize];
-            System.arraycopy(mGroupMetadata, 0, array, 0, mGroupCount);
-            mGroupMetadata = array;
+            mGroupMetadata = growArray(mGroupMetadata, newSize, mGroupCount);
+            mGroupFirstIds = growArray(mGroupFirstIds, newSize, mGroupCount);
+            mGroupLastIds = growArray(mGroupLastIds, newSize, mGroupCount);
         }
 
-        long metadata = ((long)size << 32) | cursorPosition;
-        if (expanded) {
-            metadata |= EXPANDED_GROUP_MASK;
-        }
+        mGroupFirstIds[mGroupCount] = firstId;
+        mGroupLastIds[mGroupCount] = lastId;
         mGroupMetadata[mGroupCount++] = metadata;
     }
 
+    private static long[] growArray(long[] array, int newSize, int length) {
+        long[] grown = new long[newSize];
+        System.arraycopy(array, 0, grown, 0, length);
+        return grown;
+    }
+
+    private int getGroupOffset(int group) {
+        return (int) (mGroupMetadata[group] & GROUP_OFFSET_MASK);
+    }
+
+    private static int getSizeOf(long metadata) {
+        return (int) ((metadata & GROUP_SIZE_MASK) >> GROUP_SIZE_SHIFT);
+    }
+
+    private static int getGroupListPosition(long metadata) {
+        return (int) ((metadata & GROUP_LIST_POSITION_MASK) >> GROUP_LIST_POSITION_SHIFT);
+    }
+
+    /**
+     * Number of list items taken by the given group.
+     */
+    private static int getGroupSpan(long metadata) {
+        return (metadata & EXPANDED_GROUP_MASK) != 0 ? getSizeOf(metadata) + 1 : 1;
+    }
+
+    /**
+     * Recomputes the list position of every group starting with the given
+     * one, and the count of list items.
+     */
+    private void updateListPositions(int firstGroup) {
+        int listPosition = 0;
+        int cursorPosition = 0;
+        if (firstGroup > 0) {
+            final long previous = mGroupMetadata[firstGroup - 1];
+            listPosition = getGroupListPosition(previous) + getGroupSpan(previous);
+            cursorPosition = (int) (previous & GROUP_OFFSET_MASK) + getSizeOf(previous);
+        }
+
+        for (int i = firstGroup; i < mGroupCount; i++) {
+            long metadata = mGroupMetadata[i];
+            int offset = (int)(metadata & GROUP_OFFSET_MASK);
+
+            listPosition += (offset - cursorPosition);
+            mGroupMetadata[i] = (metadata & ~GROUP_LIST_POSITION_MASK)
+                    | ((long) listPosition << GROUP_LIST_POSITION_SHIFT);
+
+            listPosition += getGroupSpan(metadata);
+            cursorPosition = offset + getSizeOf(metadata);
+        }
+
+        mCount = listPosition + mCursorCount - cursorPosition;
+    }
+
     public int getCount() {
         if (mDataValid && mCursor != null) {
-	        int cursorPosition = 0;
-	        int count = 0;
-	        for (int i = 0; i < mGroupCount; i++) {
-	            long metadata = mGroupMetadata[i];
-	            int offset = (int)(metadata & GROUP_OFFSET_MASK);
-	            boolean expanded = (metadata & EXPANDED_GROUP_MASK) != 0;
-	            int size = (int)((metadata & GROUP_SIZE_MASK) >> 32);
-	
-	            count += (offset - cursorPosition);
-	
-	            if (expanded) {
-	                count += size + 1;
-	            } else {
-	                count++;
-	            }
-	
-	            cursorPosition = offset + size;
-	        }
-	
-	        mCount = count + mCursor.getCount() - cursorPosition;
-
 	        return mCount;
         } else {
         	return 0;
@@ -247,113 +388,52 @@ public abstract class GroupingListAdapter extends BaseAdapter {
             return;
         }
 
-        int listPosition = 0;
-        int cursorPosition = 0;
-        int firstGroupToCheck = 0;
-
-        // Check cache for the supplied position.  What we are looking for is
-        // the group descriptor immediately preceding the supplied position.
-        // Once we have that, we will be able to tell whether the position
-        // is the header of the group, a member of the group or a standalone item.
-        if (mLastCachedListPosition != -1) {
-            if (position <= mLastCachedListPosition) {
-
-                // Have SparceIntArray do a binary search for us.
-                int index = mPositionCache.indexOfKey(position);
-
-                // If we get back a positive number, the position corresponds to
-                // a group header.
-                if (index < 0) {
-
-                    // We had a cache miss, but we did obtain valuable information anyway.
-                    // The negative number will allow us to compute the location of
-                    // the group header immediately preceding the supplied position.
-                    index = ~index - 1;
-
-                    if (index >= mPositionCache.size()) {
-                        index--;
-                    }
-                }
-
-                // A non-negative index gives us the position of the group header
-                // corresponding or preceding the position, so we can
-                // search for the group information at the supplied position
-                // starting with the cached group we just found
-                if (index >= 0) {
-                    listPosition = mPositionCache.keyAt(index);
-                    firstGroupToCheck = mPositionCache.valueAt(index);
-                    long descriptor = mGroupMetadata[firstGroupToCheck];
-                    cursorPosition = (int)(descriptor & GROUP_OFFSET_MASK);
-                }
+        // Binary search for the last group with its header at or before
+        // the supplied position.
+        int low = 0;
+        int high = mGroupCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (getGroupListPosition(mGroupMetadata[mid]) <= position) {
+                low = mid + 1;
             } else {
-
-                // If we haven't examined groups beyond the supplied position,
-                // we will start where we left off previously
-                firstGroupToCheck = mLastCachedGroup;
-                listPosition = mLastCachedListPosition;
-                cursorPosition = mLastCachedCursorPosition;
+                high = mid - 1;
             }
         }
 
-        for (int i = firstGroupToCheck; i < mGroupCount; i++) {
-            long group = mGroupMetadata[i];
-            int offset = (int)(group & GROUP_OFFSET_MASK);
-
-            // Move pointers to the beginning of the group
-            listPosition += (offset - cursorPosition);
-            cursorPosition = offset;
-
-            if (i > mLastCachedGroup) {
-                mPositionCache.append(listPosition, i);
-                mLastCachedListPosition = listPosition;
-                mLastCachedCursorPosition = cursorPosition;
-                mLastCachedGroup = i;
-            }
-
-            // Now we have several possibilities:
-            // A) The requested position precedes the group
-            if (position < listPosition) {
-                metadata.itemType = ITEM_TYPE_STANDALONE;
-                metadata.cursorPosition = cursorPosition - (listPosition - position);
-                return;
-            }
-
-            boolean expanded = (group & EXPANDED_GROUP_MASK) != 0;
-            int size = (int) ((group & GROUP_SIZE_MASK) >> 32);
-
-            // B) The requested position is a group header
-            if (position == listPosition) {
-                metadata.itemType = ITEM_TYPE_GROUP_HEADER;
-                metadata.groupPosition = i;
-                metadata.isExpanded = expanded;
-                metadata.childCount = size;
-                metadata.cursorPosition = offset;
-                return;
-            }
-
-            if (expanded) {
-                // C) The requested position is an element in the expanded group
-                if (position < listPosition + size + 1) {
-                    metadata.itemType = ITEM_TYPE_IN_GROUP;
-                    metadata.cursorPosition = cursorPosition + (position - listPosition) - 1;
-                    return;
-                }
-
-                // D) The element is past the expanded group
-                listPosition += size + 1;
-            } else {
+        // A) The requested position precedes the first group
+        if (high < 0) {
+            metadata.itemType = ITEM_TYPE_STANDALONE;
+            metadata.cursorPosition = position;
+            return;
+        }
 
-                // E) The element is past the collapsed group
-                listPosition++;
-            }
+        final long group = mGroupMetadata[high];
+        final int listPosition = getGroupListPosition(group);
+        final int offset = (int)(group & GROUP_OFFSET_MASK);
+        final boolean expanded = (group & EXPANDED_GROUP_MASK) != 0;
+        final int size = getSizeOf(group);
+
+        // B) The requested position is a group header
+        if (position == listPosition) {
+            metadata.itemType = ITEM_TYPE_GROUP_HEADER;
+            metadata.groupPosition = high;
+            metadata.isExpanded = expanded;
+            metadata.childCount = size;
+            metadata.cursorPosition = offset;
+            return;
+        }
 
-            // Move cursor past the group
-            cursorPosition += size;
+        // C) The requested position is an element in the expanded group
+        if (expanded && position < listPosition + size + 1) {
+            metadata.itemType = ITEM_TYPE_IN_GROUP;
+            metadata.cursorPosition = offset + (position - listPosition) - 1;
+            return;
         }
 
-        // The required item is past the last group
+        // D) The requested position is a stand-alone item past the group
         metadata.itemType = ITEM_TYPE_STANDALONE;
-        metadata.cursorPosition = cursorPosition + (position - listPosition);
+        metadata.cursorPosition = offset + size + (position - listPosition - getGroupSpan(group));
     }
 
     /**
@@ -383,13 +463,15 @@ public abstract class GroupingListAdapter extends BaseAdapter {
             throw new IllegalArgumentException("Not a group at position " + position);
         }
 
+        final int group = mPositionMetadata.groupPosition;
         if (mPositionMetadata.isExpanded) {
-            mGroupMetadata[mPositionMetadata.groupPosition] &= ~EXPANDED_GROUP_MASK;
+            mGroupMetadata[group] &= ~EXPANDED_GROUP_MASK;
         } else {
-            mGroupMetadata[mPositionMetadata.groupPosition] |= EXPANDED_GROUP_MASK;
+            mGroupMetadata[group] |= EXPANDED_GROUP_MASK;
         }
        
         resetCache();
+        updateListPositions(group + 1);
         notifyDataSetChanged();
     }
 
@@ -495,7 +577,7 @@ public abstract class GroupingListAdapter extends BaseAdapter {
 		public void onChanged() {
 			mDataValid = true;
 			resetCache();
-			findGroups();
+			regroup();
 			notifyDataSetChanged();
 		}
 
@@ -207,14 +207,12 @@ public class NotesActivity extends ListActivity implements AsyncQueryListener {
 		public void onClick(DialogInterface dialog, int which) {
 			final Uri uri = Notes.buildNoteUri(notesId);
 			mHandler.startDelete(uri);
-			mAdapter.getCursor().requery();
         }
     }
 
     /** {@inheritDoc} */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
     	startManagingCursor(cursor);
-    	cursor.setNotificationUri(getContentResolver(), Notes.CONTENT_URI);
         mAdapter.changeCursor(cursor);
     }
 
@@ -284,10 +282,8 @@ public class NotesActivity extends ListActivity implements AsyncQueryListener {
 		}
 
 		@Override
-		protected void addGroups(Cursor cursor) {
-			int count = cursor.getCount();
-
-			if (categoryTab || count == 0) {
+		protected void addGroups(Cursor cursor, int start, int end) {
+			if (categoryTab || start >= end) {
 				return;
 			}
 			
@@ -295,9 +291,9 @@ public class NotesActivity extends ListActivity implements AsyncQueryListener {
 			
 			String currentValue = null;
 			String value = null;
-			cursor.moveToFirst();
+			cursor.moveToPosition(start);
 			currentValue = cursor.getString(NotesQuery.SESSION_ID);
-			for (int i = 1; i < count; i++) {
+			for (int i = start + 1; i < end; i++) {
 				cursor.moveToNext();
 				value = cursor.getString(NotesQuery.SESSION_ID);
 				boolean sameSession = currentValue.equals(value);
@@ -313,7 +309,7 @@ public class NotesActivity extends ListActivity implements AsyncQueryListener {
 					value = temp;
 				}
 			}
-			addGroup(count - groupItemCount, groupItemCount, false);
+			addGroup(end - groupItemCount, groupItemCount, false);
 		}
 
 		@Override
@@ -37,6 +37,9 @@ public class SearchActivity extends TabActivity {
     public static final String TAG_SESSIONS = "sessions";
     public static final String TAG_SPEAKERS = "speakers";
 
+    /** Number of most relevant matches shown for sessions and speakers. */
+    private static final int SEARCH_LIMIT = 50;
+
     private String mQuery;
 
     @Override
@@ -75,7 +78,7 @@ public class SearchActivity extends TabActivity {
     private void setupSessionsTab() {
         final TabHost host = getTabHost();
 
-        final Uri sessionsUri = Sessions.buildSearchUri(mQuery);
+        final Uri sessionsUri = Sessions.buildSearchUri(mQuery, 0, SEARCH_LIMIT);
         final Intent intent = new Intent(Intent.ACTION_VIEW, sessionsUri);
         intent.addCategory(Intent.CATEGORY_TAB);
 
@@ -89,7 +92,7 @@ public class SearchActivity extends TabActivity {
     private void setupSpeakersTab() {
         final TabHost host = getTabHost();
 
-        final Uri speakersUri = Speakers.buildSearchUri(mQuery);
+        final Uri speakersUri = Speakers.buildSearchUri(mQuery, 0, SEARCH_LIMIT);
         final Intent intent = new Intent(Intent.ACTION_VIEW, speakersUri);
         intent.addCategory(Intent.CATEGORY_TAB);
 
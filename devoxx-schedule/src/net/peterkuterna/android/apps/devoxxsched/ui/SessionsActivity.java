@@ -24,23 +24,19 @@ package net.peterkuterna.android.apps.devoxxsched.ui;
 import static net.peterkuterna.android.apps.devoxxsched.util.UIUtils.buildStyledSnippet;
 import static net.peterkuterna.android.apps.devoxxsched.util.UIUtils.formatSessionSubtitle;
 
-import java.util.ArrayList;
-
 import net.peterkuterna.android.apps.devoxxsched.R;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Rooms;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sessions;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Tracks;
-import net.peterkuterna.android.apps.devoxxsched.util.Lists;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler.AsyncQueryListener;
+import net.peterkuterna.android.apps.devoxxsched.util.SectionedCursor;
 import net.peterkuterna.android.apps.devoxxsched.util.UIUtils;
 import android.app.ListActivity;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
-import android.database.CursorWrapper;
-import android.database.DataSetObserver;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -113,7 +109,8 @@ public class SessionsActivity extends ListActivity implements AsyncQueryListener
            	mAdapter = new SearchAdapter(this);
            	mNoWeekdayHeader = true;
             projection = SearchQuery.PROJECTION;
-            sort = Sessions.DEFAULT_SORT;
+            // Search results come ordered on relevance
+            sort = null;
         }
 
         setListAdapter(mAdapter);
@@ -132,10 +129,10 @@ public class SessionsActivity extends ListActivity implements AsyncQueryListener
 //    		scrollPos = getScrollPosition(cursor);
     		mAdapter.changeCursor(cursor);
     	} else {
-	    	final SessionsCursorWrapper cursorWrapper = new SessionsCursorWrapper(cursor, this);
-	        startManagingCursor(cursorWrapper);
-//    		scrollPos = getScrollPosition(cursorWrapper);
-	        mAdapter.changeCursor(cursorWrapper);
+	    	final SectionedCursor sectionedCursor = new SectionedCursor(cursor, SessionsQuery.BLOCK_START);
+	        startManagingCursor(sectionedCursor);
+//    		scrollPos = getScrollPosition(sectionedCursor);
+	        mAdapter.changeCursor(sectionedCursor);
     	}
 //    	if (scrollPos != -1) reflect.scrollTo(getListView(), scrollPos, scrollPos);
     }
@@ -211,83 +208,72 @@ public class SessionsActivity extends ListActivity implements AsyncQueryListener
         /** {@inheritDoc} */
         @Override
         public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        	int cursorInfo = net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.SESSION_TYPE;
-        	if (!mNoWeekdayHeader) {
-        		cursorInfo = cursor.getInt(SessionsCursorWrapper.CURSOR_INFO_COLUMN_INDEX);
-        	}
-        	switch (cursorInfo) {
-        		case net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.DAY_TYPE:
-        			View v = getLayoutInflater().inflate(R.layout.list_item_session_header, parent,false);
-        			if (mTrackColor != -1) {
-        				UIUtils.setHeaderColor(v, mTrackColor);
-        			}
-        			return v;
-        		case net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.SESSION_TYPE:
-        		default:
-        			return getLayoutInflater().inflate(R.layout.list_item_session, parent,false);
+        	if (isHeader(cursor)) {
+    			View v = getLayoutInflater().inflate(R.layout.list_item_session_header, parent,false);
+    			if (mTrackColor != -1) {
+    				UIUtils.setHeaderColor(v, mTrackColor);
+    			}
+    			return v;
+        	} else {
+    			return getLayoutInflater().inflate(R.layout.list_item_session, parent,false);
         	}
         }
 
         /** {@inheritDoc} */
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-        	int cursorInfo = net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.SESSION_TYPE;
-        	if (!mNoWeekdayHeader) {
-        		cursorInfo = cursor.getInt(SessionsCursorWrapper.CURSOR_INFO_COLUMN_INDEX);
-        	}
-        	switch (cursorInfo) {
-        		case net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.DAY_TYPE:
-                    final TextView headerView = (TextView) view.findViewById(R.id.session_header);
-                    
-                    headerView.setText(cursor.getString(SessionsCursorWrapper.WEEKDAY_COLUMN_INDEX));
-        			break;
-        		case net.peterkuterna.android.apps.devoxxsched.ui.SessionsActivity.SessionsCursorWrapper.CursorInfo.SESSION_TYPE:
-        		default:
-                    final TextView titleView = (TextView) view.findViewById(R.id.session_title);
-                    final TextView subtitleView = (TextView) view.findViewById(R.id.session_subtitle);
-                    final CheckBox starButton = (CheckBox) view.findViewById(R.id.star_button);
-                    if (mTrackColor == -1) {
-                    	view.findViewById(R.id.session_track).setBackgroundColor(cursor.getInt(SessionsQuery.TRACK_COLOR));
-                    } else {
-                    	view.findViewById(R.id.session_track).setVisibility(View.GONE);
-                    }
-
-                    titleView.setText(cursor.getString(SessionsQuery.TITLE));
-
-                    // Format time block this session occupies
-                    final long blockStart = cursor.getLong(SessionsQuery.BLOCK_START);
-                    final long blockEnd = cursor.getLong(SessionsQuery.BLOCK_END);
-                    final String roomName = cursor.getString(SessionsQuery.ROOM_NAME);
-                    final String subtitle = formatSessionSubtitle(blockStart, blockEnd, roomName, context);
-
-                    subtitleView.setText(subtitle);
-
-                    final boolean starred = cursor.getInt(SessionsQuery.STARRED) != 0;
-                    starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
-                    starButton.setChecked(starred);
-                    
-                    if (mHighlightParallelStarred) {
-                        final int parallelStarredCount = cursor.getInt(SessionsQuery.STARRED_IN_BLOCK_COUNT);
-                    	if (starred && parallelStarredCount > 1) {
-                        	view.setBackgroundColor(0x20ff0000);
-                    	} else {
-                        	view.setBackgroundColor(0x00000000);
-                    	}
-                    } else {
-                    	view.setBackgroundColor(0x00000000);
-                    }
-                    
-                    // Possibly indicate that the session has occurred in the past.
-                    UIUtils.setSessionTitleColor(blockStart, blockEnd, titleView, subtitleView);
-                    break;
+        	if (isHeader(cursor)) {
+                final TextView headerView = (TextView) view.findViewById(R.id.session_header);
+                
+                // Header rows read from the first session of their day
+                final long dayStart = cursor.getLong(SessionsQuery.BLOCK_START);
+                headerView.setText(UIUtils.formatWeekdayHeader(dayStart, context));
+                return;
         	}
+
+            final TextView titleView = (TextView) view.findViewById(R.id.session_title);
+            final TextView subtitleView = (TextView) view.findViewById(R.id.session_subtitle);
+            final CheckBox starButton = (CheckBox) view.findViewById(R.id.star_button);
+            if (mTrackColor == -1) {
+            	view.findViewById(R.id.session_track).setBackgroundColor(cursor.getInt(SessionsQuery.TRACK_COLOR));
+            } else {
+            	view.findViewById(R.id.session_track).setVisibility(View.GONE);
+            }
+
+            titleView.setText(cursor.getString(SessionsQuery.TITLE));
+
+            // Format time block this session occupies
+            final long blockStart = cursor.getLong(SessionsQuery.BLOCK_START);
+            final long blockEnd = cursor.getLong(SessionsQuery.BLOCK_END);
+            final String roomName = cursor.getString(SessionsQuery.ROOM_NAME);
+            final String subtitle = formatSessionSubtitle(blockStart, blockEnd, roomName, context);
+
+            subtitleView.setText(subtitle);
+
+            final boolean starred = cursor.getInt(SessionsQuery.STARRED) != 0;
+            starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
+            starButton.setChecked(starred);
+            
+            if (mHighlightParallelStarred) {
+                final int parallelStarredCount = cursor.getInt(SessionsQuery.STARRED_IN_BLOCK_COUNT);
+            	if (starred && parallelStarredCount > 1) {
+                	view.setBackgroundColor(0x20ff0000);
+            	} else {
+                	view.setBackgroundColor(0x00000000);
+            	}
+            } else {
+            	view.setBackgroundColor(0x00000000);
+            }
+            
+            // Possibly indicate that the session has occurred in the past.
+            UIUtils.setSessionTitleColor(blockStart, blockEnd, titleView, subtitleView);
         }
 
 		@Override
 		public int getItemViewType(int position) {
 			if (!mNoWeekdayHeader) {
-				SessionsCursorWrapper wrapper = (SessionsCursorWrapper) getCursor();
-				return wrapper.getItemViewType(position);
+				SectionedCursor cursor = (SectionedCursor) getCursor();
+				return cursor.isHeader(position) ? 1 : 0;
 			} else {
 				return super.getItemViewType(position);
 			}
@@ -314,160 +300,22 @@ public class SessionsActivity extends ListActivity implements AsyncQueryListener
 		@Override
 		public boolean isEnabled(int position) {
 			if (!mNoWeekdayHeader) {
-				SessionsCursorWrapper wrapper = (SessionsCursorWrapper) getCursor();
-				return wrapper.isEnabled(position);
+				SectionedCursor cursor = (SectionedCursor) getCursor();
+				return !cursor.isHeader(position);
 			} else {
 				return super.isEnabled(position);
 			}
 		}
 
-    }
-    
-    /**
-     * {@link CursorWrapper} to insert weekday headers for a {@link SessionsQuery}.
-     */
-    private class SessionsCursorWrapper extends CursorWrapper {
-    	
-    	private final Context context;
-    	private Cursor cursor;
-    	private ArrayList<CursorInfo> cursorMapping;
-    	private int position = -1;
-    	
-    	public static final int WEEKDAY_COLUMN_INDEX = 98;
-    	public static final int CURSOR_INFO_COLUMN_INDEX = 99;
-    	
-		public SessionsCursorWrapper(Cursor cursor, Context context) {
-			super(cursor);
-			
-			this.context = context;
-			this.cursor = cursor;
-			
-			registerDataSetObserver(new DataSetObserver() {
-
-				@Override
-				public void onChanged() {
-					init();
-				}
-
-				@Override
-				public void onInvalidated() {
-					init();
-				}
-			});
-			
-			init();
-		}
-
-		@Override
-		public int getCount() {
-			return cursorMapping.size();
-		}
-		
-		public boolean isEnabled(int position) {
-			return cursorMapping.get(position).getType() == CursorInfo.SESSION_TYPE;
-		}
-
-		public int getItemViewType(int position) {
-			return cursorMapping.get(position).getType() - 1;
-		}
-
-		@Override
-		public int getInt(int columnIndex) {
-			CursorInfo cursorInfo = cursorMapping.get(position);
-			if (columnIndex == CURSOR_INFO_COLUMN_INDEX) {
-				return cursorInfo.getType();
-			} else if (cursorInfo.getType() == CursorInfo.SESSION_TYPE) {
-				return super.getInt(columnIndex);
-			}
-			return 0;
-		}
-
-		@Override
-		public long getLong(int columnIndex) {
-			CursorInfo cursorInfo = cursorMapping.get(position);
-			if (cursorInfo.getType() == CursorInfo.SESSION_TYPE) {
-				return super.getLong(columnIndex);
-			}
-			return 0;
-		}
-
-		@Override
-		public String getString(int columnIndex) {
-			CursorInfo cursorInfo = cursorMapping.get(position);
-			if (columnIndex == WEEKDAY_COLUMN_INDEX) {
-				return cursorInfo.getWeekday();
-			} else if (cursorInfo.getType() == CursorInfo.SESSION_TYPE) {
-				return super.getString(columnIndex);
-			}
-			return null;
-		}
-
-		@Override
-		public boolean moveToPosition(int position) {
-			if (position < cursorMapping.size()) {
-				this.position = position;
-
-				final CursorInfo cursorInfo = cursorMapping.get(position);
-				switch (cursorInfo.getType()) {
-					case CursorInfo.SESSION_TYPE:
-						return super.moveToPosition(cursorInfo.getCursorPostion());
-					default:
-						return true;
-				}
-			}
-			return false;
-		}
-    	
-		private void init() {
-			if (cursor != null) {
-				cursorMapping = Lists.newArrayList();
-				if (cursor.moveToFirst()) {
-					String prevWeekday = null;
-					do {
-						long blockStart = cursor.getLong(SessionsQuery.BLOCK_START);
-						String weekday = UIUtils.formatWeekdayHeader(blockStart, context);
-						if (!weekday.equals(prevWeekday)) {
-							final CursorInfo cursorInfo = new CursorInfo(CursorInfo.DAY_TYPE, -1, weekday);
-							cursorMapping.add(cursorInfo);
-						}
-						final CursorInfo cursorInfo = new CursorInfo(CursorInfo.SESSION_TYPE, cursor.getPosition(), null);
-						cursorMapping.add(cursorInfo);
-						prevWeekday = weekday;
-					} while (cursor.moveToNext());
-				}
-			}
-		}
-		
-		private class CursorInfo {
-			
-			public static final int SESSION_TYPE = 0x01;
-			public static final int DAY_TYPE = 0x02;
-			
-			private final int type;
-			private final int cursorPostion;
-			private final String weekday;
-			
-			public CursorInfo(int type, int cursorPostion, String weekday) {
-				this.type = type;
-				this.cursorPostion = cursorPostion;
-				this.weekday = weekday;
-			}
-
-			public int getType() {
-				return type;
-			}
-
-			public int getCursorPostion() {
-				return cursorPostion;
-			}
+        /**
+         * Is the current row of the given {@link Cursor} a weekday header?
+         */
+        private boolean isHeader(Cursor cursor) {
+        	return !mNoWeekdayHeader && ((SectionedCursor) cursor).isHeader();
+        }
 
-			public String getWeekday() {
-				return weekday;
-			}
-			
-		}
     }
-
+    
     /**
      * {@link CursorAdapter} that renders a {@link SearchQuery}.
      */
@@ -16,36 +16,21 @@
 
 package net.peterkuterna.android.apps.devoxxsched.ui;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-
 import net.peterkuterna.android.apps.devoxxsched.R;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
 import net.peterkuterna.android.apps.devoxxsched.ui.widget.SpeakerImageView;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler.AsyncQueryListener;
-import net.peterkuterna.android.apps.devoxxsched.util.SyncUtils;
+import net.peterkuterna.android.apps.devoxxsched.util.SpeakerImageLoader;
 import net.peterkuterna.android.apps.devoxxsched.util.UIUtils;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.util.EntityUtils;
-
 import android.app.TabActivity;
-import android.content.Context;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.TabHost;
 import android.widget.TextView;
@@ -53,9 +38,8 @@ import android.widget.TextView;
 /**
  * {@link TabActivity} to display the related info of {@link Speakers}.
  */
-public class SpeakerDetailActivity extends TabActivity implements AsyncQueryListener {
-
-    private static final String TAG = "SpeakerDetailActivity";
+public class SpeakerDetailActivity extends TabActivity
+		implements AsyncQueryListener, SpeakerImageLoader.Callback {
 
     private static final String TAG_BIO = "bio";
     private static final String TAG_PRESENTATIONS = "presentations";
@@ -67,8 +51,8 @@ public class SpeakerDetailActivity extends TabActivity implements AsyncQueryList
     private TextView mCompany;
     private TextView mBio;
     private SpeakerImageView mImage;
-
-    private File cacheDir;
+    private int mImageWidth;
+    private int mImageHeight;
 
     private NotifyingAsyncQueryHandler mHandler;
 
@@ -77,7 +61,11 @@ public class SpeakerDetailActivity extends TabActivity implements AsyncQueryList
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_speaker_detail);
 		
-		cacheDir = getCacheDir();
+		final Resources res = getResources();
+		mImageWidth = SpeakerImageView.getImageWidth(
+				res.getDimensionPixelSize(R.dimen.speaker_image_width));
+		mImageHeight = SpeakerImageView.getImageHeight(
+				res.getDimensionPixelSize(R.dimen.speaker_image_height));
 		
         ((TextView) findViewById(R.id.title_text)).setText(getTitle());
         
@@ -97,6 +85,12 @@ public class SpeakerDetailActivity extends TabActivity implements AsyncQueryList
         mHandler.startQuery(mSpeakerUri, SpeakersQuery.PROJECTION);
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		SpeakerImageLoader.getInstance(this).cancelImage(mSpeakerId, this);
+	}
+
     /** Build and add "bio" tab. */
     private void setupBioTab() {
         final TabHost host = getTabHost();
@@ -139,13 +133,9 @@ public class SpeakerDetailActivity extends TabActivity implements AsyncQueryList
             mCompany.setText(cursor.getString(SpeakersQuery.COMPANY));
             mBio.setText(cursor.getString(SpeakersQuery.BIO));
 
-            Bitmap speakerImage = loadImageFromCache();
-            if (speakerImage != null) {
-            	setSpeakerImage(speakerImage, false);
-            } else {
-	            final String imageUrl = cursor.getString(SpeakersQuery.IMAGE_URL);
-	            new SpeakerImageTask().execute(imageUrl);
-            }
+            final String imageUrl = cursor.getString(SpeakersQuery.IMAGE_URL);
+            SpeakerImageLoader.getInstance(this).loadImage(mSpeakerId, imageUrl,
+            		mImageWidth, mImageHeight, this);
         } finally {
             cursor.close();
         }
@@ -161,68 +151,11 @@ public class SpeakerDetailActivity extends TabActivity implements AsyncQueryList
         UIUtils.goSearch(this);
     }
     
-    private Bitmap loadImageFromCache() {
-    	String speakerId = Speakers.getSpeakerId(mSpeakerUri);
-    	return BitmapFactory.decodeFile(getCacheFile(cacheDir, speakerId).getAbsolutePath());
-    }
-    
-    private void saveImageToCache(Bitmap bitmap) {
-    	String speakerId = Speakers.getSpeakerId(mSpeakerUri);
-    	try {
-			bitmap.compress(CompressFormat.JPEG, 100, new FileOutputStream(getCacheFile(cacheDir, speakerId)));
-		} catch (FileNotFoundException e) {
-            Log.w(TAG, "Problem while saving image cache.");
-		}
-    }
-    
-    private void setSpeakerImage(Bitmap bitmap, boolean saveToCache) {
-    	if (bitmap != null) {
+    public void onImageLoaded(String speakerId, Bitmap bitmap) {
+    	if (bitmap != null && !isFinishing()) {
             mImage.setVisibility(View.VISIBLE);
             mImage.setImage(bitmap);
-    		if (saveToCache) saveImageToCache(bitmap);
     	}
-    	
-    }
-    
-    private File getCacheFile(File cacheDir, String speakerId) {
-    	return new File(cacheDir, "speakerImage-" + speakerId);
-    }
-
-    private static HttpClient sHttpClient;
-
-    private static synchronized HttpClient getHttpClient(Context context) {
-        if (sHttpClient == null) {
-            sHttpClient = SyncUtils.getHttpClient(context);
-        }
-        return sHttpClient;
-    }
-    
-    private class SpeakerImageTask extends AsyncTask<String, Void, Bitmap> {
-        @Override
-        protected Bitmap doInBackground(String... params) {
-            final String param = params[0];
-
-            try {
-                final Context context = SpeakerDetailActivity.this;
-                final HttpClient httpClient = getHttpClient(context);
-                final HttpResponse resp = httpClient.execute(new HttpGet(param));
-                final HttpEntity entity = resp.getEntity();
-
-                final int statusCode = resp.getStatusLine().getStatusCode();
-                if (statusCode != HttpStatus.SC_OK || entity == null) return null;
-
-                final byte[] respBytes = EntityUtils.toByteArray(entity);
-                return BitmapFactory.decodeByteArray(respBytes, 0, respBytes.length);
-            } catch (Exception e) {
-                Log.w(TAG, "Problem while loading speaker logo: " + e.toString());
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Bitmap result) {
-        	setSpeakerImage(result, true);
-        }
     }
 
     /** {@link Speakers} query parameters. */
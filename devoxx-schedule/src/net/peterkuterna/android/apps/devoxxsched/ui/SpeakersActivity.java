@@ -17,24 +17,34 @@
 package net.peterkuterna.android.apps.devoxxsched.ui;
 
 import static net.peterkuterna.android.apps.devoxxsched.util.UIUtils.buildStyledSnippet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import net.peterkuterna.android.apps.devoxxsched.R;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
+import net.peterkuterna.android.apps.devoxxsched.util.Maps;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler;
+import net.peterkuterna.android.apps.devoxxsched.util.SpeakerImageLoader;
 import net.peterkuterna.android.apps.devoxxsched.util.UIUtils;
 import net.peterkuterna.android.apps.devoxxsched.util.NotifyingAsyncQueryHandler.AsyncQueryListener;
 import android.app.ListActivity;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.text.Spannable;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AlphabetIndexer;
 import android.widget.CheckBox;
 import android.widget.CursorAdapter;
+import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.SectionIndexer;
 import android.widget.TextView;
@@ -42,10 +52,21 @@ import android.widget.TextView;
 /**
  * {@link ListActivity} to list the {@link Speakers}
  */
-public class SpeakersActivity extends ListActivity implements AsyncQueryListener {
+public class SpeakersActivity extends ListActivity
+		implements AsyncQueryListener, AbsListView.OnScrollListener {
+
+    /** Number of rows above and below the visible ones to prefetch images for. */
+    private static final int PREFETCH_ROWS = 10;
 
     private CursorAdapter mAdapter;
 
+    private SpeakerImageLoader mImageLoader;
+    private int mThumbnailSize;
+
+    /** Speakers with a prefetch running, mapped to their list position. */
+    private final HashMap<String, Integer> mPrefetching = Maps.newHashMap();
+    private int mPrefetchFirst = -1;
+
     private NotifyingAsyncQueryHandler mHandler;
 
 	@Override
@@ -64,30 +85,150 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
 
         final Uri speakersUri = getIntent().getData();
 
+        mImageLoader = SpeakerImageLoader.getInstance(this);
+        mThumbnailSize = getResources().getDimensionPixelSize(R.dimen.speaker_thumbnail_size);
+
         String[] projection;
+        String sort;
         if (!Speakers.isSearchUri(speakersUri)) {
             mAdapter = new SpeakersAdapter(this);
             projection = SpeakersQuery.PROJECTION;
+            sort = Speakers.DEFAULT_SORT;
             getListView().setFastScrollEnabled(true);
         } else {
             mAdapter = new SearchAdapter(this);
             projection = SearchQuery.PROJECTION;
+            // Search results come ordered on relevance
+            sort = null;
             getListView().setFastScrollEnabled(false);
         }
 
         setListAdapter(mAdapter);
-        
+        getListView().setOnScrollListener(this);
 
         mHandler = new NotifyingAsyncQueryHandler(getContentResolver(), this);
-        mHandler.startQuery(speakersUri, projection, Speakers.DEFAULT_SORT);
+        mHandler.startQuery(speakersUri, projection, sort);
 	}
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        cancelPrefetch(0, 0);
+    }
+
     /** {@inheritDoc} */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
         startManagingCursor(cursor);
+        cancelPrefetch(0, 0);
+        mPrefetchFirst = -1;
         mAdapter.changeCursor(cursor);
     }
 
+    /** {@inheritDoc} */
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+    		int totalItemCount) {
+        if (firstVisibleItem == mPrefetchFirst || visibleItemCount == 0) return;
+        mPrefetchFirst = firstVisibleItem;
+
+        final int start = Math.max(0, firstVisibleItem - PREFETCH_ROWS);
+        final int end = Math.min(totalItemCount, firstVisibleItem + visibleItemCount + PREFETCH_ROWS);
+        cancelPrefetch(start, end);
+        prefetch(start, firstVisibleItem);
+        prefetch(firstVisibleItem + visibleItemCount, end);
+    }
+
+    /** {@inheritDoc} */
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    /**
+     * Load the images of the rows in the given range ahead of them being
+     * shown. Rows that are visible load their image when bound.
+     */
+    private void prefetch(int start, int end) {
+        final Cursor cursor = mAdapter.getCursor();
+        if (cursor == null) return;
+
+        // The search query has the same positions for these columns
+        for (int position = start; position < end; position++) {
+            if (!cursor.moveToPosition(position)) break;
+            final String speakerId = cursor.getString(SpeakersQuery.SPEAKER_ID);
+            if (mPrefetching.containsKey(speakerId)
+            		|| mImageLoader.getCachedImage(speakerId, mThumbnailSize, mThumbnailSize) != null) {
+                continue;
+            }
+            mPrefetching.put(speakerId, position);
+            mImageLoader.loadImage(speakerId, cursor.getString(SpeakersQuery.IMAGE_URL),
+            		mThumbnailSize, mThumbnailSize, mPrefetchCallback);
+        }
+    }
+
+    /**
+     * Cancel the prefetches of the rows outside the given range.
+     */
+    private void cancelPrefetch(int start, int end) {
+        final Iterator<Map.Entry<String, Integer>> it = mPrefetching.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Integer> entry = it.next();
+            final int position = entry.getValue();
+            if (position < start || position >= end) {
+                mImageLoader.cancelImage(entry.getKey(), mPrefetchCallback);
+                it.remove();
+            }
+        }
+    }
+
+    private final SpeakerImageLoader.Callback mPrefetchCallback = new SpeakerImageLoader.Callback() {
+        public void onImageLoaded(String speakerId, Bitmap bitmap) {
+            mPrefetching.remove(speakerId);
+        }
+    };
+
+    /**
+     * Show the thumbnail of the given speaker in a list item, loading it
+     * when it is not in memory yet.
+     */
+    private void bindSpeakerImage(View view, String speakerId, String imageUrl) {
+        SpeakerImageHolder holder = (SpeakerImageHolder) view.getTag();
+        if (holder == null) {
+            holder = new SpeakerImageHolder((ImageView) view.findViewById(R.id.speaker_image));
+            view.setTag(holder);
+        }
+        if (speakerId.equals(holder.speakerId)) return;
+
+        if (holder.speakerId != null) {
+            mImageLoader.cancelImage(holder.speakerId, holder);
+        }
+        holder.speakerId = speakerId;
+
+        final Bitmap cached = mImageLoader.getCachedImage(speakerId, mThumbnailSize, mThumbnailSize);
+        if (cached != null) {
+            holder.image.setImageBitmap(cached);
+        } else {
+            holder.image.setImageResource(R.drawable.speaker_thumbnail);
+            mImageLoader.loadImage(speakerId, imageUrl, mThumbnailSize, mThumbnailSize, holder);
+        }
+    }
+
+    /**
+     * Thumbnail of a list item, waiting for the image of the speaker the
+     * item is showing.
+     */
+    private static class SpeakerImageHolder implements SpeakerImageLoader.Callback {
+        final ImageView image;
+        String speakerId;
+
+        SpeakerImageHolder(ImageView image) {
+            this.image = image;
+        }
+
+        public void onImageLoaded(String speakerId, Bitmap bitmap) {
+            if (bitmap != null && speakerId.equals(this.speakerId)) {
+                image.setImageBitmap(bitmap);
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void onListItemClick(ListView l, View v, int position, long id) {
@@ -137,6 +278,9 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
             final boolean starred = cursor.getInt(SpeakersQuery.CONTAINS_STARRED) != 0;
             starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
             starButton.setChecked(starred);
+
+            bindSpeakerImage(view, cursor.getString(SpeakersQuery.SPEAKER_ID),
+            		cursor.getString(SpeakersQuery.IMAGE_URL));
         }
 
 		@Override
@@ -194,6 +338,9 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
             final boolean starred = cursor.getInt(SearchQuery.CONTAINS_STARRED) != 0;
             starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
             starButton.setChecked(starred);
+
+            bindSpeakerImage(view, cursor.getString(SearchQuery.SPEAKER_ID),
+            		cursor.getString(SearchQuery.IMAGE_URL));
         }
 
     
@@ -208,6 +355,7 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
                 Speakers.LAST_NAME,
                 Speakers.COMPANY,
                 Speakers.CONTAINS_STARRED,
+                Speakers.IMAGE_URL,
         };
 
         int _ID = 0;
@@ -216,6 +364,7 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
         int LAST_NAME = 3;
         int COMPANY = 4;
         int CONTAINS_STARRED = 5;
+        int IMAGE_URL = 6;
     }
 
     /** {@link Speakers} search query parameters. */
@@ -227,6 +376,7 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
                 Speakers.LAST_NAME,
                 Speakers.SEARCH_SNIPPET,
                 Speakers.CONTAINS_STARRED,
+                Speakers.IMAGE_URL,
         };
 
         int _ID = 0;
@@ -235,6 +385,7 @@ public class SpeakersActivity extends ListActivity implements AsyncQueryListener
         int LAST_NAME = 3;
         int SEARCH_SNIPPET = 4;
         int CONTAINS_STARRED = 5;
+        int IMAGE_URL = 6;
     }
 
 }
@@ -13,13 +13,27 @@ import android.graphics.PaintFlagsDrawFilter;
 import android.util.AttributeSet;
 import android.view.View;
 
+/**
+ * Shows the image of a speaker inside a frame with a shadow. Images sized
+ * to {@link #getImageWidth()} by {@link #getImageHeight()} are drawn as
+ * they are, anything else is scaled to fit while drawing.
+ */
 public class SpeakerImageView extends View {
-	
+
+	/** Pixels taken by the frame and shadow around the image. */
+	private static final int FRAME_SIZE = 10;
+	private static final float IMAGE_OFFSET = 3.0f;
+
+	private static final PaintFlagsDrawFilter sSetFilter = new PaintFlagsDrawFilter(0, Paint.FILTER_BITMAP_FLAG);
+	private static final PaintFlagsDrawFilter sRemFilter = new PaintFlagsDrawFilter(Paint.FILTER_BITMAP_FLAG, 0);
+
+	private static Bitmap sPlaceholder;
+
 	private Bitmap mBitmap;
 	private Paint mRect = new Paint();
 	private Paint mFill = new Paint();
-	private PaintFlagsDrawFilter setFilter = new PaintFlagsDrawFilter(0, Paint.FILTER_BITMAP_FLAG);
-	private PaintFlagsDrawFilter remFilter = new PaintFlagsDrawFilter(Paint.FILTER_BITMAP_FLAG, 0);
+	private final Matrix mMatrix = new Matrix();
+	private boolean mScaled;
 
 	public SpeakerImageView(Context context) {
 		super(context);
@@ -37,8 +51,7 @@ public class SpeakerImageView extends View {
 	}
 	
 	protected void init(Context context) {
-		final Resources res = context.getResources();
-		mBitmap = BitmapFactory.decodeResource(res, R.drawable.speaker_thumbnail);
+		mBitmap = getPlaceholder(context.getResources());
 
 		mRect.setStyle(Paint.Style.STROKE);
 		mRect.setColor(Color.BLACK);
@@ -48,12 +61,71 @@ public class SpeakerImageView extends View {
 		mFill.setStyle(Paint.Style.FILL);
 		mFill.setColor(Color.WHITE);
 	}
+
+	/**
+	 * Decode the placeholder image once and share it between all views.
+	 */
+	private static synchronized Bitmap getPlaceholder(Resources res) {
+		if (sPlaceholder == null) {
+			sPlaceholder = BitmapFactory.decodeResource(res, R.drawable.speaker_thumbnail);
+		}
+		return sPlaceholder;
+	}
+
+	/**
+	 * Width of the image inside the frame, for a view laid out with the
+	 * given width.
+	 */
+	public static int getImageWidth(int viewWidth) {
+		return Math.max(1, viewWidth - FRAME_SIZE);
+	}
+
+	/**
+	 * Height of the image inside the frame, for a view laid out with the
+	 * given height.
+	 */
+	public static int getImageHeight(int viewHeight) {
+		return Math.max(1, viewHeight - FRAME_SIZE);
+	}
+
+	/**
+	 * Width an image should have to be drawn without scaling.
+	 */
+	public int getImageWidth() {
+		return getImageWidth(getWidth());
+	}
+
+	/**
+	 * Height an image should have to be drawn without scaling.
+	 */
+	public int getImageHeight() {
+		return getImageHeight(getHeight());
+	}
 	
 	public void setImage(Bitmap image) {
 		mBitmap = image;
+		updateMatrix();
 		invalidate();
 	}
 
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		updateMatrix();
+	}
+
+	/**
+	 * Work out how to draw the current image at the current size, so
+	 * {@link #onDraw(Canvas)} does not have to.
+	 */
+	private void updateMatrix() {
+		final int width = getImageWidth();
+		final int height = getImageHeight();
+		mScaled = mBitmap.getWidth() != width || mBitmap.getHeight() != height;
+		mMatrix.setScale((float) width / mBitmap.getWidth(), (float) height / mBitmap.getHeight());
+		mMatrix.postTranslate(IMAGE_OFFSET, IMAGE_OFFSET);
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
@@ -61,13 +133,13 @@ public class SpeakerImageView extends View {
 		canvas.drawRect(0, 0, getMeasuredWidth() - 5, getMeasuredHeight() - 5, mRect);
 		canvas.drawRect(1, 1, getMeasuredWidth() - 5, getMeasuredHeight() - 5, mFill);
 
-		Matrix matrix = new Matrix();
-		matrix.setScale(((float) getMeasuredWidth() - 10) / mBitmap.getWidth(),
-				((float) getMeasuredHeight() - 10) / mBitmap.getHeight());
-		matrix.postTranslate(3.0f, 3.0f);
-		canvas.setDrawFilter(setFilter);
-		canvas.drawBitmap(mBitmap, matrix, null);
-		canvas.setDrawFilter(remFilter);
+		if (mScaled) {
+			canvas.setDrawFilter(sSetFilter);
+			canvas.drawBitmap(mBitmap, mMatrix, null);
+			canvas.setDrawFilter(sRemFilter);
+		} else {
+			canvas.drawBitmap(mBitmap, IMAGE_OFFSET, IMAGE_OFFSET, null);
+		}
 		
 		canvas.restore();
 	}
@@ -66,6 +66,9 @@ public class ParserUtils {
     private static final Pattern sSanitizePattern = Pattern.compile("[^a-z0-9-_]");
     private static final Pattern sParenPattern = Pattern.compile("\\(.*?\\)");
 
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private static Time sTime = new Time();
     private static XmlPullParserFactory sFactory;
 
@@ -112,6 +115,30 @@ public class ParserUtils {
         return sTime.toMillis(false);
     }
 
+    /**
+     * Build a 64-bit FNV-1a hash over the given values, ignoring case and
+     * surrounding whitespace, without allocating any intermediate strings.
+     */
+    public static long contentHash(String... values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String value : values) {
+            if (value != null) {
+                int start = 0;
+                int end = value.length();
+                while (start < end && value.charAt(start) <= ' ') start++;
+                while (end > start && value.charAt(end - 1) <= ' ') end--;
+                for (int i = start; i < end; i++) {
+                    hash ^= Character.toLowerCase(value.charAt(i));
+                    hash *= FNV_PRIME;
+                }
+            }
+            // Separate the values, so moving text between them changes the hash
+            hash ^= 0xffff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
     public static long parseDevoxxTime(String time) {
         parseTime(time.replace(' ', 'T') + "00+01:00");
         return sTime.toMillis(false);
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.peterkuterna.android.apps.devoxxsched.util;
+
+import java.util.TimeZone;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+import android.text.format.DateUtils;
+
+/**
+ * {@link CursorWrapper} that inserts a header row in front of every section
+ * of a {@link Cursor} sorted on a time column. By default a section holds
+ * the rows of one day.
+ * <p>
+ * The index is kept in primitive arrays and built lazily, the first time a
+ * position is asked for. Since the rows are sorted, section boundaries are
+ * found with binary searches instead of visiting every row. A header row
+ * returns the values of the first row of its section.
+ */
+public class SectionedCursor extends CursorWrapper {
+
+	private static final int INITIAL_SECTIONS = 8;
+
+	private final Cursor mCursor;
+	private final int mColumnIndex;
+	private final TimeZone mTimeZone = TimeZone.getDefault();
+
+	private boolean mIndexed = false;
+	private int mCount;
+	private int mSectionCount;
+	/** Position in the wrapped cursor of the first row of each section. */
+	private int[] mSectionStarts = new int[INITIAL_SECTIONS];
+	/** Position of the header of each section. */
+	private int[] mHeaderPositions = new int[INITIAL_SECTIONS];
+
+	private int mPosition = -1;
+	private boolean mHeader = false;
+
+	/**
+	 * Wrap the given {@link Cursor}, which has to be sorted ascending on the
+	 * time column with the given index.
+	 */
+	public SectionedCursor(Cursor cursor, int columnIndex) {
+		super(cursor);
+
+		mCursor = cursor;
+		mColumnIndex = columnIndex;
+
+		cursor.registerDataSetObserver(new DataSetObserver() {
+			@Override
+			public void onChanged() {
+				mIndexed = false;
+			}
+
+			@Override
+			public void onInvalidated() {
+				mIndexed = false;
+			}
+		});
+	}
+
+	/**
+	 * Return the key of the section a row with the given time belongs to.
+	 * Keys have to be ascending with the time. The default key is the day
+	 * in the default time zone.
+	 */
+	protected long getSectionKey(long time) {
+		final long local = time + mTimeZone.getOffset(time);
+		return local >= 0 ? local / DateUtils.DAY_IN_MILLIS
+				: (local + 1) / DateUtils.DAY_IN_MILLIS - 1;
+	}
+
+	/**
+	 * Is the row at the given position a section header?
+	 */
+	public boolean isHeader(int position) {
+		ensureIndex();
+		final int section = findSection(position);
+		return section >= 0 && mHeaderPositions[section] == position;
+	}
+
+	/**
+	 * Is the current row a section header?
+	 */
+	public boolean isHeader() {
+		return mHeader;
+	}
+
+	@Override
+	public boolean requery() {
+		// Observers of the wrapped cursor may run after the adapter asks
+		// for the new count, so drop the index up front
+		mIndexed = false;
+		mPosition = -1;
+		return super.requery();
+	}
+
+	@Override
+	public int getCount() {
+		ensureIndex();
+		return mCount;
+	}
+
+	@Override
+	public int getPosition() {
+		return mPosition;
+	}
+
+	@Override
+	public boolean moveToPosition(int position) {
+		ensureIndex();
+		if (position < 0) {
+			mPosition = -1;
+			mHeader = false;
+			return false;
+		}
+		if (position >= mCount) {
+			mPosition = mCount;
+			mHeader = false;
+			return false;
+		}
+
+		final int section = findSection(position);
+		mPosition = position;
+		mHeader = mHeaderPositions[section] == position;
+		// A header reads from the first row of its section
+		return mCursor.moveToPosition(mHeader ? mSectionStarts[section]
+				: mSectionStarts[section] + position - mHeaderPositions[section] - 1);
+	}
+
+	@Override
+	public boolean move(int offset) {
+		return moveToPosition(mPosition + offset);
+	}
+
+	@Override
+	public boolean moveToFirst() {
+		return moveToPosition(0);
+	}
+
+	@Override
+	public boolean moveToLast() {
+		return moveToPosition(getCount() - 1);
+	}
+
+	@Override
+	public boolean moveToNext() {
+		return moveToPosition(mPosition + 1);
+	}
+
+	@Override
+	public boolean moveToPrevious() {
+		return moveToPosition(mPosition - 1);
+	}
+
+	@Override
+	public boolean isFirst() {
+		return mPosition == 0 && getCount() != 0;
+	}
+
+	@Override
+	public boolean isLast() {
+		final int count = getCount();
+		return mPosition == count - 1 && count != 0;
+	}
+
+	@Override
+	public boolean isBeforeFirst() {
+		return getCount() == 0 || mPosition == -1;
+	}
+
+	@Override
+	public boolean isAfterLast() {
+		return getCount() == 0 || mPosition == mCount;
+	}
+
+	/**
+	 * Return the section holding the given position, which is the last
+	 * section with a header at or before it.
+	 */
+	private int findSection(int position) {
+		int low = 0;
+		int high = mSectionCount - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (mHeaderPositions[mid] <= position) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Find the first row of every section. Each boundary is found with a
+	 * binary search over the rows following the previous one.
+	 */
+	private void ensureIndex() {
+		if (mIndexed) return;
+		mIndexed = true;
+		mSectionCount = 0;
+
+		final int rows = mCursor.isClosed() ? 0 : mCursor.getCount();
+		int start = 0;
+		while (start < rows) {
+			addSection(start);
+
+			final long key = keyAt(start);
+			int low = start + 1;
+			int high = rows;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (keyAt(mid) == key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			start = low;
+		}
+		mCount = rows + mSectionCount;
+	}
+
+	private long keyAt(int row) {
+		mCursor.moveToPosition(row);
+		return getSectionKey(mCursor.getLong(mColumnIndex));
+	}
+
+	private void addSection(int start) {
+		if (mSectionCount == mSectionStarts.length) {
+			mSectionStarts = grow(mSectionStarts);
+			mHeaderPositions = grow(mHeaderPositions);
+		}
+		mSectionStarts[mSectionCount] = start;
+		mHeaderPositions[mSectionCount] = start + mSectionCount;
+		mSectionCount++;
+	}
+
+	private static int[] grow(int[] array) {
+		final int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+}
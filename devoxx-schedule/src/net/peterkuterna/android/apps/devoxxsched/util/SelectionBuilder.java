@@ -29,6 +29,7 @@ import java.util.Map;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -45,6 +46,7 @@ public class SelectionBuilder {
     private Map<String, String> mProjectionMap = Maps.newHashMap();
     private StringBuilder mSelection = new StringBuilder();
     private ArrayList<String> mSelectionArgs = Lists.newArrayList();
+    private String mDefaultOrderBy = null;
 
     /**
      * Reset any internal state, allowing this builder to be recycled.
@@ -53,6 +55,7 @@ public class SelectionBuilder {
         mTable = null;
         mSelection.setLength(0);
         mSelectionArgs.clear();
+        mDefaultOrderBy = null;
         return this;
     }
 
@@ -106,6 +109,16 @@ public class SelectionBuilder {
         return this;
     }
 
+    /**
+     * Order to use when a query does not ask for one. Unlike a sort order
+     * given by the caller, it may refer to any expression, not only to
+     * columns in the projection.
+     */
+    public SelectionBuilder defaultOrderBy(String orderBy) {
+        mDefaultOrderBy = orderBy;
+        return this;
+    }
+
     /**
      * Return selection string for current internal state.
      *
@@ -153,11 +166,36 @@ public class SelectionBuilder {
             String having, String orderBy, String limit) {
         assertTable();
         if (columns != null) mapColumns(columns);
+        if (orderBy == null) orderBy = mDefaultOrderBy;
         if (LOGV) Log.v(TAG, "query(columns=" + Arrays.toString(columns) + ") " + this);
         return db.query(mTable, columns, getSelection(), getSelectionArgs(), groupBy, having,
                 orderBy, limit);
     }
 
+    /**
+     * Run {@code EXPLAIN QUERY PLAN} for the query that
+     * {@link #query(SQLiteDatabase, String[], String)} would execute, and
+     * return the detail of every step of the plan.
+     */
+    public ArrayList<String> explainQueryPlan(SQLiteDatabase db, String[] columns, String orderBy) {
+        assertTable();
+        if (columns != null) mapColumns(columns);
+        if (orderBy == null) orderBy = mDefaultOrderBy;
+        final String sql = SQLiteQueryBuilder.buildQueryString(false, mTable, columns,
+                getSelection(), null, null, orderBy, null);
+        final ArrayList<String> steps = Lists.newArrayList();
+        final Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, getSelectionArgs());
+        try {
+            final int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return steps;
+    }
+
     /**
      * Execute update using the current internal state as {@code WHERE} clause.
      */
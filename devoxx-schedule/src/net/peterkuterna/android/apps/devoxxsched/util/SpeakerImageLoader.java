@@ -0,0 +1,444 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.peterkuterna.android.apps.devoxxsched.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Loads speaker images in the background. Decoded images are kept in a
+ * memory cache bounded in bytes, already scaled down to the size they are
+ * shown at. The downloaded bytes are kept as they are in a disk cache
+ * bounded in size, large enough to hold the images of all speakers.
+ * Requests for a speaker that is already loading wait for the running
+ * request instead of starting another download.
+ */
+public class SpeakerImageLoader {
+
+    private static final String TAG = "SpeakerImageLoader";
+
+    private static final int MEMORY_CACHE_SIZE = 2 * 1024 * 1024;
+    private static final int DISK_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final int WORKER_THREADS = 2;
+
+    private static final String CACHE_DIR = "speakerImages";
+    private static final String LEGACY_CACHE_PREFIX = "speakerImage-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Interface to listen for loaded speaker images. Always called on the
+     * main thread, with a {@code null} bitmap when the image could not be
+     * loaded.
+     */
+    public interface Callback {
+        void onImageLoaded(String speakerId, Bitmap bitmap);
+    }
+
+    private static SpeakerImageLoader sInstance;
+
+    private final Context mContext;
+    private final File mCacheDir;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+
+    private final LinkedHashMap<String, Bitmap> mMemoryCache =
+    		new LinkedHashMap<String, Bitmap>(32, 0.75f, true);
+    private int mMemoryCacheBytes = 0;
+
+    private final HashMap<String, Request> mPending = Maps.newHashMap();
+
+    private HttpClient mHttpClient;
+    private Future<?> mPrefetch;
+
+    /**
+     * Return the loader shared by the whole application.
+     */
+    public static synchronized SpeakerImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SpeakerImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SpeakerImageLoader(Context context) {
+        mContext = context;
+        mCacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        mExecutor = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG);
+            }
+        });
+        mExecutor.submit(new Runnable() {
+            public void run() {
+                deleteLegacyCache();
+            }
+        });
+    }
+
+    /**
+     * Delete the images cached directly in the cache directory by earlier
+     * versions, which nothing reads anymore.
+     */
+    private void deleteLegacyCache() {
+        final File[] files = mContext.getCacheDir().listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (file.isFile() && file.getName().startsWith(LEGACY_CACHE_PREFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Return the image of the given speaker from the memory cache, or
+     * {@code null} when it was not loaded at this size yet.
+     */
+    public Bitmap getCachedImage(String speakerId, int width, int height) {
+        synchronized (mMemoryCache) {
+            return mMemoryCache.get(buildKey(speakerId, width, height));
+        }
+    }
+
+    /**
+     * Load the image of the given speaker, scaled to exactly the given
+     * size. The {@link Callback} is called right away when the image
+     * is in the memory cache.
+     */
+    public void loadImage(String speakerId, String imageUrl, int width, int height,
+    		Callback callback) {
+        final Bitmap cached = getCachedImage(speakerId, width, height);
+        if (cached != null) {
+            callback.onImageLoaded(speakerId, cached);
+            return;
+        }
+
+        final Waiter waiter = new Waiter(width, height, callback);
+        synchronized (mPending) {
+            Request request = mPending.get(speakerId);
+            if (request == null) {
+                request = new Request(speakerId, imageUrl);
+                mPending.put(speakerId, request);
+                request.waiters.add(waiter);
+                request.future = mExecutor.submit(request);
+            } else {
+                request.waiters.add(waiter);
+            }
+        }
+    }
+
+    /**
+     * Stop waiting for the image of the given speaker. The download is
+     * dropped when nobody else is waiting for it and it did not start yet.
+     */
+    public void cancelImage(String speakerId, Callback callback) {
+        synchronized (mPending) {
+            final Request request = mPending.get(speakerId);
+            if (request == null) return;
+
+            final Iterator<Waiter> it = request.waiters.iterator();
+            while (it.hasNext()) {
+                if (it.next().callback == callback) it.remove();
+            }
+            if (request.waiters.isEmpty() && request.future.cancel(false)) {
+                mPending.remove(speakerId);
+            }
+        }
+    }
+
+    /**
+     * Download the images of the given speakers, keyed by speaker id, into
+     * the disk cache on one of the worker threads, for as long as we stay
+     * on WiFi. Images already there or being loaded are skipped. Replaces
+     * a prefetch that is still running.
+     */
+    public synchronized void prefetchImages(final HashMap<String, String> imageUrls) {
+        if (mPrefetch != null) mPrefetch.cancel(true);
+        mPrefetch = mExecutor.submit(new Runnable() {
+            public void run() {
+                for (Entry<String, String> entry : imageUrls.entrySet()) {
+                    if (Thread.interrupted() || !SyncUtils.isWifiConnected(mContext)) return;
+                    prefetchImage(entry.getKey(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    private void prefetchImage(String speakerId, String imageUrl) {
+        synchronized (mPending) {
+            if (mPending.containsKey(speakerId)) return;
+        }
+        fetchImage(speakerId, imageUrl, false);
+    }
+
+    private static String buildKey(String speakerId, int width, int height) {
+        return speakerId + "@" + width + "x" + height;
+    }
+
+    private void putCachedImage(String key, Bitmap bitmap) {
+        synchronized (mMemoryCache) {
+            final Bitmap previous = mMemoryCache.put(key, bitmap);
+            if (previous != null) {
+                mMemoryCacheBytes -= sizeOf(previous);
+            }
+            mMemoryCacheBytes += sizeOf(bitmap);
+
+            final Iterator<Bitmap> it = mMemoryCache.values().iterator();
+            while (mMemoryCacheBytes > MEMORY_CACHE_SIZE && it.hasNext()) {
+                final Bitmap eldest = it.next();
+                if (eldest == bitmap) break;
+                mMemoryCacheBytes -= sizeOf(eldest);
+                it.remove();
+            }
+        }
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private File getCacheFile(String speakerId) {
+        return new File(mCacheDir, Uri.encode(speakerId));
+    }
+
+    /**
+     * Return the cached file holding the original image bytes of the given
+     * speaker, downloading it first when needed. Only images that are shown
+     * should be marked as used, or a prefetch would make every cached image
+     * look recently used when the disk cache is trimmed.
+     */
+    private File fetchImage(String speakerId, String imageUrl, boolean markUsed) {
+        final File file = getCacheFile(speakerId);
+        if (file.exists()) {
+            // Keep recently used images when the disk cache is trimmed
+            if (markUsed) file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+        if (imageUrl == null) return null;
+
+        mCacheDir.mkdirs();
+        File temp = null;
+        try {
+            temp = File.createTempFile(CACHE_DIR, TEMP_SUFFIX, mCacheDir);
+
+            final HttpResponse resp = getHttpClient().execute(new HttpGet(imageUrl));
+            final HttpEntity entity = resp.getEntity();
+
+            final int statusCode = resp.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK || entity == null) {
+                if (entity != null) entity.consumeContent();
+                return null;
+            }
+
+            final InputStream input = entity.getContent();
+            final OutputStream output = new FileOutputStream(temp);
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+                input.close();
+            }
+
+            if (!temp.renameTo(file)) return null;
+            trimDiskCache();
+            return file;
+        } catch (IOException e) {
+            Log.w(TAG, "Problem while loading speaker image: " + e.toString());
+            return null;
+        } finally {
+            if (temp != null) temp.delete();
+        }
+    }
+
+    private synchronized HttpClient getHttpClient() {
+        if (mHttpClient == null) {
+            mHttpClient = SyncUtils.getHttpClient(mContext);
+        }
+        return mHttpClient;
+    }
+
+    /**
+     * Delete the least recently used images until the disk cache fits in
+     * {@link #DISK_CACHE_SIZE}.
+     */
+    private synchronized void trimDiskCache() {
+        final File[] files = mCacheDir.listFiles();
+        if (files == null) return;
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= DISK_CACHE_SIZE) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File lhs, File rhs) {
+                final long l = lhs.lastModified();
+                final long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > DISK_CACHE_SIZE; i++) {
+            if (files[i].getName().endsWith(TEMP_SUFFIX)) continue;
+            size -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Decode the given file to a bitmap of exactly the requested size,
+     * cropping the center when the aspect ratios differ. Pixels are skipped
+     * while decoding, so the full image never has to fit in memory.
+     */
+    private static Bitmap decodeImage(File file, int width, int height) {
+        final String path = file.getAbsolutePath();
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+        		&& options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        final Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) return null;
+
+        final int sampledWidth = sampled.getWidth();
+        final int sampledHeight = sampled.getHeight();
+        if (sampledWidth == width && sampledHeight == height) return sampled;
+
+        final float scale = Math.max((float) width / sampledWidth, (float) height / sampledHeight);
+        final int cropWidth = Math.min(sampledWidth, Math.round(width / scale));
+        final int cropHeight = Math.min(sampledHeight, Math.round(height / scale));
+        final Matrix matrix = new Matrix();
+        matrix.setScale((float) width / cropWidth, (float) height / cropHeight);
+        final Bitmap scaled = Bitmap.createBitmap(sampled, (sampledWidth - cropWidth) / 2,
+        		(sampledHeight - cropHeight) / 2, cropWidth, cropHeight, matrix, true);
+        if (scaled != sampled) sampled.recycle();
+        return scaled;
+    }
+
+    /**
+     * Someone waiting for an image at a given size.
+     */
+    private static class Waiter {
+        final int width;
+        final int height;
+        final Callback callback;
+
+        Waiter(int width, int height, Callback callback) {
+            this.width = width;
+            this.height = height;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Loads the image of one speaker for everyone waiting for it.
+     */
+    private class Request implements Runnable {
+        final String speakerId;
+        final String imageUrl;
+        final ArrayList<Waiter> waiters = Lists.newArrayList();
+        Future<?> future;
+
+        Request(String speakerId, String imageUrl) {
+            this.speakerId = speakerId;
+            this.imageUrl = imageUrl;
+        }
+
+        public void run() {
+            final File file = fetchImage(speakerId, imageUrl, true);
+
+            // Waiters showing up from now on start a new request
+            final ArrayList<Waiter> waiters;
+            synchronized (mPending) {
+                if (mPending.get(speakerId) == this) {
+                    mPending.remove(speakerId);
+                }
+                waiters = new ArrayList<Waiter>(this.waiters);
+            }
+
+            final HashMap<String, Bitmap> decoded = Maps.newHashMap();
+            for (Waiter waiter : waiters) {
+                final String key = buildKey(speakerId, waiter.width, waiter.height);
+                if (file == null || decoded.containsKey(key)) continue;
+                Bitmap bitmap = getCachedImage(speakerId, waiter.width, waiter.height);
+                if (bitmap == null) {
+                    bitmap = decodeImage(file, waiter.width, waiter.height);
+                    if (bitmap != null) putCachedImage(key, bitmap);
+                }
+                decoded.put(key, bitmap);
+            }
+
+            mHandler.post(new Runnable() {
+                public void run() {
+                    for (Waiter waiter : waiters) {
+                        final String key = buildKey(speakerId, waiter.width, waiter.height);
+                        waiter.callback.onImageLoaded(speakerId, decoded.get(key));
+                    }
+                }
+            });
+        }
+    }
+
+}
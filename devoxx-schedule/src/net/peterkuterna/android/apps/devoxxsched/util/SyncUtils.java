@@ -20,8 +20,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
 import java.util.zip.GZIPInputStream;
 
+import net.peterkuterna.android.apps.devoxxsched.model.RequestHash;
 import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sync;
 
 import org.apache.http.Header;
@@ -37,6 +39,8 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -56,6 +60,9 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.NetworkInfo.State;
 import android.net.Uri;
 import android.text.format.DateUtils;
 
@@ -66,8 +73,13 @@ public class SyncUtils {
     
     private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
     private static final String ENCODING_GZIP = "gzip";
+
+    /** Maximum number of feeds downloaded at the same time during a sync. */
+    public static final int MAX_PARALLEL_REQUESTS = 4;
     
     private static final String BASE_MD5_URL = "http://devoxx2010.appspot.com/requestmd5key?requestUri=";
+    private static final String BASE_MD5S_URL = "http://devoxx2010.appspot.com/requestmd5keys";
+    private static final String BASE_FEED_DELTA_URL = "http://devoxx2010.appspot.com/feeddelta";
 
     /**
      * Generate and return a {@link HttpClient} configured for general use,
@@ -81,6 +93,10 @@ public class SyncUtils {
         HttpConnectionParams.setSoTimeout(params, 20 * SECOND_IN_MILLIS);
 
         HttpConnectionParams.setSocketBufferSize(params, 8192);
+
+        // Allow the feeds of a sync to be downloaded in parallel
+        ConnManagerParams.setMaxTotalConnections(params, MAX_PARALLEL_REQUESTS);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_PARALLEL_REQUESTS));
         HttpProtocolParams.setUserAgent(params, buildUserAgent(context));
 
         final SchemeRegistry schemeReg = new SchemeRegistry();
@@ -101,6 +117,7 @@ public class SyncUtils {
             public void process(HttpResponse response, HttpContext context) {
                 // Inflate any responses compressed with gzip
                 final HttpEntity entity = response.getEntity();
+                if (entity == null) return;
                 final Header encoding = entity.getContentEncoding();
                 if (encoding != null) {
                     for (HeaderElement element : encoding.getElements()) {
@@ -116,6 +133,24 @@ public class SyncUtils {
         return client;
     }
 
+    /**
+     * Read the locally stored md5 and HTTP validators of the given url. The
+     * fields of the returned {@link RequestHash} are {@code null} when
+     * nothing was stored yet.
+     */
+    public static RequestHash getLocalSyncState(ContentResolver resolver, String url) {
+    	final String syncId = Sync.generateSyncId(url);
+    	final Uri uri = Sync.buildSyncUri(syncId);
+    	Cursor cursor = resolver.query(uri, SyncQuery.PROJECTION, null, null, null);
+    	try {
+    		if (!cursor.moveToFirst()) return new RequestHash(url, null);
+    		return new RequestHash(url, cursor.getString(SyncQuery.MD5), 
+    				cursor.getString(SyncQuery.ETAG), cursor.getString(SyncQuery.LAST_MODIFIED));
+    	} finally {
+    		cursor.close();
+    	}
+    }
+
     public static String getLocalMd5(ContentResolver resolver, String url) {
     	final String syncId = Sync.generateSyncId(url);
     	final Uri uri = Sync.buildSyncUri(syncId);
@@ -135,6 +170,8 @@ public class SyncUtils {
 	        final HttpResponse resp = httpClient.execute(request);
 	        final int status = resp.getStatusLine().getStatusCode();
 	        if (status != HttpStatus.SC_OK) {
+	        	final HttpEntity entity = resp.getEntity();
+	        	if (entity != null) entity.consumeContent();
 	        	return null;
 	        }
 	
@@ -163,15 +200,99 @@ public class SyncUtils {
     	return null;
     }
     
-    public static void updateLocalMd5(ContentResolver resolver, String url, String md5) {
+    /**
+     * Fetch the remote md5 hashes of all given urls in one round trip. Urls
+     * for which no hash is known are left out of the returned map. Falls
+     * back to {@link #getRemoteMd5(HttpClient, String)} for each url when
+     * the batched request fails.
+     */
+    public static HashMap<String, String> getRemoteMd5s(HttpClient httpClient, String [] urls) {
+    	final HashMap<String, String> md5s = Maps.newHashMap();
+    	if (urls.length == 0) return md5s;
+
+    	try {
+    		final Uri.Builder builder = Uri.parse(BASE_MD5S_URL).buildUpon();
+    		for (String url : urls) {
+    			builder.appendQueryParameter("requestUri", url);
+    		}
+	        final HttpUriRequest request = new HttpGet(builder.build().toString());
+	        final HttpResponse resp = httpClient.execute(request);
+	        final int status = resp.getStatusLine().getStatusCode();
+	        if (status == HttpStatus.SC_OK) {
+		        final InputStream input = resp.getEntity().getContent();
+		    	try {
+		        	BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+		        	String line;
+		        	int i = 0;
+		        	while ((line = reader.readLine()) != null && i < urls.length) {
+		        		final String md5 = line.trim();
+		        		if (md5.length() > 0 && !"NOK".equals(md5)) {
+		        			md5s.put(urls[i], md5);
+		        		}
+		        		i++;
+		        	}
+		        	return md5s;
+		    	} finally {
+		            if (input != null) input.close();
+		    	}
+	        }
+	        // Release the connection before the requests of the fallback
+	        final HttpEntity entity = resp.getEntity();
+	        if (entity != null) entity.consumeContent();
+    	} catch (IOException e) {
+    		// Fall back to requesting each url separately
+        }
+
+    	for (String url : urls) {
+    		final String md5 = getRemoteMd5(httpClient, url);
+    		if (md5 != null) {
+    			md5s.put(url, md5);
+    		}
+    	}
+    	return md5s;
+    }
+    
+    /**
+     * Build the url that fetches the changes to the given url since the
+     * version with the given md5 hash.
+     */
+    public static String buildFeedDeltaUrl(String url, String sinceMd5) {
+    	return Uri.parse(BASE_FEED_DELTA_URL).buildUpon()
+    			.appendQueryParameter("requestUri", url)
+    			.appendQueryParameter("since", sinceMd5)
+    			.build().toString();
+    }
+    
+    /**
+     * Store the md5 and HTTP validators of the given {@link RequestHash}.
+     */
+    public static void updateLocalSyncState(ContentResolver resolver, RequestHash requestHash) {
+        final String url = requestHash.getUrl();
         final String syncId = Sync.generateSyncId(url);
+        final String md5 = requestHash.getMd5();
         final ContentValues contentValues = new ContentValues();
         contentValues.put(Sync.URI_ID, syncId);
         contentValues.put(Sync.URI, url);
-        contentValues.put(Sync.MD5, md5);
+        contentValues.put(Sync.MD5, md5 != null ? md5 : "");
+        contentValues.put(Sync.ETAG, requestHash.getEtag());
+        contentValues.put(Sync.LAST_MODIFIED, requestHash.getLastModified());
         resolver.insert(Sync.CONTENT_URI, contentValues);
     }
 
+    /**
+     * Are we connected to a WiFi network?
+     */
+    public static boolean isWifiConnected(Context context) {
+    	final ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+    	if (connectivityManager != null) {
+    		NetworkInfo networkInfo = connectivityManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
+    		return (networkInfo != null && networkInfo.getState().equals(State.CONNECTED));
+    	}
+    	
+    	return false;
+    }
+
     /**
      * Build and return a user-agent string that can identify this application
      * to remote servers. Contains the package name and version code.
@@ -213,9 +334,13 @@ public class SyncUtils {
     private interface SyncQuery {
     	String [] PROJECTION = {
     			Sync.MD5,
+    			Sync.ETAG,
+    			Sync.LAST_MODIFIED,
     	};
     	
     	int MD5 = 0;
+    	int ETAG = 1;
+    	int LAST_MODIFIED = 2;
     }
     
 }
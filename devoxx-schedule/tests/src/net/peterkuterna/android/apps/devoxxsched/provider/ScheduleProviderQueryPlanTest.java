@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.peterkuterna.android.apps.devoxxsched.provider;
+
+import java.util.ArrayList;
+
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Blocks;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Notes;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Rooms;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sessions;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Speakers;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Sync;
+import net.peterkuterna.android.apps.devoxxsched.provider.ScheduleContract.Tracks;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.test.ProviderTestCase2;
+
+/**
+ * Checks the query plan of a sample {@link Uri} for every pattern of
+ * {@link ScheduleProvider}, both when it is read from the session list and
+ * when it is read from the joined tables. Lists may scan the table they are
+ * built from, but no other step of any plan may scan a complete table.
+ * <p>
+ * The search suggestions and the notes export are left out, since they are
+ * not answered through a {@code SelectionBuilder}.
+ */
+public class ScheduleProviderQueryPlanTest extends ProviderTestCase2<ScheduleProvider> {
+
+	private static final String SESSION_ID = "1";
+	private static final String SPEAKER_ID = "2";
+	private static final String ROOM_ID = "3";
+	private static final String BLOCK_ID = "4";
+	private static final String TRACK_ID = "5";
+	private static final long TIME = 1289811600000L;
+
+	/** Lists, which may scan the table they are built from. */
+	private static final Uri[] LIST_URIS = {
+		Sessions.CONTENT_URI,
+		Sessions.CONTENT_STARRED_URI,
+		Sessions.CONTENT_NEW_URI,
+		Sessions.CONTENT_UPDATED_URI,
+		Sessions.CONTENT_UPDATED_STARRED_URI,
+		Sessions.CONTENT_SPEAKERS_URI,
+		Speakers.CONTENT_URI,
+		Speakers.CONTENT_STARRED_URI,
+		Rooms.CONTENT_URI,
+		Blocks.CONTENT_URI,
+		Notes.CONTENT_URI,
+		Tracks.CONTENT_URI,
+		Sync.CONTENT_URI,
+	};
+
+	/** Lookups on the paths the screens hit, which may not scan at all. */
+	private static final Uri[] LOOKUP_URIS = {
+		Sessions.buildSearchUri("java"),
+		Sessions.buildSessionsAtDirUri(TIME),
+		Sessions.buildSessionsParallelDirUri(SESSION_ID),
+		Sessions.buildSessionUri(SESSION_ID),
+		Sessions.buildSpeakersDirUri(SESSION_ID),
+		Sessions.buildSessionSpeakerUri(SESSION_ID, SPEAKER_ID),
+		Sessions.buildNotesDirUri(SESSION_ID),
+		Speakers.buildSearchUri("java"),
+		Speakers.buildSpeakerUri(SPEAKER_ID),
+		Speakers.buildSessionsDirUri(SPEAKER_ID),
+		Rooms.buildRoomsWithNameUri("Room 8"),
+		Rooms.buildRoomUri(ROOM_ID),
+		Rooms.buildRoomUri(ROOM_ID).buildUpon().appendPath("sessions").build(),
+		Blocks.buildBlocksBetweenDirUri(TIME, TIME + 3600000L),
+		Blocks.buildBlockUri(BLOCK_ID),
+		Blocks.buildSessionsUri(BLOCK_ID),
+		Notes.buildNoteUri(6),
+		Tracks.buildTrackUri(TRACK_ID),
+		Tracks.buildSessionsUri(TRACK_ID),
+		Sync.buildSyncUri("7"),
+	};
+
+	/** Projection of the session screens, covered by the session list. */
+	private static final String[] SESSION_LIST_PROJECTION = {
+		BaseColumns._ID,
+		Sessions.SESSION_ID,
+		Sessions.TITLE,
+		Sessions.STARRED,
+		Blocks.BLOCK_START,
+		Blocks.BLOCK_END,
+		Rooms.NAME,
+		Tracks.TRACK_COLOR,
+	};
+
+	public ScheduleProviderQueryPlanTest() {
+		super(ScheduleProvider.class, ScheduleContract.CONTENT_AUTHORITY);
+	}
+
+	public void testEveryPatternIsCovered() {
+		final ScheduleProvider provider = getProvider();
+		for (Uri uri : LIST_URIS) {
+			assertNotNull("No type for " + uri, provider.getType(uri));
+		}
+		for (Uri uri : LOOKUP_URIS) {
+			assertNotNull("No type for " + uri, provider.getType(uri));
+		}
+	}
+
+	public void testListsScanOnlyTheirOwnTable() {
+		for (Uri uri : LIST_URIS) {
+			assertScans(uri, 1);
+		}
+	}
+
+	public void testLookupsDoNotScan() {
+		for (Uri uri : LOOKUP_URIS) {
+			assertScans(uri, 0);
+		}
+	}
+
+	/**
+	 * Assert the query plan of the given {@link Uri} scans at most the given
+	 * number of tables. Lists of sessions are checked both with all columns,
+	 * read from the joined tables, and with the session list projection.
+	 */
+	private void assertScans(Uri uri, int allowed) {
+		assertScans(uri, null, allowed);
+		if (Sessions.CONTENT_TYPE.equals(getProvider().getType(uri))) {
+			assertScans(uri, SESSION_LIST_PROJECTION, allowed);
+		}
+	}
+
+	private void assertScans(Uri uri, String[] projection, int allowed) {
+		final ArrayList<String> steps = getProvider().explainQuery(uri, projection, null);
+		int scans = 0;
+		for (String step : steps) {
+			if (ScheduleProvider.isFullTableScan(step)) scans++;
+		}
+		assertTrue("Full table scan for " + uri + ": " + steps, scans <= allowed);
+	}
+
+}
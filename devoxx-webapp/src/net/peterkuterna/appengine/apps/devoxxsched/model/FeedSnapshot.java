@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.model;
+
+import java.util.Date;
+
+import javax.jdo.annotations.PersistenceCapable;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.PrimaryKey;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * A gzip compressed copy of one version of the response of a request uri.
+ * The key is built from the request uri and the version, so a snapshot can
+ * be fetched directly by {@link #createKey(String, long)}.
+ */
+@PersistenceCapable
+public class FeedSnapshot {
+
+	@PrimaryKey
+	@Persistent
+	private Key key;
+	
+	@Persistent
+	private String requestUri;
+	
+	@Persistent
+	private Long version;
+	
+	@Persistent
+	private String md5Hash;
+	
+	@Persistent
+	private Blob content;
+
+	@Persistent
+	private Date date;
+
+	public FeedSnapshot(String requestUri, long version, String md5Hash, Blob content, Date date) {
+		this.key = createKey(requestUri, version);
+		this.requestUri = requestUri;
+		this.version = version;
+		this.md5Hash = md5Hash;
+		this.content = content;
+		this.date = date;
+	}
+
+	public static Key createKey(String requestUri, long version) {
+		return KeyFactory.createKey(FeedSnapshot.class.getSimpleName(), requestUri + "#" + version);
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public String getRequestUri() {
+		return requestUri;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String getMd5Hash() {
+		return md5Hash;
+	}
+
+	public Blob getContent() {
+		return content;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+	
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.model;
+
+import java.util.Date;
+
+import javax.jdo.annotations.PersistenceCapable;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.PrimaryKey;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * The metadata of one {@link FeedSnapshot}, stored apart from it so the
+ * versions of a request uri can be listed without loading their content.
+ */
+@PersistenceCapable
+public class FeedVersion {
+
+	@PrimaryKey
+	@Persistent
+	private Key key;
+	
+	@Persistent
+	private String requestUri;
+	
+	@Persistent
+	private Long version;
+	
+	@Persistent
+	private String md5Hash;
+	
+	@Persistent
+	private Date date;
+
+	public FeedVersion(FeedSnapshot snapshot) {
+		this.key = createKey(snapshot.getRequestUri(), snapshot.getVersion());
+		this.requestUri = snapshot.getRequestUri();
+		this.version = snapshot.getVersion();
+		this.md5Hash = snapshot.getMd5Hash();
+		this.date = snapshot.getDate();
+	}
+
+	public static Key createKey(String requestUri, long version) {
+		return KeyFactory.createKey(FeedVersion.class.getSimpleName(), requestUri + "#" + version);
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public String getRequestUri() {
+		return requestUri;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String getMd5Hash() {
+		return md5Hash;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+	
+}
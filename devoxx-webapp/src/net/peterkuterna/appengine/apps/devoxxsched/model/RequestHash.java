@@ -41,6 +41,9 @@ public class RequestHash {
 	@Persistent
 	private Date date;
 
+	@Persistent
+	private Long version;
+
 	public RequestHash(String requestUri, String md5Hash, Date date) {
 		this.requestUri = requestUri;
 		this.md5Hash = md5Hash;
@@ -78,5 +81,17 @@ public class RequestHash {
 	public void setDate(Date date) {
 		this.date = date;
 	}
+
+	/**
+	 * Latest {@link FeedSnapshot} version stored for this request uri, or
+	 * {@code null} when no snapshot was stored yet.
+	 */
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
 	
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.servlet;
+
+import java.io.IOException;
+
+import javax.jdo.PersistenceManager;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
+import net.peterkuterna.appengine.apps.devoxxsched.model.FeedSnapshot;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedDelta;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedSnapshotStore;
+import net.peterkuterna.appengine.apps.devoxxsched.util.RequestHashStore;
+
+
+/**
+ * Returns the changes to the feed of a request uri since the version with
+ * the md5 hash given in the {@code since} parameter, as computed by
+ * {@link FeedDelta}. When that version is unknown, the complete latest
+ * feed is returned instead. The {@code X-Feed-Delta} header tells which of
+ * both was returned, and {@code X-Feed-Md5} holds the md5 hash of the
+ * version the client ends up with.
+ */
+@SuppressWarnings("serial")
+public class FeedDeltaServlet extends HttpServlet {
+	
+	private static final String HEADER_FEED_DELTA = "X-Feed-Delta";
+	private static final String HEADER_FEED_MD5 = "X-Feed-Md5";
+	private static final String HEADER_FEED_VERSION = "X-Feed-Version";
+	
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		final String requestUri = req.getParameter("requestUri");
+		final String since = req.getParameter("since");
+		
+		if (!RequestHashStore.isAllowed(requestUri)) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		
+		final PersistenceManager pm = PMF.get().getPersistenceManager();
+		try {
+			final FeedSnapshot latest = FeedSnapshotStore.getLatestSnapshot(pm, requestUri);
+			if (latest == null) {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			
+			final String content = FeedSnapshotStore.getContent(latest);
+			final FeedSnapshot base = since != null 
+					? FeedSnapshotStore.getSnapshotByMd5(pm, requestUri, since) : null;
+			String delta = null;
+			if (base != null) {
+				try {
+					delta = base.getVersion() == latest.getVersion() 
+							? "[]" : FeedDelta.compute(FeedSnapshotStore.getContent(base), content);
+				} catch (RuntimeException e) {
+					// Not a feed we can diff, return it completely
+				}
+			}
+			
+			resp.setContentType("application/json");
+			resp.setCharacterEncoding("UTF-8");
+			resp.setHeader(HEADER_FEED_MD5, latest.getMd5Hash());
+			resp.setHeader(HEADER_FEED_VERSION, String.valueOf(latest.getVersion()));
+			resp.setHeader(HEADER_FEED_DELTA, String.valueOf(delta != null));
+			resp.getWriter().write(delta != null ? delta : content);
+		} finally {
+			pm.close();
+		}
+	}
+	
+}
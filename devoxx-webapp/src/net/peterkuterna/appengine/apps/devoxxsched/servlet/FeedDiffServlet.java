@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.servlet;
+
+import java.io.IOException;
+
+import javax.jdo.PersistenceManager;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
+import net.peterkuterna.appengine.apps.devoxxsched.model.FeedSnapshot;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedDiff;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedSnapshotStore;
+import net.peterkuterna.appengine.apps.devoxxsched.util.RequestHashStore;
+
+
+/**
+ * Returns the structural diff, as computed by {@link FeedDiff}, between
+ * the {@code from} and {@code to} versions of the feed of a request uri.
+ * When {@code to} is left out, the diff is taken up to the latest version,
+ * which is returned in the {@code X-Feed-Version} header.
+ */
+@SuppressWarnings("serial")
+public class FeedDiffServlet extends HttpServlet {
+	
+	private static final String HEADER_FEED_MD5 = "X-Feed-Md5";
+	private static final String HEADER_FEED_VERSION = "X-Feed-Version";
+	
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		final String requestUri = req.getParameter("requestUri");
+		final String from = req.getParameter("from");
+		final String to = req.getParameter("to");
+		
+		if (!RequestHashStore.isAllowed(requestUri) || from == null) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		
+		final PersistenceManager pm = PMF.get().getPersistenceManager();
+		try {
+			final FeedSnapshot fromSnapshot;
+			final FeedSnapshot toSnapshot;
+			try {
+				fromSnapshot = FeedSnapshotStore.getSnapshot(pm, requestUri, Long.parseLong(from));
+				toSnapshot = to != null 
+						? FeedSnapshotStore.getSnapshot(pm, requestUri, Long.parseLong(to))
+						: FeedSnapshotStore.getLatestSnapshot(pm, requestUri);
+			} catch (NumberFormatException e) {
+				resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
+			if (fromSnapshot == null || toSnapshot == null) {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			
+			final String diff;
+			try {
+				diff = FeedDiff.compute(FeedSnapshotStore.getContent(fromSnapshot), 
+						FeedSnapshotStore.getContent(toSnapshot));
+			} catch (RuntimeException e) {
+				resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
+						"Feed of " + requestUri + " can not be diffed");
+				return;
+			}
+			
+			resp.setContentType("application/json");
+			resp.setCharacterEncoding("UTF-8");
+			resp.setHeader(HEADER_FEED_MD5, toSnapshot.getMd5Hash());
+			resp.setHeader(HEADER_FEED_VERSION, String.valueOf(toSnapshot.getVersion()));
+			resp.getWriter().write(diff);
+		} finally {
+			pm.close();
+		}
+	}
+	
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.jdo.PersistenceManager;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
+import net.peterkuterna.appengine.apps.devoxxsched.model.FeedVersion;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedSnapshotStore;
+import net.peterkuterna.appengine.apps.devoxxsched.util.RequestHashStore;
+
+
+/**
+ * Lists the stored versions of the feed of a request uri, latest first.
+ * Every version gets one line in the response, holding the version, its
+ * md5 hash and the time it was stored in milliseconds, separated by spaces.
+ */
+@SuppressWarnings("serial")
+public class FeedVersionsServlet extends HttpServlet {
+	
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		final String requestUri = req.getParameter("requestUri");
+		
+		if (!RequestHashStore.isAllowed(requestUri)) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		
+		final PersistenceManager pm = PMF.get().getPersistenceManager();
+		try {
+			resp.setContentType("text/plain");
+			final PrintWriter writer = resp.getWriter();
+			for (FeedVersion version : FeedSnapshotStore.getVersions(pm, requestUri)) {
+				writer.println(version.getVersion() + " " + version.getMd5Hash() 
+						+ " " + version.getDate().getTime());
+			}
+		} finally {
+			pm.close();
+		}
+	}
+	
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.peterkuterna.appengine.apps.devoxxsched.util.Md5Calculator;
+
+
+/**
+ * Serves the labs JSON files together with {@code ETag} and
+ * {@code Last-Modified} validators, answering conditional requests that
+ * still match with a {@code 304 Not Modified}.
+ */
+@SuppressWarnings("serial")
+public class LabsFileServlet extends HttpServlet {
+	
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	
+	/** Files are part of the deployed war, so they never change at runtime. */
+	private final Map<String, LabsFile> files = new ConcurrentHashMap<String, LabsFile>();
+
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		final String path = req.getServletPath() 
+				+ (req.getPathInfo() != null ? req.getPathInfo() : "");
+		
+		final LabsFile file = getFile(path);
+		if (file == null) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		resp.setHeader(HEADER_ETAG, file.etag);
+		if (file.lastModified > 0) {
+			resp.setDateHeader(HEADER_LAST_MODIFIED, file.lastModified);
+		}
+		
+		if (isNotModified(req, file)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("UTF-8");
+		resp.setContentLength(file.content.length);
+		resp.getOutputStream().write(file.content);
+	}
+	
+	private static boolean isNotModified(HttpServletRequest req, LabsFile file) {
+		final String ifNoneMatch = req.getHeader(HEADER_IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return ifNoneMatch.equals(file.etag) || "*".equals(ifNoneMatch);
+		}
+		
+		if (file.lastModified > 0) {
+			try {
+				final long ifModifiedSince = req.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+				// HTTP dates have a resolution of one second
+				return ifModifiedSince != -1 && file.lastModified / 1000 <= ifModifiedSince / 1000;
+			} catch (IllegalArgumentException e) {
+				// Unparseable date, treat the file as modified
+			}
+		}
+		
+		return false;
+	}
+	
+	private LabsFile getFile(String path) throws IOException {
+		LabsFile file = files.get(path);
+		if (file == null) {
+			final InputStream input = getServletContext().getResourceAsStream(path);
+			if (input == null) {
+				return null;
+			}
+			
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try {
+				final byte [] buffer = new byte[8192];
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					output.write(buffer, 0, read);
+				}
+			} finally {
+				input.close();
+			}
+			
+			final byte [] content = output.toByteArray();
+			final String realPath = getServletContext().getRealPath(path);
+			final long lastModified = realPath != null ? new File(realPath).lastModified() : 0;
+			file = new LabsFile(content, "\"" + Md5Calculator.md5(content) + "\"", lastModified);
+			files.put(path, file);
+		}
+		return file;
+	}
+	
+	private static class LabsFile {
+		final byte [] content;
+		final String etag;
+		final long lastModified;
+		
+		LabsFile(byte [] content, String etag, long lastModified) {
+			this.content = content;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+	
+}
@@ -17,8 +17,12 @@
 package net.peterkuterna.appengine.apps.devoxxsched.servlet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
@@ -28,32 +32,116 @@ import javax.servlet.http.HttpServletResponse;
 
 import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
 import net.peterkuterna.appengine.apps.devoxxsched.model.RequestHash;
+import net.peterkuterna.appengine.apps.devoxxsched.util.FeedSnapshotStore;
+import net.peterkuterna.appengine.apps.devoxxsched.util.Md5Cache;
 import net.peterkuterna.appengine.apps.devoxxsched.util.Md5Calculator;
 
+import com.google.appengine.api.urlfetch.HTTPResponse;
 
+
+/**
+ * Recalculates the md5 hash of every stored request uri. At most
+ * {@code maxConcurrentFetches} uris, an init parameter, are fetched at the
+ * same time, and every response is hashed as soon as it arrives. All
+ * changed hashes and their new snapshots are written in one batch, after
+ * which the {@link Md5Cache} is refreshed.
+ */
 @SuppressWarnings("serial")
 public class RecalculateMD5KeysServlet extends HttpServlet {
 	
+	private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 10;
+	
+	private int maxConcurrentFetches = DEFAULT_MAX_CONCURRENT_FETCHES;
+	
+	@Override
+	public void init() {
+		final String value = getInitParameter("maxConcurrentFetches");
+		if (value != null) {
+			maxConcurrentFetches = Math.max(1, Integer.parseInt(value));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
 	public void doGet(HttpServletRequest req, HttpServletResponse resp)
 			throws IOException {
 		final PersistenceManager pm = PMF.get().getPersistenceManager();
 		
 		final Query query = pm.newQuery(RequestHash.class);
 		try {
-			List<RequestHash> results = (List<RequestHash>) query.execute();
-			for (RequestHash requestHash : results) {
-				final Md5Calculator md5Calculator = new Md5Calculator(requestHash.getRequestUri());
-				final String newMd5 = md5Calculator.calculateMd5();
-				if (newMd5 != null && !newMd5.equals(requestHash.getMd5Hash())) {
-					requestHash.setMd5Hash(newMd5);
-					requestHash.setDate(new Date());
-					pm.makePersistent(requestHash);
+			final List<Object> changed = new ArrayList<Object>();
+			final LinkedList<PendingFetch> pending = new LinkedList<PendingFetch>();
+			final List<PendingFetch> finished = new ArrayList<PendingFetch>();
+			final Iterator<RequestHash> results = ((List<RequestHash>) query.execute()).iterator();
+			while (results.hasNext() || !pending.isEmpty()) {
+				if (results.hasNext() && pending.size() < maxConcurrentFetches) {
+					pending.add(new PendingFetch(results.next()));
+				} else {
+					final PendingFetch fetch = takeFinished(pending);
+					fetch.recalculate(changed);
+					finished.add(fetch);
 				}
 			}
+			
+			if (!changed.isEmpty()) {
+				pm.makePersistentAll(changed);
+			}
+			
+			// Refresh the cache of every hash, not only the changed ones, 
+			// since memcache may have evicted them
+			for (PendingFetch fetch : finished) {
+				Md5Cache.put(fetch.requestHash.getRequestUri(), fetch.requestHash.getMd5Hash());
+			}
 		} finally {
 			query.closeAll();
 			pm.close();
 		}
 	}
 	
+	/**
+	 * Remove and return a fetch that already finished, or the oldest one
+	 * when none did yet.
+	 */
+	private static PendingFetch takeFinished(LinkedList<PendingFetch> pending) {
+		for (Iterator<PendingFetch> it = pending.iterator(); it.hasNext(); ) {
+			final PendingFetch fetch = it.next();
+			if (fetch.future == null || fetch.future.isDone()) {
+				it.remove();
+				return fetch;
+			}
+		}
+		return pending.removeFirst();
+	}
+	
+	private static class PendingFetch {
+		
+		final RequestHash requestHash;
+		final Md5Calculator md5Calculator;
+		final Future<HTTPResponse> future;
+		
+		PendingFetch(RequestHash requestHash) {
+			this.requestHash = requestHash;
+			this.md5Calculator = new Md5Calculator(requestHash.getRequestUri());
+			this.future = md5Calculator.fetchAsync();
+		}
+		
+		/**
+		 * Wait for the response and add the {@link RequestHash} and its new
+		 * snapshot to the given list when it changed.
+		 */
+		void recalculate(List<Object> changed) {
+			final String newMd5 = md5Calculator.calculateMd5(future);
+			if (newMd5 != null && !newMd5.equals(requestHash.getMd5Hash())) {
+				requestHash.setMd5Hash(newMd5);
+				requestHash.setDate(new Date());
+				FeedSnapshotStore.createNext(requestHash, md5Calculator.getContent(), changed);
+				changed.add(requestHash);
+			} else if (newMd5 != null && requestHash.getVersion() == null) {
+				// Keep a first snapshot of hashes stored before snapshots existed
+				FeedSnapshotStore.createNext(requestHash, md5Calculator.getContent(), changed);
+				changed.add(requestHash);
+			}
+		}
+		
+	}
+	
 }
@@ -17,17 +17,12 @@
 package net.peterkuterna.appengine.apps.devoxxsched.servlet;
 
 import java.io.IOException;
-import java.util.Date;
 
-import javax.jdo.PersistenceManager;
-import javax.jdo.Query;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
-import net.peterkuterna.appengine.apps.devoxxsched.model.RequestHash;
-import net.peterkuterna.appengine.apps.devoxxsched.util.Md5Calculator;
+import net.peterkuterna.appengine.apps.devoxxsched.util.RequestHashStore;
 
 
 @SuppressWarnings("serial")
@@ -37,51 +32,14 @@ public class RequestMD5KeyServlet extends HttpServlet {
 			throws IOException {
 		final String requestUri = req.getParameter("requestUri");
 		
-		if (requestUri != null 
-				&& (requestUri.startsWith("http://cfp.devoxx.com")
-						|| requestUri.startsWith("http://devoxx2010.appspot.com"))) {
-			final PersistenceManager pm = PMF.get().getPersistenceManager();
-	
-			RequestHash requestHash = getRequestHash(requestUri);
-			if (requestHash == null) {
-				final Md5Calculator md5Calculator = new Md5Calculator(requestUri);
-				final String md5 = md5Calculator.calculateMd5();
-				if (md5 != null) {
-					requestHash = new RequestHash(requestUri, md5, new Date());
-					if (requestHash != null 
-							&& requestHash.getMd5Hash() != null) {
-						try {
-							pm.makePersistent(requestHash);
-						} finally {
-							pm.close();
-						}
-					}
-				}
-			}
-			
-			if (requestHash != null) {
-				resp.getWriter().println(requestHash.getMd5Hash());
+		if (RequestHashStore.isAllowed(requestUri)) {
+			final String md5 = RequestHashStore.getMd5(requestUri);
+			if (md5 != null) {
+				resp.getWriter().println(md5);
 			} else {
 				resp.getWriter().println("NOK");
 			}
 		}
 	}
 	
-	private RequestHash getRequestHash(String requestUri) {
-		final PersistenceManager pm = PMF.get().getPersistenceManager();
-		final Query query = pm.newQuery(RequestHash.class);
-		query.setFilter("requestUri == requestUriParam");
-		query.declareParameters("String requestUriParam");
-		query.setUnique(true);
-		
-		RequestHash requestHash = null;
-		try {
-			requestHash = (RequestHash) query.execute(requestUri);
-		} finally {
-			query.closeAll();
-		}
-		
-		return requestHash;
-	}
-
 }
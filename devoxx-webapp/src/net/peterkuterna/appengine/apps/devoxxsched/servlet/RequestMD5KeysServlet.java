@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.peterkuterna.appengine.apps.devoxxsched.util.RequestHashStore;
+
+
+/**
+ * Returns the md5 hashes of several request uris in one response. Every
+ * {@code requestUri} parameter gets one line in the response, in the
+ * order the parameters were given, holding either the md5 hash or
+ * {@code NOK}.
+ */
+@SuppressWarnings("serial")
+public class RequestMD5KeysServlet extends HttpServlet {
+	
+	private static final int MAX_REQUEST_URIS = 20;
+	
+	public void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		final String [] requestUris = req.getParameterValues("requestUri");
+		
+		if (requestUris == null || requestUris.length > MAX_REQUEST_URIS) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		
+		resp.setContentType("text/plain");
+		final PrintWriter writer = resp.getWriter();
+		for (String requestUri : requestUris) {
+			final String md5 = RequestHashStore.getMd5(requestUri);
+			writer.println(md5 != null ? md5 : "NOK");
+		}
+	}
+	
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes the delta between two versions of a JSON feed. A delta is itself
+ * a JSON array, holding every entity that was added or changed, followed by
+ * a tombstone for every entity that was removed. A tombstone is the removed
+ * entity with an extra {@code "deleted":true} field.
+ */
+public final class FeedDelta {
+
+	private FeedDelta() {}
+
+	public static String compute(String from, String to) {
+		final LinkedHashMap<String, String> fromEntities = JsonFeed.entities(from);
+		final LinkedHashMap<String, String> toEntities = JsonFeed.entities(to);
+
+		final StringBuilder sb = new StringBuilder("[");
+		for (Map.Entry<String, String> entry : toEntities.entrySet()) {
+			if (!entry.getValue().equals(fromEntities.get(entry.getKey()))) {
+				append(sb, entry.getValue());
+			}
+		}
+		for (Map.Entry<String, String> entry : fromEntities.entrySet()) {
+			if (!toEntities.containsKey(entry.getKey())) {
+				append(sb, tombstone(entry.getValue()));
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	private static String tombstone(String entity) {
+		final String rest = entity.substring(entity.indexOf('{') + 1).trim();
+		return rest.startsWith("}") ? "{\"deleted\":true}" : "{\"deleted\":true," + rest;
+	}
+
+	private static void append(StringBuilder sb, String entity) {
+		if (sb.length() > 1) {
+			sb.append(',');
+		}
+		sb.append(entity);
+	}
+
+}
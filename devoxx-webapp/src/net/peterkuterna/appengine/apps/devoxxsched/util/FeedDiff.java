@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes a structural diff between two versions of a JSON feed, down to
+ * the fields of every entity. The diff is a JSON object with the entities
+ * that were {@code added}, the ids of the entities that were
+ * {@code removed}, and for every {@code changed} entity its id, the fields
+ * to {@code set} and the names of the fields to {@code unset}.
+ */
+public final class FeedDiff {
+
+	private FeedDiff() {}
+
+	public static String compute(String from, String to) {
+		final LinkedHashMap<String, String> fromEntities = JsonFeed.entities(from);
+		final LinkedHashMap<String, String> toEntities = JsonFeed.entities(to);
+
+		final StringBuilder added = new StringBuilder();
+		final StringBuilder changed = new StringBuilder();
+		final StringBuilder removed = new StringBuilder();
+		for (Map.Entry<String, String> entry : toEntities.entrySet()) {
+			final String previous = fromEntities.get(entry.getKey());
+			if (previous == null) {
+				append(added, entry.getValue());
+			} else if (!previous.equals(entry.getValue())) {
+				append(changed, diffFields(entry.getKey(), previous, entry.getValue()));
+			}
+		}
+		for (String id : fromEntities.keySet()) {
+			if (!toEntities.containsKey(id)) {
+				append(removed, id);
+			}
+		}
+
+		return new StringBuilder("{\"added\":[").append(added)
+				.append("],\"changed\":[").append(changed)
+				.append("],\"removed\":[").append(removed)
+				.append("]}").toString();
+	}
+
+	private static String diffFields(String id, String from, String to) {
+		final LinkedHashMap<String, String> fromFields = JsonFeed.fields(from);
+		final LinkedHashMap<String, String> toFields = JsonFeed.fields(to);
+
+		final StringBuilder set = new StringBuilder();
+		final StringBuilder unset = new StringBuilder();
+		for (Map.Entry<String, String> entry : toFields.entrySet()) {
+			if (!entry.getValue().equals(fromFields.get(entry.getKey()))) {
+				append(set, quote(entry.getKey()) + ":" + entry.getValue());
+			}
+		}
+		for (String name : fromFields.keySet()) {
+			if (!toFields.containsKey(name)) {
+				append(unset, quote(name));
+			}
+		}
+
+		return new StringBuilder("{\"id\":").append(id)
+				.append(",\"set\":{").append(set)
+				.append("},\"unset\":[").append(unset)
+				.append("]}").toString();
+	}
+
+	/**
+	 * Field names were unquoted without unescaping, so quoting them again
+	 * restores their raw JSON text.
+	 */
+	private static String quote(String name) {
+		return '"' + name + '"';
+	}
+
+	private static void append(StringBuilder sb, String value) {
+		if (sb.length() > 0) {
+			sb.append(',');
+		}
+		sb.append(value);
+	}
+
+}
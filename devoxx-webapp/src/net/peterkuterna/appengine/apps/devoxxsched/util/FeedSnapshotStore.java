@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import net.peterkuterna.appengine.apps.devoxxsched.model.FeedSnapshot;
+import net.peterkuterna.appengine.apps.devoxxsched.model.FeedVersion;
+import net.peterkuterna.appengine.apps.devoxxsched.model.RequestHash;
+
+import com.google.appengine.api.datastore.Blob;
+
+/**
+ * Stores and loads the {@link FeedSnapshot} versions of a request uri. The
+ * latest version of a request uri is kept on its {@link RequestHash}. Every
+ * snapshot has a {@link FeedVersion} next to it, which is what queries run
+ * against, so only the snapshots actually needed are loaded.
+ */
+public final class FeedSnapshotStore {
+
+	private static final String CHARSET = "UTF-8";
+
+	private FeedSnapshotStore() {}
+
+	/**
+	 * Store the given content as the next version of the request uri of the
+	 * {@link RequestHash}, and point the {@link RequestHash} to it.
+	 */
+	public static FeedSnapshot store(PersistenceManager pm, RequestHash requestHash, byte[] content) {
+		final List<Object> created = new ArrayList<Object>(2);
+		final FeedSnapshot snapshot = createNext(requestHash, content, created);
+		pm.makePersistentAll(created);
+		return snapshot;
+	}
+
+	/**
+	 * Create the given content as the next version of the request uri of the
+	 * {@link RequestHash}, and point the {@link RequestHash} to it. The
+	 * snapshot and its {@link FeedVersion} are added to the given list
+	 * instead of being persisted, so they can be written in a batch.
+	 */
+	public static FeedSnapshot createNext(RequestHash requestHash, byte[] content, List<Object> created) {
+		final Long latest = requestHash.getVersion();
+		final long version = latest != null ? latest + 1 : 1;
+		final FeedSnapshot snapshot = new FeedSnapshot(requestHash.getRequestUri(), version, 
+				requestHash.getMd5Hash(), new Blob(compress(content)), new Date());
+		requestHash.setVersion(version);
+		created.add(snapshot);
+		created.add(new FeedVersion(snapshot));
+		return snapshot;
+	}
+
+	/**
+	 * Returns the given version of a request uri, or {@code null} if it was
+	 * never stored.
+	 */
+	public static FeedSnapshot getSnapshot(PersistenceManager pm, String requestUri, long version) {
+		try {
+			return pm.getObjectById(FeedSnapshot.class, FeedSnapshot.createKey(requestUri, version));
+		} catch (JDOObjectNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the latest version of a request uri, or {@code null} if none
+	 * was stored yet.
+	 */
+	public static FeedSnapshot getLatestSnapshot(PersistenceManager pm, String requestUri) {
+		final RequestHash requestHash = RequestHashStore.getRequestHash(pm, requestUri);
+		if (requestHash == null || requestHash.getVersion() == null) {
+			return null;
+		}
+		return getSnapshot(pm, requestUri, requestHash.getVersion());
+	}
+
+	/**
+	 * Returns every stored version of a request uri, latest first, without
+	 * their content.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<FeedVersion> getVersions(PersistenceManager pm, String requestUri) {
+		final Query query = pm.newQuery(FeedVersion.class);
+		query.setFilter("requestUri == requestUriParam");
+		query.declareParameters("String requestUriParam");
+		query.setOrdering("version desc");
+
+		try {
+			return new ArrayList<FeedVersion>((List<FeedVersion>) query.execute(requestUri));
+		} finally {
+			query.closeAll();
+		}
+	}
+
+	/**
+	 * Returns the most recent version of a request uri with the given md5
+	 * hash, or {@code null} if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public static FeedSnapshot getSnapshotByMd5(PersistenceManager pm, String requestUri, String md5Hash) {
+		final Query query = pm.newQuery(FeedVersion.class);
+		query.setFilter("requestUri == requestUriParam && md5Hash == md5HashParam");
+		query.declareParameters("String requestUriParam, String md5HashParam");
+		query.setOrdering("version desc");
+		query.setRange(0, 1);
+
+		try {
+			final List<FeedVersion> versions = (List<FeedVersion>) query.execute(requestUri, md5Hash);
+			return versions.isEmpty() ? null 
+					: getSnapshot(pm, requestUri, versions.get(0).getVersion());
+		} finally {
+			query.closeAll();
+		}
+	}
+
+	/**
+	 * Returns the uncompressed content of a {@link FeedSnapshot}.
+	 */
+	public static String getContent(FeedSnapshot snapshot) {
+		try {
+			return new String(decompress(snapshot.getContent().getBytes()), CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] compress(byte[] content) {
+		try {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4);
+			final GZIPOutputStream gzip = new GZIPOutputStream(output);
+			gzip.write(content);
+			gzip.close();
+			return output.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] decompress(byte[] content) {
+		try {
+			final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content));
+			final ByteArrayOutputStream output = new ByteArrayOutputStream(content.length * 4);
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = gzip.read(buffer)) != -1) {
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
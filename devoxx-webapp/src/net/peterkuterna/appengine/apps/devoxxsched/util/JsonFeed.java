@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Minimal scanner for the JSON feeds of the Devoxx REST API, which are
+ * arrays of objects that each have an {@code id}. Values are not converted,
+ * but kept as their raw JSON text, which is all that is needed to compare
+ * two versions of a feed.
+ */
+public final class JsonFeed {
+
+	private final String json;
+	private int pos;
+
+	private JsonFeed(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * Returns the raw text of every object in a feed, keyed by the raw text
+	 * of its {@code id} value, in feed order.
+	 */
+	public static LinkedHashMap<String, String> entities(String json) {
+		final JsonFeed feed = new JsonFeed(json);
+		final LinkedHashMap<String, String> entities = new LinkedHashMap<String, String>();
+		feed.expect('[');
+		if (feed.peek() == ']') {
+			return entities;
+		}
+		while (true) {
+			final int start = feed.skipWhitespace();
+			feed.skipValue();
+			final String entity = json.substring(start, feed.pos);
+			final String id = fields(entity).get("id");
+			if (id == null) {
+				throw new IllegalArgumentException("Entity without id at " + start);
+			}
+			entities.put(id, entity);
+			if (feed.next() == ']') {
+				return entities;
+			}
+			feed.back(',');
+		}
+	}
+
+	/**
+	 * Returns the raw text of every value of an object, keyed by the
+	 * unquoted field name, in object order.
+	 */
+	public static LinkedHashMap<String, String> fields(String object) {
+		final JsonFeed feed = new JsonFeed(object);
+		final LinkedHashMap<String, String> fields = new LinkedHashMap<String, String>();
+		feed.expect('{');
+		if (feed.peek() == '}') {
+			return fields;
+		}
+		while (true) {
+			feed.skipWhitespace();
+			final int nameStart = feed.pos;
+			feed.skipValue();
+			final String name = unquote(object.substring(nameStart, feed.pos));
+			feed.expect(':');
+			final int valueStart = feed.skipWhitespace();
+			feed.skipValue();
+			fields.put(name, object.substring(valueStart, feed.pos));
+			if (feed.next() == '}') {
+				return fields;
+			}
+			feed.back(',');
+		}
+	}
+
+	private static String unquote(String value) {
+		if (value.length() >= 2 && value.charAt(0) == '"') {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	private void skipValue() {
+		final char c = json.charAt(pos);
+		if (c == '"') {
+			pos++;
+			while (json.charAt(pos) != '"') {
+				pos += json.charAt(pos) == '\\' ? 2 : 1;
+			}
+			pos++;
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				final char d = json.charAt(pos);
+				if (d == '"') {
+					skipValue();
+					continue;
+				}
+				if (d == '{' || d == '[') depth++;
+				if (d == '}' || d == ']') depth--;
+				pos++;
+			} while (depth > 0);
+		} else {
+			while (pos < json.length() && ",:]} \t\r\n".indexOf(json.charAt(pos)) == -1) {
+				pos++;
+			}
+		}
+	}
+
+	private int skipWhitespace() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+		if (pos >= json.length()) {
+			throw new IllegalArgumentException("Unexpected end of input");
+		}
+		return pos;
+	}
+
+	private char peek() {
+		skipWhitespace();
+		return json.charAt(pos);
+	}
+
+	private char next() {
+		skipWhitespace();
+		return json.charAt(pos++);
+	}
+
+	private void expect(char c) {
+		if (next() != c) {
+			throw new IllegalArgumentException("Expected '" + c + "' at " + (pos - 1));
+		}
+	}
+
+	private void back(char expected) {
+		if (json.charAt(pos - 1) != expected) {
+			throw new IllegalArgumentException("Expected '" + expected + "' at " + (pos - 1));
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jsr107cache.Cache;
+import net.sf.jsr107cache.CacheException;
+import net.sf.jsr107cache.CacheManager;
+
+/**
+ * Memcache copy of the md5 hash of every request uri, so polling clients
+ * are answered without reaching the datastore. The cache is only a copy:
+ * when memcache is unavailable every call quietly falls back to a miss.
+ */
+public final class Md5Cache {
+
+	private static final Logger LOG = Logger.getLogger(Md5Cache.class.getName());
+
+	private static final String KEY_PREFIX = "md5:";
+
+	private static Cache cache;
+
+	private Md5Cache() {}
+
+	/**
+	 * Returns the cached md5 hash of a request uri, or {@code null} when it
+	 * is not cached.
+	 */
+	public static String get(String requestUri) {
+		final Cache cache = getCache();
+		if (cache == null) {
+			return null;
+		}
+		try {
+			return (String) cache.get(KEY_PREFIX + requestUri);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Could not read md5 of " + requestUri + " from memcache", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Cache the md5 hash of a request uri.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void put(String requestUri, String md5Hash) {
+		final Cache cache = getCache();
+		if (cache == null) {
+			return;
+		}
+		try {
+			cache.put(KEY_PREFIX + requestUri, md5Hash);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Could not write md5 of " + requestUri + " to memcache", e);
+		}
+	}
+
+	private static synchronized Cache getCache() {
+		if (cache == null) {
+			try {
+				cache = CacheManager.getInstance().getCacheFactory().createCache(Collections.emptyMap());
+			} catch (CacheException e) {
+				LOG.log(Level.WARNING, "Could not create memcache", e);
+			}
+		}
+		return cache;
+	}
+
+}
@@ -33,32 +33,79 @@ import com.google.appengine.api.urlfetch.URLFetchServiceFactory;
 public class Md5Calculator {
 
 	private String requestUri;
+	private byte[] content;
 
 	public Md5Calculator(final String requestUri) {
 		this.requestUri = requestUri;
 	}
 	
+	public String getRequestUri() {
+		return requestUri;
+	}
+	
 	public String calculateMd5() {
-		final byte[] response = getResponse(requestUri);
-		if (response != null) {
-			try {
-				MessageDigest mdEnc = MessageDigest.getInstance("MD5");
-				mdEnc.update(response);
-				return new BigInteger(1, mdEnc.digest()).toString(16);		
-			} catch (NoSuchAlgorithmException e) {
-			}
-		}
-		return null;
+		return calculateMd5(fetchAsync());
 	}
 	
-	private byte[] getResponse(final String requestUri) {
+	/**
+	 * Start fetching the request uri without waiting for the response, so
+	 * several uris can be fetched at the same time. Returns {@code null}
+	 * when the request uri is not a valid url.
+	 */
+	public Future<HTTPResponse> fetchAsync() {
 		try {
 			final URLFetchService fetcher = URLFetchServiceFactory.getURLFetchService();
 			final URL url = new URL(requestUri);
 			final HTTPRequest request = new HTTPRequest(url);
 			request.setHeader(new HTTPHeader("Cache-Control", "no-cache,max-age=0"));
 			request.setHeader(new HTTPHeader("Pragma", "no-cache"));
-			Future<HTTPResponse> future = fetcher.fetchAsync(request);
+			return fetcher.fetchAsync(request);
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Wait for a fetch started by {@link #fetchAsync()} and return the md5
+	 * hash of its response, or {@code null} when it failed.
+	 */
+	public String calculateMd5(Future<HTTPResponse> future) {
+		final byte[] response = getResponse(future);
+		content = response;
+		if (response != null) {
+			return md5(response);
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the response fetched by the last {@link #calculateMd5()}, or
+	 * {@code null} when it could not be fetched.
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+	
+	/**
+	 * Returns the md5 hash of the given bytes as a hex string.
+	 */
+	public static String md5(final byte[] content) {
+		try {
+			MessageDigest mdEnc = MessageDigest.getInstance("MD5");
+			mdEnc.update(content);
+			return new BigInteger(1, mdEnc.digest()).toString(16);		
+		} catch (NoSuchAlgorithmException e) {
+		}
+		return null;
+	}
+	
+	private byte[] getResponse(final Future<HTTPResponse> future) {
+		if (future == null) {
+			return null;
+		}
+		try {
 			HTTPResponse response = future.get();
 			if (response.getResponseCode() == 200) {
 				return response.getContent();
@@ -67,8 +114,6 @@ public class Md5Calculator {
 			e.printStackTrace();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
 		}
 
 		return null;
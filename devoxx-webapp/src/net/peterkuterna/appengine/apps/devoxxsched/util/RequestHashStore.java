@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Peter Kuterna
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.peterkuterna.appengine.apps.devoxxsched.util;
+
+import java.util.Date;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import net.peterkuterna.appengine.apps.devoxxsched.jdo.PMF;
+import net.peterkuterna.appengine.apps.devoxxsched.model.RequestHash;
+
+/**
+ * Looks up the md5 hash of a request uri, calculating and storing it
+ * the first time a request uri is asked for. Hashes are read through
+ * {@link Md5Cache}, so only cache misses reach the datastore.
+ */
+public final class RequestHashStore {
+
+	private RequestHashStore() {}
+
+	/**
+	 * Is the given request uri one we are willing to calculate hashes for?
+	 */
+	public static boolean isAllowed(String requestUri) {
+		return requestUri != null
+				&& (requestUri.startsWith("http://cfp.devoxx.com")
+						|| requestUri.startsWith("http://devoxx2010.appspot.com"));
+	}
+
+	/**
+	 * Returns the md5 hash for the given request uri or {@code null} when
+	 * the uri is not allowed or could not be fetched.
+	 */
+	public static String getMd5(String requestUri) {
+		if (!isAllowed(requestUri)) {
+			return null;
+		}
+
+		final String cachedMd5 = Md5Cache.get(requestUri);
+		if (cachedMd5 != null) {
+			return cachedMd5;
+		}
+
+		final PersistenceManager pm = PMF.get().getPersistenceManager();
+		try {
+			RequestHash requestHash = getRequestHash(pm, requestUri);
+			if (requestHash == null) {
+				final Md5Calculator md5Calculator = new Md5Calculator(requestUri);
+				final String md5 = md5Calculator.calculateMd5();
+				if (md5 != null) {
+					requestHash = new RequestHash(requestUri, md5, new Date());
+					FeedSnapshotStore.store(pm, requestHash, md5Calculator.getContent());
+					pm.makePersistent(requestHash);
+				}
+			}
+
+			if (requestHash == null) {
+				return null;
+			}
+			Md5Cache.put(requestUri, requestHash.getMd5Hash());
+			return requestHash.getMd5Hash();
+		} finally {
+			pm.close();
+		}
+	}
+
+	/**
+	 * Returns the stored {@link RequestHash} of a request uri, or
+	 * {@code null} when it was never asked for.
+	 */
+	public static RequestHash getRequestHash(PersistenceManager pm, String requestUri) {
+		final Query query = pm.newQuery(RequestHash.class);
+		query.setFilter("requestUri == requestUriParam");
+		query.declareParameters("String requestUriParam");
+		query.setUnique(true);
+
+		try {
+			return (RequestHash) query.execute(requestUri);
+		} finally {
+			query.closeAll();
+		}
+	}
+
+}